@@ -0,0 +1,91 @@
+package names;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * This class finds, and generates when they are missing, the synthetic datasets the benchmarks run
+ * on. The sources read their datasets as class path resources, so the datasets are written into
+ * one data directory that must be on the benchmark's class path ahead of any other data directory
+ * (the "Zip" source always reads the first names.zip it finds). The directory is benchmark-data
+ * unless the names.benchmark.data system property names another one.
+ *
+ * @author Hosam Tageldin
+ */
+public class BenchmarkData {
+
+  private static final String DATA_DIRECTORY_PROPERTY = "names.benchmark.data";
+  private static final String DEFAULT_DATA_DIRECTORY = "benchmark-data";
+  private static final String DATA_SET_PREFIX = "zipf_";
+  private static final String ZIP_NAME = "names.zip";
+  private static final String ZIP_SCALE_MARKER = "names.zip.scale";
+  private static final long SEED = 307;
+  private static final String NOT_ON_CLASS_PATH =
+      "%s must be on the class path ahead of any other data directory to benchmark it";
+
+  /**
+   * Generates the dataset of a scale if the data directory does not have it yet
+   *
+   * @param scale the size of the dataset
+   * @return the name of the dataset, to be passed to the sources as their dataSet
+   * @throws IOException if the dataset cannot be written, or is not on the class path
+   */
+  public static synchronized String dataSetFor(ZipfDataSetGenerator.Scale scale)
+      throws IOException {
+    String dataSet = DATA_SET_PREFIX + scale.name().toLowerCase();
+    Path root = dataDirectory();
+    if (!Files.isDirectory(root.resolve(dataSet))) {
+      Path partial = root.resolve(dataSet + ".part");
+      ZipfDataSetGenerator.generate(partial, dataSet, scale, SEED);
+      Files.move(partial.resolve(dataSet), root.resolve(dataSet));
+      Files.delete(partial);
+    }
+    checkOnClassPath(dataSet, root.resolve(dataSet));
+    return dataSet;
+  }
+
+  /**
+   * Generates the dataset of a scale and makes it the one in names.zip
+   *
+   * @param scale the size of the dataset
+   * @return the name of the dataset
+   * @throws IOException if the dataset or zip cannot be written, or is not on the class path
+   */
+  public static synchronized String zipFor(ZipfDataSetGenerator.Scale scale) throws IOException {
+    String dataSet = dataSetFor(scale);
+    Path root = dataDirectory();
+    Path marker = root.resolve(ZIP_SCALE_MARKER);
+    if (!Files.exists(root.resolve(ZIP_NAME)) || !Files.exists(marker)
+        || !Files.readString(marker).equals(dataSet)) {
+      ZipfDataSetGenerator.writeZip(root, dataSet);
+      Files.writeString(marker, dataSet);
+    }
+    checkOnClassPath(ZIP_NAME, root.resolve(ZIP_NAME));
+    return dataSet;
+  }
+
+  /**
+   * @return the directory the datasets are written into, created if it is missing
+   * @throws IOException if the directory cannot be created
+   */
+  public static Path dataDirectory() throws IOException {
+    return Files.createDirectories(Paths.get(
+        System.getProperty(DATA_DIRECTORY_PROPERTY, DEFAULT_DATA_DIRECTORY)).toAbsolutePath());
+  }
+
+  private static void checkOnClassPath(String resource, Path expected) throws IOException {
+    URL found = BenchmarkData.class.getClassLoader().getResource(resource);
+    try {
+      if (found == null || !Files.isSameFile(Paths.get(found.toURI()), expected)) {
+        throw new IOException(String.format(NOT_ON_CLASS_PATH, expected.getParent()));
+      }
+    } catch (URISyntaxException e) {
+      throw new IOException(String.format(NOT_ON_CLASS_PATH, expected.getParent()), e);
+    }
+  }
+
+}
@@ -0,0 +1,32 @@
+package names;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler added, so every result reports the bytes allocated per
+ * operation (gc.alloc.rate.norm) next to the throughput and average time. Any JMH command line
+ * option can be passed, e.g. "QuestionsBenchmark.highestAverageRank -p scale=COMPLETE" to run one
+ * benchmark at one scale, or "-p scale=HUGE" for the largest dataset.
+ *
+ * @author Hosam Tageldin
+ */
+public class BenchmarkRunner {
+
+  /**
+   * @param args JMH command line options
+   * @throws CommandLineOptionException if an option is not understood
+   * @throws RunnerException            if a benchmark fails
+   */
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+    new Runner(new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .addProfiler(GCProfiler.class)
+        .build()).run();
+  }
+
+}
@@ -0,0 +1,194 @@
+package names;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures YOBFileReader on every source type: a full load, the years streamed one at a time, and
+ * the fingerprint that decides whether a snapshot is stale. Each source reads the same synthetic
+ * dataset (see BenchmarkData), sequentially or with the year files parsed on a ForkJoinPool.
+ * <p>
+ * The "Web" source reads from an HttpServer on this machine that serves the data directory, so the
+ * network is left out of the numbers. Its files stay in the WebSource's cache between operations,
+ * so an operation measures the conditional requests that find them unchanged plus the parsing.
+ *
+ * @author Hosam Tageldin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class LoaderBenchmark {
+
+  private static final String WEB = "WEB";
+  private static final String ZIP = "ZIP";
+  private static final int WEB_MAX_CONCURRENT_REQUESTS = 8;
+  private static final int WEB_MAX_ATTEMPTS = 4;
+  private static final Duration WEB_FIRST_BACKOFF = Duration.ofMillis(250);
+
+  @Param({"LOCAL", "MAPPED", "ZIP", "WEB"})
+  public String source;
+
+  @Param({"PERSONAL", "COMPLETE"})
+  public String scale;
+
+  @Param({"false", "true"})
+  public boolean parallel;
+
+  private String dataSet;
+  private ExecutorService loadExecutor;
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private WebSource webSource;
+
+  /**
+   * Generates the dataset if it is missing and starts the web server for the "Web" source
+   *
+   * @throws IOException if the dataset cannot be written or the server cannot start
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    ZipfDataSetGenerator.Scale dataSetScale = ZipfDataSetGenerator.Scale.valueOf(scale);
+    dataSet = source.equals(ZIP) ? BenchmarkData.zipFor(dataSetScale)
+        : BenchmarkData.dataSetFor(dataSetScale);
+    loadExecutor = parallel ? new ForkJoinPool() : null;
+    if (source.equals(WEB)) {
+      serverExecutor = Executors.newFixedThreadPool(WEB_MAX_CONCURRENT_REQUESTS);
+      server = serve(BenchmarkData.dataDirectory(), serverExecutor);
+      URI baseUri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+      webSource = new WebSource(baseUri, Files.createTempDirectory("names-benchmark-web"),
+          WEB_MAX_CONCURRENT_REQUESTS, WEB_MAX_ATTEMPTS, WEB_FIRST_BACKOFF);
+    }
+    if (reader().listYears().isEmpty()) {
+      throw new IOException("No year files found for " + source + " " + dataSet);
+    }
+  }
+
+  /**
+   * Stops the web server and the load executor
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (server != null) {
+      server.stop(0);
+      serverExecutor.shutdown();
+    }
+    if (loadExecutor != null) {
+      loadExecutor.shutdown();
+    }
+  }
+
+  /**
+   * @return every year of the dataset in columnar form
+   */
+  @Benchmark
+  public ColumnarDataSet loadDataSet() {
+    return reader().loadDataSet();
+  }
+
+  /**
+   * @param blackhole consumes every year so it is not optimized away
+   * @throws IOException if the source cannot be read
+   */
+  @Benchmark
+  public void streamYears(Blackhole blackhole) throws IOException {
+    reader().streamYears((year, columnsForYear, names) -> blackhole.consume(columnsForYear));
+  }
+
+  /**
+   * @return the fingerprint of the source files
+   * @throws IOException if the source cannot be read
+   */
+  @Benchmark
+  public long sourceFingerprint() throws IOException {
+    return reader().sourceFingerprint();
+  }
+
+  private YOBFileReader reader() {
+    if (source.equals(WEB)) {
+      return new YOBFileReader(dataSet, webSource, loadExecutor);
+    }
+    return new YOBFileReader(source, dataSet, loadExecutor);
+  }
+
+  /**
+   * Starts a server for a directory that answers a directory with an html listing of its files and
+   * a file with its contents, and answers 304 when the file's ETag is sent back
+   */
+  private static HttpServer serve(Path root, ExecutorService executor) throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(executor);
+    server.createContext("/", exchange -> {
+      Path file = root.resolve(exchange.getRequestURI().getPath().substring(1)).normalize();
+      if (!file.startsWith(root) || !Files.exists(file)) {
+        respond(exchange, 404, new byte[0], null);
+        return;
+      }
+      String etag = "\"" + Long.toHexString(Files.size(file)) + "-"
+          + Long.toHexString(Files.getLastModifiedTime(file).toMillis()) + "\"";
+      if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        respond(exchange, 304, new byte[0], etag);
+        return;
+      }
+      byte[] body;
+      if (Files.isDirectory(file)) {
+        StringBuilder listing = new StringBuilder("<html><body>\n");
+        try (var children = Files.list(file)) {
+          children.sorted().forEach(child -> listing.append("<a href=\"")
+              .append(child.getFileName()).append("\">").append(child.getFileName())
+              .append("</a>\n"));
+        }
+        body = listing.append("</body></html>\n").toString().getBytes(StandardCharsets.UTF_8);
+      } else {
+        body = Files.readAllBytes(file);
+      }
+      respond(exchange, 200, body, etag);
+    });
+    server.start();
+    return server;
+  }
+
+  private static void respond(HttpExchange exchange, int status, byte[] body, String etag)
+      throws IOException {
+    if (etag != null) {
+      exchange.getResponseHeaders().set("ETag", etag);
+    }
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    if (body.length > 0) {
+      try (OutputStream responseBody = exchange.getResponseBody()) {
+        responseBody.write(body);
+      }
+    }
+    exchange.close();
+  }
+
+}
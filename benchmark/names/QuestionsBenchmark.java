@@ -0,0 +1,211 @@
+package names;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures every question of Questions, plus a reload, a year update and a batch, over a loaded
+ * synthetic dataset (see BenchmarkData). The result cache is off, so every operation works its
+ * answer out again. Range questions ask about the whole dataset, the widest range and the slowest
+ * case; the name asked about is the top male name of the middle year, so it is ranked in most
+ * years. With queryPoolThreads above 0 the range questions are split across a ForkJoinPool of that
+ * many threads.
+ *
+ * @author Hosam Tageldin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class QuestionsBenchmark {
+
+  private static final String MALE = "M";
+  private static final String FEMALE = "F";
+  private static final int RANK = 5;
+  private static final int RECENT_YEARS = 10;
+  private static final int BATCH_RANGES = 10;
+  private static final int TOP_K = 100;
+
+  @Param({"PERSONAL", "COMPLETE"})
+  public String scale;
+
+  @Param({"0"})
+  public int queryPoolThreads;
+
+  private Questions questions;
+  private ForkJoinPool queryPool;
+  private int firstYear;
+  private int middleYear;
+  private int lastYear;
+  private String name;
+  private String letter;
+
+  /**
+   * Generates the dataset if it is missing, loads it and picks the name and letter asked about
+   *
+   * @throws IOException               if the dataset cannot be written
+   * @throws InvalidParameterException if the dataset has no years
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, InvalidParameterException {
+    ZipfDataSetGenerator.Scale dataSetScale = ZipfDataSetGenerator.Scale.valueOf(scale);
+    queryPool = queryPoolThreads > 0 ? new ForkJoinPool(queryPoolThreads) : null;
+    questions = new Questions("local", BenchmarkData.dataSetFor(dataSetScale), null, null, 0,
+        queryPool);
+    firstYear = dataSetScale.getFirstYear();
+    lastYear = dataSetScale.getLastYear();
+    middleYear = (firstYear + lastYear) / 2;
+    name = questions.topRankedMaleAndFemaleName(middleYear)[1];
+    letter = name.substring(0, 1);
+  }
+
+  /**
+   * Releases the dataset and stops the query pool
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    questions.close();
+    if (queryPool != null) {
+      queryPool.shutdown();
+    }
+  }
+
+  // one benchmark per question, in the order Questions declares them
+
+  @Benchmark
+  public String[] highestOccurringPrefix() throws InvalidParameterException {
+    return questions.highestOccurringPrefix(FEMALE, firstYear, lastYear);
+  }
+
+  @Benchmark
+  public String[] nameHoldingRankMostOften() throws InvalidParameterException {
+    return questions.nameHoldingRankMostOften(MALE, firstYear, lastYear, RANK);
+  }
+
+  @Benchmark
+  public String[] findAllNamesWithRank() throws InvalidParameterException {
+    return questions.findAllNamesWithRank(MALE, firstYear, lastYear, RANK);
+  }
+
+  @Benchmark
+  public float averageRankMostRecentNumberOfYears() throws InvalidParameterException {
+    return questions.averageRankMostRecentNumberOfYears(name, MALE, RECENT_YEARS);
+  }
+
+  @Benchmark
+  public String[] highestAverageRank() throws InvalidParameterException {
+    return questions.highestAverageRank(FEMALE, firstYear, lastYear);
+  }
+
+  @Benchmark
+  public float averageRank() throws InvalidParameterException {
+    return questions.averageRank(name, MALE, firstYear, lastYear);
+  }
+
+  @Benchmark
+  public String[] nameWithHighestRankChange() throws InvalidParameterException {
+    return questions.nameWithHighestRankChange(FEMALE, firstYear, lastYear);
+  }
+
+  @Benchmark
+  public int differenceInRank() throws InvalidParameterException {
+    return questions.differenceInRank(name, MALE, firstYear, lastYear);
+  }
+
+  @Benchmark
+  public String[] findAllRanks() throws InvalidParameterException {
+    return questions.findAllRanks(name, MALE, firstYear, lastYear);
+  }
+
+  @Benchmark
+  public String[] mostPopularLetter() throws InvalidParameterException {
+    return questions.mostPopularLetter(FEMALE, firstYear, lastYear);
+  }
+
+  @Benchmark
+  public String[] mostPopularNames() throws InvalidParameterException {
+    return questions.mostPopularNames(MALE, firstYear, lastYear);
+  }
+
+  @Benchmark
+  public String mostRecentYearSameRank() throws InvalidParameterException {
+    return questions.mostRecentYearSameRank(name, MALE, middleYear);
+  }
+
+  @Benchmark
+  public String[] findAllRanksInDataSet() throws InvalidParameterException {
+    return questions.findAllRanksInDataSet(name, MALE);
+  }
+
+  @Benchmark
+  public int[] nameAndTotalBabiesCount() throws InvalidParameterException {
+    return questions.nameAndTotalBabiesCount(MALE, letter, middleYear);
+  }
+
+  @Benchmark
+  public String[] topRankedMaleAndFemaleName() throws InvalidParameterException {
+    return questions.topRankedMaleAndFemaleName(middleYear);
+  }
+
+  @Benchmark
+  public List<Baby> topK() throws InvalidParameterException {
+    return questions.topK(FEMALE, firstYear, lastYear, TOP_K);
+  }
+
+  @Benchmark
+  public List<Baby> topKInOneYear() throws InvalidParameterException {
+    return questions.topK(FEMALE, middleYear, middleYear, TOP_K);
+  }
+
+  /**
+   * The three whole-range questions over overlapping ranges that all end in the last year, asked
+   * together in one batch
+   */
+  @Benchmark
+  public List<Object> batchOfRangeQuestions() throws InvalidParameterException {
+    QuestionBatch batch = questions.newBatch();
+    List<QuestionBatch.Answer<String[]>> answers = new ArrayList<>();
+    int step = Math.max(1, (lastYear - firstYear) / BATCH_RANGES);
+    for (int yearStart = firstYear; yearStart <= lastYear; yearStart += step) {
+      answers.add(batch.highestAverageRank(FEMALE, yearStart, lastYear));
+      answers.add(batch.nameWithHighestRankChange(FEMALE, yearStart, lastYear));
+      answers.add(batch.highestOccurringPrefix(FEMALE, yearStart, lastYear));
+    }
+    batch.run();
+    List<Object> results = new ArrayList<>();
+    for (QuestionBatch.Answer<String[]> answer : answers) {
+      results.add(answer.get());
+    }
+    return results;
+  }
+
+  @Benchmark
+  public Questions reloadDataSet() throws IOException {
+    questions.reloadDataSet();
+    return questions;
+  }
+
+  @Benchmark
+  public Questions updateYear() throws IOException {
+    questions.updateYear(lastYear);
+    return questions;
+  }
+
+}
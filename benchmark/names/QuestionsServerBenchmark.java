@@ -0,0 +1,181 @@
+package names;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Load tests QuestionsServer on this machine: every benchmark thread is one client with its own
+ * kept-alive connection, sending a request and reading the whole answer before sending the next.
+ * The clients write raw HTTP/1.1 so the numbers are the server's rather than an HTTP client
+ * library's. The result cache is off, so every request works its answer out again.
+ * <p>
+ * A rank lookup asks for the ranks of a name in a single year, the smallest question there is; a
+ * batch asks the three whole-range questions over the same range in one POST. Run with "-t" to
+ * change the number of clients, and use a machine with more cores than clients for the server's
+ * full throughput.
+ *
+ * @author Hosam Tageldin
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Threads(32)
+public class QuestionsServerBenchmark {
+
+  private static final String CONTENT_LENGTH = "content-length:";
+
+  /**
+   * The server and the requests its clients send, shared by every benchmark thread
+   */
+  @State(Scope.Benchmark)
+  public static class Served {
+
+    @Param({"PERSONAL", "COMPLETE"})
+    public String scale;
+
+    private Questions questions;
+    private QuestionsServer server;
+    private byte[] rankLookup;
+    private byte[] batch;
+
+    /**
+     * Generates the dataset if it is missing, loads it and starts the server
+     *
+     * @throws IOException               if the dataset cannot be written or the port bound
+     * @throws InvalidParameterException if the dataset has no years
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InvalidParameterException {
+      ZipfDataSetGenerator.Scale dataSetScale = ZipfDataSetGenerator.Scale.valueOf(scale);
+      questions = new Questions("local", BenchmarkData.dataSetFor(dataSetScale), null, null, 0,
+          null);
+      server = new QuestionsServer(questions,
+          new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      server.start();
+      int firstYear = dataSetScale.getFirstYear();
+      int lastYear = dataSetScale.getLastYear();
+      int middleYear = (firstYear + lastYear) / 2;
+      String name = questions.topRankedMaleAndFemaleName(middleYear)[1];
+      rankLookup = request("GET /findAllRanks?name=" + name + "&gender=M&yearStart=" + middleYear
+          + "&yearEnd=" + middleYear, "");
+      String range = "gender=F&yearStart=" + middleYear + "&yearEnd=" + lastYear;
+      batch = request("POST /batch", "highestAverageRank?" + range + "\n"
+          + "nameWithHighestRankChange?" + range + "\n" + "highestOccurringPrefix?" + range + "\n");
+    }
+
+    /**
+     * Stops the server and releases the dataset
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      server.close();
+      questions.close();
+    }
+
+    private static byte[] request(String requestLine, String body) {
+      byte[] bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+      String head = requestLine + " HTTP/1.1\r\nHost: localhost\r\nContent-Length: "
+          + bodyBytes.length + "\r\n\r\n";
+      byte[] headBytes = head.getBytes(StandardCharsets.US_ASCII);
+      byte[] request = new byte[headBytes.length + bodyBytes.length];
+      System.arraycopy(headBytes, 0, request, 0, headBytes.length);
+      System.arraycopy(bodyBytes, 0, request, headBytes.length, bodyBytes.length);
+      return request;
+    }
+  }
+
+  /**
+   * The kept-alive connection of one client
+   */
+  @State(Scope.Thread)
+  public static class Connection {
+
+    private Socket socket;
+    private OutputStream requests;
+    private InputStream answers;
+
+    /**
+     * @param served the server to connect to
+     * @throws IOException if the server cannot be reached
+     */
+    @Setup(Level.Trial)
+    public void connect(Served served) throws IOException {
+      socket = new Socket(InetAddress.getLoopbackAddress(), served.server.getPort());
+      socket.setTcpNoDelay(true);
+      requests = socket.getOutputStream();
+      answers = new BufferedInputStream(socket.getInputStream());
+    }
+
+    /**
+     * @throws IOException if the connection cannot be closed
+     */
+    @TearDown(Level.Trial)
+    public void disconnect() throws IOException {
+      socket.close();
+    }
+
+    /**
+     * Sends a request and reads its whole answer
+     *
+     * @return the answer's body
+     */
+    private byte[] exchange(byte[] request) throws IOException {
+      requests.write(request);
+      requests.flush();
+      int contentLength = 0;
+      StringBuilder header = new StringBuilder();
+      while (true) {
+        int next = answers.read();
+        if (next < 0) {
+          throw new IOException("The server closed the connection");
+        }
+        if (next != '\n') {
+          header.append((char) next);
+          continue;
+        }
+        String line = header.toString().trim();
+        header.setLength(0);
+        if (line.isEmpty()) {
+          return answers.readNBytes(contentLength);
+        }
+        if (line.toLowerCase().startsWith(CONTENT_LENGTH)) {
+          contentLength = Integer.parseInt(line.substring(CONTENT_LENGTH.length()).trim());
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public byte[] rankLookup(Served served, Connection connection) throws IOException {
+    return connection.exchange(served.rankLookup);
+  }
+
+  @Benchmark
+  public byte[] batchOfRangeQuestions(Served served, Connection connection) throws IOException {
+    return connection.exchange(served.batch);
+  }
+
+}
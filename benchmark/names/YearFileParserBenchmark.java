@@ -0,0 +1,90 @@
+package names;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures YearFileParser on one year file held in memory, with a numbered name for every row,
+ * parsed by a parser that keeps only the female rows. The parser's dictionary already has every
+ * name, as it does for every year after the first in a load, so a kept row only costs its column
+ * space and a discarded row should cost nothing. Run it with BenchmarkRunner, whose GC profiler
+ * reports the bytes allocated per parse (gc.alloc.rate.norm): divided by the rows, that is the
+ * allocation per kept row for keptAndDiscardedRows, and discardedRows should stay near zero
+ * however many rows the file has.
+ *
+ * @author Hosam Tageldin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class YearFileParserBenchmark {
+
+  @Param({"20000"})
+  public int rowsPerGender;
+
+  private ByteBuffer bothGenders;
+  private ByteBuffer malesOnly;
+  private YearFileParser parser;
+
+  /**
+   * Builds the year files and fills the parser's dictionary with their names. The parser leaves
+   * the position of a buffer where it was, so the same buffers are parsed every time.
+   *
+   * @throws IOException if a year file is malformed
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    bothGenders = yearFile(new String[]{"F", "M"});
+    malesOnly = yearFile(new String[]{"M"});
+    parser = new YearFileParser(new NameDictionary(), "F");
+    parser.parse(bothGenders);
+  }
+
+  /**
+   * @return the female columns of a file with both genders, whose male rows are discarded
+   * @throws IOException if the year file is malformed
+   */
+  @Benchmark
+  public Map<String, YearColumns> keptAndDiscardedRows() throws IOException {
+    return parser.parse(bothGenders);
+  }
+
+  /**
+   * @return the empty female columns of a file whose every row is discarded
+   * @throws IOException if the year file is malformed
+   */
+  @Benchmark
+  public Map<String, YearColumns> discardedRows() throws IOException {
+    return parser.parse(malesOnly);
+  }
+
+  private ByteBuffer yearFile(String[] genders) {
+    StringBuilder yearFile = new StringBuilder();
+    for (String gender : genders) {
+      for (int i = 0; i < rowsPerGender; i++) {
+        yearFile.append("Name").append(i).append(',').append(gender).append(',')
+            .append(rowsPerGender - i).append("\r\n");
+      }
+    }
+    return ByteBuffer.wrap(yearFile.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+}
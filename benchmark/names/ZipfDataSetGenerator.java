@@ -0,0 +1,258 @@
+package names;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * This class writes synthetic datasets in the SSA year file format, so the loader and the
+ * questions can be measured on data of any size. Every year file lists the names of each gender in
+ * decreasing count order, and the counts follow a Zipf-like curve: the name at position p is given
+ * to about peak / (p + 1)^1.07 babies, with no name given to fewer than 5 babies, as in the SSA
+ * data. The number of names grows from an eighth of the scale's names per year in the first year to
+ * all of them in the last, and names drift up and down the ranking from year to year, so ranks,
+ * averages and rank changes look like the real data's.
+ * <p>
+ * Names are built from syllables, one name per number, so every name is unique ignoring case and
+ * the short names of the most popular numbers are prefixes of many longer ones. The output only
+ * depends on the scale and the seed, so a dataset can be rebuilt anywhere instead of being copied.
+ *
+ * @author Hosam Tageldin
+ */
+public class ZipfDataSetGenerator {
+
+  private static final String[] GENDERS = {"F", "M"};
+  private static final String[] ONSETS = {"B", "Br", "C", "Ch", "D", "F", "G", "H", "J", "K", "L",
+      "M", "N", "P", "R", "S", "Sh", "T", "V", "W", "Z"};
+  private static final String[] VOWELS = {"a", "e", "i", "o", "u", "ia", "ee"};
+  private static final int SYLLABLES = ONSETS.length * VOWELS.length;
+  private static final double ZIPF_EXPONENT = 1.07;
+  private static final int MIN_COUNT = 5;
+  private static final int FIRST_YEAR_PEAK = 9_000;
+  private static final int LAST_YEAR_PEAK = 40_000;
+  private static final int POOL_NAMES_PER_YEAR_NAME = 2;
+  private static final int SWAPS_PER_HUNDRED_NAMES = 3;
+  private static final int LONGEST_JUMP = 2_000;
+  private static final String ZIP_NAME = "names.zip";
+  private static final String USAGE =
+      "usage: ZipfDataSetGenerator <root directory> <dataset> <PERSONAL|COMPLETE|LARGE|HUGE> "
+          + "[seed] [--zip]";
+
+  /**
+   * The sizes a dataset can be generated at. PERSONAL is the size of the hand written test sets,
+   * COMPLETE the size of the whole SSA dataset, and HUGE a few hundred million rows.
+   */
+  public enum Scale {
+    PERSONAL(2000, 2005, 12),
+    COMPLETE(1880, 2018, 18_000),
+    LARGE(1880, 2018, 180_000),
+    HUGE(1880, 2018, 1_400_000);
+
+    private final int firstYear;
+    private final int lastYear;
+    private final int namesPerYear;
+
+    Scale(int firstYear, int lastYear, int namesPerYear) {
+      this.firstYear = firstYear;
+      this.lastYear = lastYear;
+      this.namesPerYear = namesPerYear;
+    }
+
+    /**
+     * @return the first year of the dataset
+     */
+    public int getFirstYear() {
+      return firstYear;
+    }
+
+    /**
+     * @return the last year of the dataset
+     */
+    public int getLastYear() {
+      return lastYear;
+    }
+
+    /**
+     * @return the most names of one gender in a year, reached in the last year
+     */
+    public int getNamesPerYear() {
+      return namesPerYear;
+    }
+
+    /**
+     * @param year a year of the dataset
+     * @return the number of names of one gender in that year
+     */
+    public int namesInYear(int year) {
+      int firstYearNames = Math.max(1, namesPerYear / 8);
+      if (lastYear == firstYear) {
+        return namesPerYear;
+      }
+      return firstYearNames + (int) ((long) (namesPerYear - firstYearNames) * (year - firstYear)
+          / (lastYear - firstYear));
+    }
+
+    /**
+     * @return the number of rows in the whole dataset, both genders
+     */
+    public long rows() {
+      long rows = 0;
+      for (int year = firstYear; year <= lastYear; year++) {
+        rows += 2L * namesInYear(year);
+      }
+      return rows;
+    }
+  }
+
+  /**
+   * Writes a dataset as one yobYEAR.txt file per year in root/dataSet
+   *
+   * @param root    the directory the dataset directory is created in
+   * @param dataSet the name of the dataset directory
+   * @param scale   the size of the dataset
+   * @param seed    the seed of the ranking drift, the same seed writes the same files
+   * @return the dataset directory
+   * @throws IOException if a year file cannot be written
+   */
+  public static Path generate(Path root, String dataSet, Scale scale, long seed)
+      throws IOException {
+    Path dataSetDirectory = Files.createDirectories(root.resolve(dataSet));
+    int poolSize = scale.getNamesPerYear() * POOL_NAMES_PER_YEAR_NAME;
+    int[][] rankings = new int[GENDERS.length][];
+    SplittableRandom[] drifts = new SplittableRandom[GENDERS.length];
+    for (int gender = 0; gender < GENDERS.length; gender++) {
+      rankings[gender] = new int[poolSize];
+      for (int position = 0; position < poolSize; position++) {
+        // the genders take turns, so they share no names and both get short ones
+        rankings[gender][position] = position * GENDERS.length + gender;
+      }
+      drifts[gender] = new SplittableRandom(seed * 31 + gender);
+    }
+    for (int year = scale.getFirstYear(); year <= scale.getLastYear(); year++) {
+      int yearsSoFar = year - scale.getFirstYear();
+      int peak = FIRST_YEAR_PEAK + (int) ((long) (LAST_YEAR_PEAK - FIRST_YEAR_PEAK) * yearsSoFar
+          / Math.max(1, scale.getLastYear() - scale.getFirstYear()));
+      Path yearFile = dataSetDirectory.resolve("yob" + year + ".txt");
+      try (BufferedWriter writer = Files.newBufferedWriter(yearFile)) {
+        for (int gender = 0; gender < GENDERS.length; gender++) {
+          if (year > scale.getFirstYear()) {
+            drift(rankings[gender], drifts[gender]);
+          }
+          for (int position = 0; position < scale.namesInYear(year); position++) {
+            int count = (int) Math.max(MIN_COUNT,
+                Math.round(peak / Math.pow(position + 1, ZIPF_EXPONENT)));
+            writer.write(nameOf(rankings[gender][position]));
+            writer.write(',');
+            writer.write(GENDERS[gender]);
+            writer.write(',');
+            writer.write(Integer.toString(count));
+            writer.newLine();
+          }
+        }
+      }
+    }
+    return dataSetDirectory;
+  }
+
+  /**
+   * Writes the year files of a dataset into root/names.zip, the file the "Zip" source reads
+   *
+   * @param root    the directory holding the dataset directory
+   * @param dataSet the name of the dataset directory
+   * @return the zip file
+   * @throws IOException if the year files cannot be read or the zip cannot be written
+   */
+  public static Path writeZip(Path root, String dataSet) throws IOException {
+    Path zip = root.resolve(ZIP_NAME);
+    List<Path> yearFiles;
+    try (var children = Files.list(root.resolve(dataSet))) {
+      yearFiles = children.sorted().toList();
+    }
+    try (OutputStream out = Files.newOutputStream(zip);
+        ZipOutputStream zipOut = new ZipOutputStream(out)) {
+      for (Path yearFile : yearFiles) {
+        // the entry names hold no other digits, since the year is read from the digits of the name
+        zipOut.putNextEntry(new ZipEntry(yearFile.getFileName().toString()));
+        Files.copy(yearFile, zipOut);
+        zipOut.closeEntry();
+      }
+    }
+    return zip;
+  }
+
+  /**
+   * Builds the name of a number from its digits in bijective base SYLLABLES, one syllable per
+   * digit. An onset is always consonants and a vowel always vowels, so the syllables of a name can
+   * only be read one way and no two numbers get the same name.
+   *
+   * @param number a name number, 0 or more
+   * @return the name of the number, capitalized
+   */
+  public static String nameOf(int number) {
+    StringBuilder name = new StringBuilder();
+    int remaining = number;
+    do {
+      int syllable = remaining % SYLLABLES;
+      name.append(ONSETS[syllable / VOWELS.length]).append(VOWELS[syllable % VOWELS.length]);
+      remaining = remaining / SYLLABLES - 1;
+    } while (remaining >= 0);
+    for (int i = 1; i < name.length(); i++) {
+      name.setCharAt(i, Character.toLowerCase(name.charAt(i)));
+    }
+    return name.toString();
+  }
+
+  /**
+   * Moves names up and down the ranking: a few percent of neighbouring names swap places, and a
+   * few names jump up to LONGEST_JUMP places up, the way a name suddenly becomes popular
+   */
+  private static void drift(int[] ranking, SplittableRandom random) {
+    int swaps = Math.max(1, ranking.length / 100 * SWAPS_PER_HUNDRED_NAMES);
+    for (int i = 0; i < swaps; i++) {
+      int position = random.nextInt(ranking.length - 1);
+      swap(ranking, position, position + 1);
+    }
+    for (int i = 0; i < Math.max(1, swaps / 100); i++) {
+      int from = random.nextInt(ranking.length);
+      int to = from - random.nextInt(Math.min(from, LONGEST_JUMP) + 1);
+      int jumping = ranking[from];
+      System.arraycopy(ranking, to, ranking, to + 1, from - to);
+      ranking[to] = jumping;
+    }
+  }
+
+  private static void swap(int[] ranking, int first, int second) {
+    int swapped = ranking[first];
+    ranking[first] = ranking[second];
+    ranking[second] = swapped;
+  }
+
+  /**
+   * Writes a dataset from the command line, see USAGE
+   *
+   * @param args the root directory, the dataset, the scale, an optional seed and --zip to also
+   *             write names.zip
+   * @throws IOException if the dataset cannot be written
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3) {
+      System.err.println(USAGE);
+      return;
+    }
+    Path root = Paths.get(args[0]);
+    Scale scale = Scale.valueOf(args[2].toUpperCase());
+    long seed = args.length > 3 && !args[3].startsWith("--") ? Long.parseLong(args[3]) : 0;
+    Path dataSetDirectory = generate(root, args[1], scale, seed);
+    System.out.println(scale.rows() + " rows written to " + dataSetDirectory);
+    if (Arrays.asList(args).contains("--zip")) {
+      System.out.println("zip written to " + writeZip(root, args[1]));
+    }
+  }
+
+}
@@ -1,25 +1,24 @@
 package names;
 
-import java.util.TreeSet;
-import java.util.Set;
-import java.util.Objects;
-
 /**
  * This class creates the Baby object which keeps track of the name of the baby and the number of
- * babies born with that name. It also keeps track of all other names in the program that have its
- * name as a prefix.
+ * babies born with that name. A Baby never changes once it is created, so the same Baby can be
+ * shared by any number of queries running at the same time.
+ * <p>
+ * Babies are compared ignoring case. Each Baby keeps its name's case folded key (see foldName),
+ * worked out once, and equals, hashCode, compareTo and startsWith all use that key, so they agree
+ * with each other and do not fold the name again on every call.
  * <p>
  * This class assumes the file format files the name,gender,count format in order for the baby
  * values to be populated correctly
  *
  * @author Hosam Tageldin
  */
-public class Baby implements Comparable<Baby> {
+public final class Baby implements Comparable<Baby> {
 
   private final String babyName;
+  private final String foldedName;
   private final int nameCount;
-  private final Set<String> nameDerivatives;
-
 
   /**
    * Create a Baby with no count or rank used for comparison purposes
@@ -31,16 +30,43 @@ public class Baby implements Comparable<Baby> {
   }
 
   /**
-   * Initializes the baby name, the count and the set that is used to keep track of name derivatives
-   * that have this baby name as a prefix
+   * Initializes the baby name and the count
    *
    * @param name  the name of the Baby
    * @param count the number of Babies born with that name
    */
   public Baby(String name, int count) {
+    this(name, foldName(name), count);
+  }
+
+  /**
+   * Initializes the baby name, its already folded key and the count
+   *
+   * @param name       the name of the Baby
+   * @param foldedName the name folded with foldName
+   * @param count      the number of Babies born with that name
+   */
+  public Baby(String name, String foldedName, int count) {
     babyName = name;
+    this.foldedName = foldedName;
     nameCount = count;
-    nameDerivatives = new TreeSet<>();
+  }
+
+  /**
+   * Folds a name to the key Babies are compared by. Each character is upper cased and then lower
+   * cased, the same way String.compareToIgnoreCase compares characters, so two names are equal
+   * ignoring case exactly when their keys are equal, and the keys sort in compareToIgnoreCase
+   * order.
+   *
+   * @param name the name to fold
+   * @return the case folded key of the name
+   */
+  public static String foldName(String name) {
+    char[] folded = new char[name.length()];
+    for (int i = 0; i < folded.length; i++) {
+      folded[i] = Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+    }
+    return new String(folded);
   }
 
   /**
@@ -51,17 +77,17 @@ public class Baby implements Comparable<Baby> {
   }
 
   /**
-   * @return the number of babies born with that name in that year
+   * @return the case folded key of the name, see foldName
    */
-  public int getCount() {
-    return nameCount;
+  public String getFoldedName() {
+    return foldedName;
   }
 
   /**
-   * @return set of all derivatives of this Baby
+   * @return the number of babies born with that name in that year
    */
-  public Set<String> getNameDerivatives() {
-    return nameDerivatives;
+  public int getCount() {
+    return nameCount;
   }
 
   /**
@@ -71,7 +97,7 @@ public class Baby implements Comparable<Baby> {
    * @return boolean regarding if babyName started with string
    */
   public boolean startsWith(String otherBabyName) {
-    return babyName.toLowerCase().startsWith(otherBabyName.toLowerCase());
+    return foldedName.startsWith(foldName(otherBabyName));
   }
 
   /**
@@ -91,18 +117,17 @@ public class Baby implements Comparable<Baby> {
    */
   @Override
   public boolean equals(Object other) {
-    return other instanceof Baby
-        && babyName.equalsIgnoreCase(((Baby) other).babyName);
+    return other instanceof Baby && foldedName.equals(((Baby) other).foldedName);
   }
 
   /**
-   * Hashes Baby for use in collections. Note, matches equals() so based only on name.
+   * Hashes Baby for use in collections. Note, matches equals() so based only on the folded name.
    *
    * @return hash value to represent Baby
    */
   @Override
   public int hashCode() {
-    return Objects.hash(babyName);
+    return foldedName.hashCode();
   }
 
   /**
@@ -114,7 +139,7 @@ public class Baby implements Comparable<Baby> {
    */
   @Override
   public int compareTo(Baby other) {
-    int nameComparison = babyName.compareToIgnoreCase(other.babyName);
+    int nameComparison = foldedName.compareTo(other.foldedName);
     if (nameComparison == 0) {
       return nameComparison;
     }
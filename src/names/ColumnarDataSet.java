@@ -0,0 +1,137 @@
+package names;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class is a whole loaded dataset in columnar form: one NameDictionary shared by both genders
+ * and the GenderColumns of each gender, whose name IDs refer to that dictionary. A dataset never
+ * changes once it is created; withYears and withoutYear return a new dataset that shares everything
+ * except the changed years with this one, so years can be changed while this dataset is being read.
+ *
+ * @author Hosam Tageldin
+ */
+public class ColumnarDataSet {
+
+  private static final String MALE = "M";
+  private static final String FEMALE = "F";
+  private final NameDictionary names;
+  private final GenderColumns femaleColumns;
+  private final GenderColumns maleColumns;
+
+  /**
+   * @param names         the dictionary the name IDs of both genders refer to
+   * @param femaleColumns every year of the female names
+   * @param maleColumns   every year of the male names
+   */
+  public ColumnarDataSet(NameDictionary names, GenderColumns femaleColumns,
+      GenderColumns maleColumns) {
+    this.names = names;
+    this.femaleColumns = femaleColumns;
+    this.maleColumns = maleColumns;
+  }
+
+  /**
+   * @param names         the dictionary the name IDs of both genders refer to
+   * @param columnsByYear a map from gender ("F" or "M") to the columns for each year
+   */
+  public ColumnarDataSet(NameDictionary names,
+      Map<String, Map<Integer, YearColumns>> columnsByYear) {
+    this(names, new GenderColumns(names, columnsByYear.get(FEMALE)),
+        new GenderColumns(names, columnsByYear.get(MALE)));
+  }
+
+  /**
+   * @return a dataset with no years and no names, what a source that cannot be read loads as
+   */
+  public static ColumnarDataSet empty() {
+    NameDictionary names = new NameDictionary();
+    return new ColumnarDataSet(names, new GenderColumns(names, new HashMap<>()),
+        new GenderColumns(names, new HashMap<>()));
+  }
+
+  /**
+   * Returns this dataset with some years added, or replaced if they are already there. The years'
+   * name IDs are moved from the dictionary they were parsed with into this dataset's dictionary.
+   * That dictionary is shared as it is when it already has every name of the years, and otherwise
+   * copied and extended, so this dataset is never changed.
+   *
+   * @param columnsByYear a map from each year to the columns of each gender ("F", "M") for it
+   * @param yearNames     the dictionary the years were parsed with
+   * @return the dataset with the years added or replaced
+   */
+  public ColumnarDataSet withYears(Map<Integer, Map<String, YearColumns>> columnsByYear,
+      NameDictionary yearNames) {
+    NameDictionary mergedNames = names;
+    int[] mergedIds = new int[yearNames.size()];
+    for (int id = 0; id < mergedIds.length; id++) {
+      mergedIds[id] = names.find(yearNames, id);
+      if (mergedIds[id] < 0 && mergedNames == names) {
+        mergedNames = names.copy();
+      }
+    }
+    if (mergedNames != names) {
+      for (int id = 0; id < mergedIds.length; id++) {
+        mergedIds[id] = mergedNames.idOf(yearNames, id);
+      }
+    }
+    GenderColumns mergedFemaleColumns = femaleColumns;
+    GenderColumns mergedMaleColumns = maleColumns;
+    for (Map.Entry<Integer, Map<String, YearColumns>> year : columnsByYear.entrySet()) {
+      mergedFemaleColumns = mergedFemaleColumns.withYear(year.getKey(),
+          renumber(year.getValue().get(FEMALE), mergedIds), mergedNames);
+      mergedMaleColumns = mergedMaleColumns.withYear(year.getKey(),
+          renumber(year.getValue().get(MALE), mergedIds), mergedNames);
+    }
+    return new ColumnarDataSet(mergedNames, mergedFemaleColumns, mergedMaleColumns);
+  }
+
+  /**
+   * @param year the year to remove
+   * @return the dataset without that year
+   */
+  public ColumnarDataSet withoutYear(int year) {
+    return new ColumnarDataSet(names, femaleColumns.withoutYear(year),
+        maleColumns.withoutYear(year));
+  }
+
+  /**
+   * @return the dictionary the name IDs refer to
+   */
+  public NameDictionary getNames() {
+    return names;
+  }
+
+  /**
+   * @param gender "F"/"f" or "M"/"m"
+   * @return the columns for that gender, or GenderColumns.EMPTY for any other gender
+   */
+  public GenderColumns getColumns(String gender) {
+    if (gender.equalsIgnoreCase(MALE)) {
+      return maleColumns;
+    } else if (gender.equalsIgnoreCase(FEMALE)) {
+      return femaleColumns;
+    } else {
+      return GenderColumns.EMPTY;
+    }
+  }
+
+  /**
+   * @return an estimate of the heap used by the whole dataset, in bytes
+   */
+  public long estimatedHeapBytes() {
+    return names.estimatedHeapBytes() + femaleColumns.estimatedHeapBytes() + maleColumns
+        .estimatedHeapBytes();
+  }
+
+  private YearColumns renumber(YearColumns yearColumns, int[] mergedIds) {
+    int[] nameIds = new int[yearColumns.size()];
+    int[] counts = new int[yearColumns.size()];
+    for (int i = 0; i < nameIds.length; i++) {
+      nameIds[i] = mergedIds[yearColumns.nameId(i)];
+      counts[i] = yearColumns.count(i);
+    }
+    return new YearColumns(nameIds, counts);
+  }
+
+}
@@ -1,12 +1,29 @@
 package names;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
 
 /**
  * This class will do the heavy lifting calculations to help find the answers to the questions. This
- * class depends on YOBFileReader to correctly return a map that resembles the data provided in each
- * set for each gender. It is used by the Questions class to help with the calculations involved in
- * finding the answers to the questions.
+ * class depends on YOBFileReader to correctly return the data provided in each set for each gender,
+ * which it keeps in columnar form (see ColumnarDataSet). It is used by the Questions class to help
+ * with the calculations involved in finding the answers to the questions.
+ * <p>
+ * The loaded columns are immutable and are published together with their generation as one
+ * Version through an AtomicReference, so any number of threads read them without locks. A reload
+ * or year update builds the new columns while queries keep reading the old ones, then switches
+ * them in with a single write. A query that must see one version from start to finish runs on
+ * pinned(), a read only view of the version that is current when it starts.
  *
  * @author Hosam Tageldin
  */
@@ -17,10 +34,15 @@ public class DataSetInformation {
   private static final String NO_NAME_FOUND = "No Name Found";
   private static final String INVALID_YEAR_PARAMETER = "Invalid Year Range or Dataset Source!";
   private static final String INVALID_GENDER_INPUT = "Invalid Gender Input, M/m or F/f only";
+  private static final String PINNED_IS_READ_ONLY = "A pinned or shared dataset cannot be changed";
+  private static final String LAZY_CANNOT_BE_COPIED = "A lazily loaded dataset cannot be copied";
   private static final String[] ALL_CAPITAL_LETTERS = {"A", "B", "C", "D", "E", "F", "G", "H", "I",
       "J", "K", "L", "M", "N", "O", "P", "Q", "R", "S", "T", "U", "V", "W", "X", "Y", "Z"};
-  private Map<Integer, List<Baby>> allFemaleBabiesInDataSet;
-  private Map<Integer, List<Baby>> allMaleBabiesInDataSet;
+  private final YOBFileReader yobFileReader;
+  private final LazyDataSet lazyDataSet;
+  private final AtomicReference<Version> current;
+  private final boolean pinned;
+  private volatile long loadNanos;
 
   /**
    * Stores all the baby information from a given dataset into a map corresponding to each baby
@@ -30,38 +52,424 @@ public class DataSetInformation {
    * @param dataSet  the specified dataSet, also defined when calling the Questions class
    */
   public DataSetInformation(String fileType, String dataSet) {
+    this(fileType, dataSet, null);
+  }
+
+  /**
+   * Stores all the baby information from a given dataset into a map corresponding to each baby
+   * gender, parsing the year files in parallel on the given executor
+   *
+   * @param fileType     the specified filetype, defined in calling the Questions class
+   * @param dataSet      the specified dataSet, also defined when calling the Questions class
+   * @param loadExecutor executor used to parse the year files, or null to read them sequentially
+   */
+  public DataSetInformation(String fileType, String dataSet, ExecutorService loadExecutor) {
+    this(fileType, dataSet, loadExecutor, null);
+  }
+
+  /**
+   * Stores all the baby information from a given dataset into a map corresponding to each baby
+   * gender. If a snapshot path is given and the snapshot there was written from the source files as
+   * they are now, the dataset is read from the snapshot instead of being parsed. Otherwise the
+   * source is parsed and, if every year file was read, the snapshot is (re)written for the next
+   * start. A source that cannot be read completely loads as an empty dataset and is never written
+   * to the snapshot, so the next start parses it again.
+   *
+   * @param fileType     the specified filetype, defined in calling the Questions class
+   * @param dataSet      the specified dataSet, also defined when calling the Questions class
+   * @param loadExecutor executor used to parse the year files, or null to read them sequentially
+   * @param snapshotPath binary snapshot file to load from and keep up to date, or null for none
+   */
+  public DataSetInformation(String fileType, String dataSet, ExecutorService loadExecutor,
+      Path snapshotPath) {
+    this(new YOBFileReader(fileType, dataSet, loadExecutor), snapshotPath);
+  }
+
+  /**
+   * Stores all the baby information read by the given reader, for example one that reads a web
+   * dataset from a WebSource of its own
+   *
+   * @param yobFileReader the reader for the dataset's source
+   */
+  public DataSetInformation(YOBFileReader yobFileReader) {
+    this(yobFileReader, null);
+  }
+
+  private DataSetInformation(YOBFileReader yobFileReader, Path snapshotPath) {
+    long loadStart = System.nanoTime();
+    this.yobFileReader = yobFileReader;
+    this.lazyDataSet = null;
+    this.pinned = false;
+    ColumnarDataSet loadedColumns = null;
+    long sourceFingerprint = 0;
+    boolean sourceFound = false;
+    if (snapshotPath != null) {
+      try {
+        sourceFingerprint = yobFileReader.sourceFingerprint();
+        sourceFound = true;
+        loadedColumns = new SnapshotFile(snapshotPath).read(sourceFingerprint);
+      } catch (IOException e) {
+        // the source is missing, so there is nothing to snapshot and the columns will stay empty
+      }
+    }
+    if (loadedColumns == null) {
+      try {
+        loadedColumns = yobFileReader.loadCompleteDataSet();
+        if (sourceFound) {
+          saveSnapshot(snapshotPath, sourceFingerprint, loadedColumns);
+        }
+      } catch (IOException e) {
+        // InvalidParameterException will get thrown later, the cause is kept in the load's flight
+        // recorder event
+        loadedColumns = ColumnarDataSet.empty();
+      }
+    }
+    this.current = new AtomicReference<>(new Version(loadedColumns, 0));
+    this.loadNanos = System.nanoTime() - loadStart;
+  }
+
+  private DataSetInformation(YOBFileReader yobFileReader, ColumnarDataSet columns,
+      long loadNanos) {
+    this.yobFileReader = yobFileReader;
+    this.lazyDataSet = null;
+    this.pinned = false;
+    this.current = new AtomicReference<>(new Version(columns, 0));
+    this.loadNanos = loadNanos;
+  }
+
+  /**
+   * Stores all the baby information from a given dataset, as DataSetInformation(fileType, dataSet)
+   * does, except that a source that cannot be read completely throws instead of loading as an
+   * empty dataset
+   *
+   * @param fileType the specified filetype, defined in calling the Questions class
+   * @param dataSet  the specified dataSet, also defined when calling the Questions class
+   * @return the loaded dataset
+   * @throws IOException if the source cannot be found or read, or a year file is malformed
+   */
+  public static DataSetInformation loadComplete(String fileType, String dataSet)
+      throws IOException {
+    long loadStart = System.nanoTime();
     YOBFileReader yobFileReader = new YOBFileReader(fileType, dataSet);
-    this.allFemaleBabiesInDataSet = yobFileReader.allBabiesInDataSet(FEMALE);
-    this.allMaleBabiesInDataSet = yobFileReader.allBabiesInDataSet(MALE);
+    ColumnarDataSet columns = yobFileReader.loadCompleteDataSet();
+    return new DataSetInformation(yobFileReader, columns, System.nanoTime() - loadStart);
   }
 
   /**
-   * This method returns the Baby object with the highest number of name derivatives that has this
-   * baby's name as a prefix.
+   * Lists the years of a given dataset without reading any of them. Each year file is read the
+   * first time a query needs that year, and loaded years are dropped again, least recently used
+   * first, once they are estimated to use more heap than the budget (see LazyDataSet). A query that
+   * only touches a few years is answered after reading only their files. If a year file cannot be
+   * read when a query needs it, the query throws an UncheckedIOException.
    *
-   * @param allNamesInRange a set containing all the unique names within a year range
-   * @return the Baby name prefix with the largest number of name derivatives
-   */
-  public Baby findMaxPrefixInRange(Set<Baby> allNamesInRange) {
-    int maxDerivativeCount = 0;
-    Baby maxPrefix = new Baby(NO_NAME_FOUND);
-    for (Baby baby : allNamesInRange) {
-      addAllDerivatives(baby, allNamesInRange);
-      int babyDerivativeCount = baby.getNameDerivatives().size();
-      if (babyDerivativeCount > maxDerivativeCount) {
-        maxDerivativeCount = babyDerivativeCount;
-        maxPrefix = baby;
+   * @param fileType          the specified filetype, defined in calling the Questions class
+   * @param dataSet           the specified dataSet, also defined when calling the Questions class
+   * @param memoryBudgetBytes the estimated heap the loaded years may use, in bytes
+   */
+  public DataSetInformation(String fileType, String dataSet, long memoryBudgetBytes) {
+    long loadStart = System.nanoTime();
+    this.yobFileReader = new YOBFileReader(fileType, dataSet, null);
+    this.lazyDataSet = new LazyDataSet(yobFileReader, memoryBudgetBytes);
+    this.pinned = false;
+    // the years are read as queries need them, so a version only carries the generation
+    this.current = new AtomicReference<>(new Version(null, 0));
+    this.loadNanos = System.nanoTime() - loadStart;
+  }
+
+  /**
+   * A read only view of, or a dataset of its own starting from, the version another
+   * DataSetInformation has now
+   */
+  private DataSetInformation(DataSetInformation source, boolean pinned) {
+    this.yobFileReader = source.yobFileReader;
+    this.lazyDataSet = null;
+    this.pinned = pinned;
+    this.current = new AtomicReference<>(source.current.get());
+    this.loadNanos = source.loadNanos;
+  }
+
+  /**
+   * Returns a read only view of the dataset as it is now, which keeps answering from the same
+   * columns and generation however many reloads and year updates happen while it is used, so a
+   * query that reads the dataset several times never mixes two versions. A lazily loaded dataset
+   * cannot be pinned, because its years are read and dropped as queries run, and returns itself.
+   *
+   * @return the view, which throws IllegalStateException if it is reloaded or updated
+   */
+  public DataSetInformation pinned() {
+    if (pinned || lazyDataSet != null) {
+      return this;
+    }
+    return new DataSetInformation(this, true);
+  }
+
+  /**
+   * Returns a dataset of its own that starts out as this one is now, sharing its columns, and that
+   * can be reloaded and updated without affecting this one. This is how a pinned or shared dataset
+   * is changed.
+   *
+   * @return the copy, at the same generation as this dataset
+   * @throws IllegalStateException if this dataset is lazily loaded
+   */
+  public DataSetInformation copy() {
+    if (lazyDataSet != null) {
+      throw new IllegalStateException(LAZY_CANNOT_BE_COPIED);
+    }
+    return new DataSetInformation(this, false);
+  }
+
+  /**
+   * Parses all the source files again and replaces the loaded dataset with the result. Queries keep
+   * reading the old dataset while the new one is built, and queries that are already running on a
+   * pinned view finish on the dataset they started with. The new dataset is only switched in once
+   * every year file has been read, so if the source cannot be read the old dataset stays in use.
+   *
+   * @throws IOException if the source cannot be found or read, or a year file is malformed
+   */
+  public synchronized void reload() throws IOException {
+    checkNotPinned();
+    long loadStart = System.nanoTime();
+    if (lazyDataSet != null) {
+      lazyDataSet.refresh();
+      publish(null);
+    } else {
+      publish(yobFileReader.loadCompleteDataSet());
+    }
+    loadNanos = System.nanoTime() - loadStart;
+  }
+
+  /**
+   * Same as reload, but the new dataset is built on an executor so the caller does not wait for it
+   *
+   * @param executor the executor the dataset is parsed on
+   * @return a future that completes once the new dataset has been switched in, or completes
+   * exceptionally if the reload failed, leaving the old dataset in place
+   */
+  public CompletableFuture<Void> reloadInBackground(Executor executor) {
+    checkNotPinned();
+    CompletableFuture<Void> reloaded = new CompletableFuture<>();
+    executor.execute(() -> {
+      try {
+        reload();
+        reloaded.complete(null);
+      } catch (IOException | RuntimeException e) {
+        reloaded.completeExceptionally(e);
       }
+    });
+    return reloaded;
+  }
+
+  /**
+   * Reads one year file from the source again and adds that year to the loaded dataset, or
+   * replaces it if the year is already loaded. If the source no longer has a file for the year, the
+   * year is removed. Only that year's file is parsed, and every other year and its RankIndex is
+   * shared with the dataset as it was, so queries that are already running are not affected. A
+   * lazily loaded dataset only drops the year, and reads it again when a query needs it.
+   *
+   * @param year the year whose file was added, changed or removed
+   * @throws IOException if the source cannot be read or the year file is malformed
+   */
+  public synchronized void updateYear(int year) throws IOException {
+    checkNotPinned();
+    if (lazyDataSet != null) {
+      lazyDataSet.refreshYear(year);
+      publish(null);
+      return;
+    }
+    NameDictionary yearNames = new NameDictionary();
+    Map<Integer, Map<String, YearColumns>> columnsByYear = yobFileReader.loadYears(
+        Collections.singleton(year), yearNames);
+    if (columnsByYear.isEmpty()) {
+      removeYear(year);
+      return;
+    }
+    publish(current.get().columns.withYears(columnsByYear, yearNames));
+  }
+
+  /**
+   * Removes one year from the loaded dataset, sharing every other year with the dataset as it was
+   *
+   * @param year the year to remove
+   */
+  public synchronized void removeYear(int year) {
+    checkNotPinned();
+    if (lazyDataSet != null) {
+      lazyDataSet.removeYear(year);
+      publish(null);
+    } else {
+      publish(current.get().columns.withoutYear(year));
+    }
+  }
+
+  /**
+   * Switches in new columns as the next generation. Only called while holding this object's lock,
+   * so two changes never publish the same generation.
+   */
+  private void publish(ColumnarDataSet columns) {
+    current.set(new Version(columns, current.get().generation + 1));
+  }
+
+  private void checkNotPinned() {
+    if (pinned) {
+      throw new IllegalStateException(PINNED_IS_READ_ONLY);
+    }
+  }
+
+  /**
+   * Starts watching the directory of a local or mapped source, calling updateYear for every year
+   * file that is added, changed or removed there. Close the watcher to stop.
+   *
+   * @return the running watcher
+   * @throws IOException if the source is not a local directory or cannot be watched
+   */
+  public DataSetWatcher watchSource() throws IOException {
+    return watchSource(failure -> {
+    });
+  }
+
+  /**
+   * Same as watchSource(), but every year update or reload the watcher fails to make is handed to a
+   * listener, see DataSetWatcher
+   *
+   * @param failureListener called on the watching thread with the cause of each failed update
+   * @return the running watcher
+   * @throws IOException if the source is not a local directory or cannot be watched
+   */
+  public DataSetWatcher watchSource(Consumer<IOException> failureListener) throws IOException {
+    checkNotPinned();
+    return new DataSetWatcher(yobFileReader.localDirectory(), this, failureListener);
+  }
+
+  /**
+   * @return a number that goes up every time the loaded dataset is replaced, so results computed
+   * from an older dataset can be told apart
+   */
+  public long getGeneration() {
+    return current.get().generation;
+  }
+
+  /**
+   * Writes the loaded dataset to a binary snapshot file that a later DataSetInformation can be
+   * loaded from instead of parsing the source files again. A lazily loaded dataset only writes the
+   * years that are loaded.
+   *
+   * @param snapshotPath where to write the snapshot
+   * @throws IOException if the source cannot be fingerprinted or the snapshot cannot be written
+   */
+  public void writeSnapshot(Path snapshotPath) throws IOException {
+    new SnapshotFile(snapshotPath).write(yobFileReader.sourceFingerprint(), loadedColumns());
+  }
+
+  private void saveSnapshot(Path snapshotPath, long sourceFingerprint,
+      ColumnarDataSet loadedColumns) {
+    try {
+      new SnapshotFile(snapshotPath).write(sourceFingerprint, loadedColumns);
+    } catch (IOException e) {
+      // the snapshot is only an optimization, the next start will parse the source again
     }
-    return maxPrefix;
   }
 
-  private void addAllDerivatives(Baby baby, Set<Baby> allNamesInRange) {
-    for (Baby comparisonBaby : allNamesInRange) {
-      if (comparisonBaby.startsWith(baby.getName())) {
-        baby.getNameDerivatives().add(comparisonBaby.getName());
+  /**
+   * @return an estimate of the heap used by the loaded dataset, in bytes
+   */
+  public long estimatedHeapBytes() {
+    return loadedColumns().estimatedHeapBytes();
+  }
+
+  /**
+   * Counts the rows of a gender in a year range without loading any year that is not loaded yet
+   *
+   * @param gender    the gender to count, or null to count both
+   * @param yearStart the first year to count
+   * @param yearEnd   the last year to count
+   * @return the number of loaded rows of the gender in the range
+   */
+  public long rowsInRange(String gender, int yearStart, int yearEnd) {
+    ColumnarDataSet dataSet = loadedColumns();
+    long rows = 0;
+    for (String eachGender : gender == null ? List.of(MALE, FEMALE) : List.of(gender)) {
+      GenderColumns genderColumns = dataSet.getColumns(eachGender);
+      for (int year : genderColumns.years()) {
+        if (year >= yearStart && year <= yearEnd) {
+          rows += genderColumns.get(year).size();
+        }
       }
     }
+    return rows;
+  }
+
+  /**
+   * @return how long the last full load or reload took, in nanoseconds. For a lazily loaded dataset
+   * this is only the time taken to list its years.
+   */
+  public long getLoadNanos() {
+    return loadNanos;
+  }
+
+  /**
+   * @return the number of years loaded, of either gender, without loading any more
+   */
+  public int loadedYearCount() {
+    ColumnarDataSet dataSet = loadedColumns();
+    Set<Integer> years = new HashSet<>(dataSet.getColumns(MALE).years());
+    years.addAll(dataSet.getColumns(FEMALE).years());
+    return years.size();
+  }
+
+  private ColumnarDataSet loadedColumns() {
+    return lazyDataSet == null ? current.get().columns : lazyDataSet.loadedYears();
+  }
+
+  /**
+   * Returns the dataset a question about a range of years should work on. A question asks for it
+   * once and hands it to the per-year lookups that take a ColumnarDataSet, such as
+   * findRankFromNameAndGender, instead of asking once per year: when the dataset is loaded lazily
+   * the years of the range are then loaded together and none is dropped to make room for another
+   * while the question runs.
+   *
+   * @param yearStart start of the year range
+   * @param yearEnd   end of the year range
+   * @return a dataset that has every year in the range the dataset has a file for
+   */
+  public ColumnarDataSet columnsFor(int yearStart, int yearEnd) {
+    return lazyDataSet == null ? current.get().columns
+        : lazyDataSet.columnsFor(yearStart, yearEnd);
+  }
+
+  private boolean containsYear(int year) {
+    return lazyDataSet == null ? current.get().columns.getColumns(MALE).containsYear(year)
+        : lazyDataSet.containsYear(year);
+  }
+
+  /**
+   * This method finds the name with the highest number of name derivatives (names in the range
+   * that have it as a prefix) and returns those derivatives. The derivatives are counted with a
+   * PrefixIndex that belongs to this call only, so the Babies in the range are not changed.
+   *
+   * @param allNamesInRange a set containing all the unique names within a year range
+   * @return the derivatives of the name prefix with the most derivatives in alphabetical order,
+   * the prefix itself included, or an empty set if the range has no names
+   */
+  public Set<String> findMaxPrefixInRange(Set<Baby> allNamesInRange) {
+    return findMaxPrefixInRange(allNamesInRange, null);
+  }
+
+  /**
+   * Same as findMaxPrefixInRange(allNamesInRange), but the names are sorted in parallel on a pool
+   *
+   * @param allNamesInRange a set containing all the unique names within a year range
+   * @param pool            the pool the names are sorted on, or null to sort them on this thread
+   * @return the derivatives of the name prefix with the most derivatives in alphabetical order,
+   * the prefix itself included, or an empty set if the range has no names
+   */
+  public Set<String> findMaxPrefixInRange(Set<Baby> allNamesInRange, ForkJoinPool pool) {
+    PrefixIndex prefixIndex = pool == null ? new PrefixIndex(allNamesInRange)
+        : pool.invoke(ForkJoinTask.adapt(() -> new PrefixIndex(allNamesInRange, true)));
+    int maxPrefixIndex = prefixIndex.mostDerivatives();
+    if (maxPrefixIndex < 0) {
+      return new TreeSet<>();
+    }
+    return new TreeSet<>(prefixIndex.derivativesOf(maxPrefixIndex));
   }
 
   /**
@@ -75,11 +483,25 @@ public class DataSetInformation {
    */
   public void checkValidParameters(String gender, int yearStart, int yearEnd)
       throws InvalidParameterException {
+    checkValidParameters(gender, yearStart, yearEnd, this::containsYear);
+  }
+
+  /**
+   * Same as checkValidParameters(gender, yearStart, yearEnd), for a dataset that is not loaded but
+   * whose years are known
+   *
+   * @param gender       Baby's gender
+   * @param yearStart    start of the year range
+   * @param yearEnd      end of the year range
+   * @param containsYear tells whether the dataset has a file for a year
+   * @throws InvalidParameterException the years or gender inputs are invalid
+   */
+  public static void checkValidParameters(String gender, int yearStart, int yearEnd,
+      IntPredicate containsYear) throws InvalidParameterException {
     if (yearStart > yearEnd) {
       throw new InvalidParameterException(INVALID_YEAR_PARAMETER);
     }
-    if (!allMaleBabiesInDataSet.containsKey(yearStart) || !allMaleBabiesInDataSet
-        .containsKey(yearEnd)) {
+    if (!containsYear.test(yearStart) || !containsYear.test(yearEnd)) {
       throw new InvalidParameterException(INVALID_YEAR_PARAMETER);
     }
     if (!gender.equalsIgnoreCase(MALE) && !gender.equalsIgnoreCase(FEMALE)) {
@@ -89,7 +511,9 @@ public class DataSetInformation {
 
   /**
    * This method is used to return all the unique baby objects that are a particular gender and are
-   * within a particular year range.
+   * within a particular year range. Names are deduplicated ignoring case through the canonical IDs
+   * of the NameDictionary, and the set is in no particular order, so callers that need the names in
+   * alphabetical order have to sort them.
    *
    * @param gender    Baby's gender
    * @param yearStart start of the year range
@@ -97,13 +521,115 @@ public class DataSetInformation {
    * @return a set containing all the unique baby gender-specific objects within a year range
    */
   public Set<Baby> allNamesInYearRange(String gender, int yearStart, int yearEnd) {
-    Set<Baby> allNames = new TreeSet<>();
+    ColumnarDataSet dataSet = columnsFor(yearStart, yearEnd);
+    NameDictionary names = dataSet.getNames();
+    BitSet namesSeen = new BitSet(names.size());
+    Set<Baby> allNames = new HashSet<>();
     for (int year = yearStart; year <= yearEnd; year++) {
-      allNames.addAll(desiredGenderMap(gender).get(year));
+      YearColumns yearColumns = dataSet.getColumns(gender).get(year);
+      for (int i = 0; i < yearColumns.size(); i++) {
+        int nameId = yearColumns.nameId(i);
+        int canonicalId = names.canonicalIdOf(nameId);
+        if (!namesSeen.get(canonicalId)) {
+          namesSeen.set(canonicalId);
+          allNames.add(new Baby(names.nameOf(nameId), names.foldedNameOf(nameId),
+              yearColumns.count(i)));
+        }
+      }
     }
     return allNames;
   }
 
+  /**
+   * Scans one year range of a gender, see scanRanges
+   *
+   * @param gender    Baby's gender
+   * @param yearStart start of the year range
+   * @param yearEnd   end of the year range
+   * @return the names and rank totals of the range
+   */
+  public RangeScan scanRange(String gender, int yearStart, int yearEnd) {
+    return scanRanges(gender, List.of(new int[]{yearStart, yearEnd})).get(0);
+  }
+
+  /**
+   * Same as scanRange(gender, yearStart, yearEnd), but the range is split into runs of years that
+   * are scanned at the same time on a pool, at most one run per thread of the pool. The runs are
+   * then appended in year order, so the scan is the same as one made on a single thread.
+   *
+   * @param gender    Baby's gender
+   * @param yearStart start of the year range
+   * @param yearEnd   end of the year range
+   * @param pool      the pool the years are split across, or null to scan them on this thread
+   * @return the names and rank totals of the range
+   */
+  public RangeScan scanRange(String gender, int yearStart, int yearEnd, ForkJoinPool pool) {
+    if (pool == null) {
+      return scanRange(gender, yearStart, yearEnd);
+    }
+    ColumnarDataSet dataSet = columnsFor(yearStart, yearEnd);
+    int yearsPerTask = Math.max(1, (yearEnd - yearStart + pool.getParallelism())
+        / pool.getParallelism());
+    return pool.invoke(new ScanTask(dataSet, gender, yearStart, yearEnd, yearsPerTask));
+  }
+
+  /**
+   * Scans several year ranges of a gender in one pass over the years they cover, so a year shared
+   * by overlapping ranges is only read once. Each row adds its rank to the scan of every range
+   * that has its year; a name that appears more than once in a year (ignoring case) only adds its
+   * best rank, as findRankFromNameAndGender would return.
+   *
+   * @param gender     Baby's gender
+   * @param yearRanges the ranges to scan, each as {yearStart, yearEnd}
+   * @return the scan of each range, in the same order as the ranges
+   */
+  public List<RangeScan> scanRanges(String gender, List<int[]> yearRanges) {
+    int unionStart = Integer.MAX_VALUE;
+    int unionEnd = Integer.MIN_VALUE;
+    for (int[] yearRange : yearRanges) {
+      unionStart = Math.min(unionStart, yearRange[0]);
+      unionEnd = Math.max(unionEnd, yearRange[1]);
+    }
+    ColumnarDataSet dataSet = columnsFor(unionStart, unionEnd);
+    List<RangeScan> rangeScans = new ArrayList<>();
+    for (int[] yearRange : yearRanges) {
+      rangeScans.add(new RangeScan(dataSet, gender, yearRange[0], yearRange[1]));
+    }
+    scanYears(dataSet, gender, unionStart, unionEnd, rangeScans);
+    return rangeScans;
+  }
+
+  private static void scanYears(ColumnarDataSet dataSet, String gender, int unionStart,
+      int unionEnd, List<RangeScan> rangeScans) {
+    NameDictionary names = dataSet.getNames();
+    int[] lastYearSeen = new int[names.size()];
+    Arrays.fill(lastYearSeen, Integer.MIN_VALUE);
+    List<RangeScan> coveringScans = new ArrayList<>();
+    for (int year = unionStart; year <= unionEnd; year++) {
+      YearColumns yearColumns = dataSet.getColumns(gender).get(year);
+      coveringScans.clear();
+      for (RangeScan rangeScan : rangeScans) {
+        if (year >= rangeScan.getYearStart() && year <= rangeScan.getYearEnd()) {
+          coveringScans.add(rangeScan);
+        }
+      }
+      if (yearColumns == null || coveringScans.isEmpty()) {
+        continue;
+      }
+      for (int i = 0; i < yearColumns.size(); i++) {
+        int nameId = yearColumns.nameId(i);
+        int canonicalId = names.canonicalIdOf(nameId);
+        if (lastYearSeen[canonicalId] == year) {
+          continue;
+        }
+        lastYearSeen[canonicalId] = year;
+        for (RangeScan rangeScan : coveringScans) {
+          rangeScan.add(nameId, canonicalId, i + 1, yearColumns.count(i));
+        }
+      }
+    }
+  }
+
   /**
    * This method keeps a count of how many names started with a particular letter. It utilizes a map
    * that maps each letter in the alphabet with the count of how many babies started with that
@@ -116,10 +642,11 @@ public class DataSetInformation {
    * babies born with that first letter
    */
   public Map<String, Integer> countAllNamesFirstLetter(String gender, int yearStart, int yearEnd) {
+    ColumnarDataSet dataSet = columnsFor(yearStart, yearEnd);
     Map<String, Integer> letterCounter = new TreeMap<>();
     for (int year = yearStart; year <= yearEnd; year++) {
       for (String letter : ALL_CAPITAL_LETTERS) {
-        int count = letterCount(gender, letter, year)[1];
+        int count = letterCount(dataSet, gender, letter, year)[1];
         letterCounter.put(letter, letterCounter.getOrDefault(letter, 0) + count);
       }
     }
@@ -139,9 +666,10 @@ public class DataSetInformation {
    */
   public Map<String, Integer> countAllNamesAtRank(String gender, int yearStart, int yearEnd,
       int rank) {
+    ColumnarDataSet dataSet = columnsFor(yearStart, yearEnd);
     Map<String, Integer> nameAtRankCounter = new TreeMap<>();
     for (int year = yearStart; year <= yearEnd; year++) {
-      String nameAtRank = findNameFromRankAndGender(gender, year, rank);
+      String nameAtRank = findNameFromRankAndGender(dataSet, gender, year, rank);
       nameAtRankCounter.put(nameAtRank, nameAtRankCounter.getOrDefault(nameAtRank, 0) + 1);
     }
     return nameAtRankCounter;
@@ -158,13 +686,19 @@ public class DataSetInformation {
    * babies born with that name
    */
   public int[] letterCount(String gender, String letter, int year) {
-    List<Baby> babyNames = desiredGenderMap(gender).get(year);
+    return letterCount(columnsFor(year, year), gender, letter, year);
+  }
+
+  private static int[] letterCount(ColumnarDataSet dataSet, String gender, String letter,
+      int year) {
+    YearColumns yearColumns = dataSet.getColumns(gender).get(year);
+    NameDictionary names = dataSet.getNames();
     int namesCount = 0;
     int babiesCount = 0;
-    for (Baby baby : babyNames) {
-      if (baby.startsWith(letter)) {
+    for (int i = 0; i < yearColumns.size(); i++) {
+      if (names.startsWithIgnoreCase(yearColumns.nameId(i), letter)) {
         namesCount++;
-        babiesCount += baby.getCount();
+        babiesCount += yearColumns.count(i);
       }
     }
     return new int[]{namesCount, babiesCount};
@@ -183,12 +717,17 @@ public class DataSetInformation {
    * year range
    */
   public String[] allNamesWithLetter(String gender, String letter, int yearStart, int yearEnd) {
+    ColumnarDataSet dataSet = columnsFor(yearStart, yearEnd);
+    NameDictionary names = dataSet.getNames();
+    BitSet namesSeen = new BitSet(names.size());
     Set<String> allNames = new TreeSet<>();
     for (int year = yearStart; year <= yearEnd; year++) {
-      List<Baby> babyNamesForThatYear = desiredGenderMap(gender).get(year);
-      for (Baby baby : babyNamesForThatYear) {
-        if (baby.startsWith(letter)) {
-          allNames.add(baby.getName());
+      YearColumns yearColumns = dataSet.getColumns(gender).get(year);
+      for (int i = 0; i < yearColumns.size(); i++) {
+        int nameId = yearColumns.nameId(i);
+        if (!namesSeen.get(nameId) && names.startsWithIgnoreCase(nameId, letter)) {
+          namesSeen.set(nameId);
+          allNames.add(names.nameOf(nameId));
         }
       }
     }
@@ -206,9 +745,10 @@ public class DataSetInformation {
    * @return a map mapping baby names with the number of times that they were the most popular name
    */
   public Map<String, Integer> countTopRankedNames(String gender, int yearStart, int yearEnd) {
+    ColumnarDataSet dataSet = columnsFor(yearStart, yearEnd);
     Map<String, Integer> nameCounter = new TreeMap<>();
     for (int year = yearStart; year <= yearEnd; year++) {
-      String nameForThatYear = findNameFromRankAndGender(gender, year, 1);
+      String nameForThatYear = findNameFromRankAndGender(dataSet, gender, year, 1);
       nameCounter.put(nameForThatYear, nameCounter.getOrDefault(nameForThatYear, 0) + 1);
     }
     return nameCounter;
@@ -216,8 +756,8 @@ public class DataSetInformation {
   }
 
   /**
-   * This method uses the fact that each list in the map is listed in the correct order as the file
-   * in returning the rank of the specified name/gender pair.
+   * This method returns the rank of the specified name/gender pair from the year's RankIndex, so
+   * it takes the same time however far down the year the name is.
    *
    * @param name   Baby's name
    * @param gender Baby's gender
@@ -225,11 +765,26 @@ public class DataSetInformation {
    * @return the rank within the specific year that matches the name/gender request
    */
   public int findRankFromNameAndGender(String name, String gender, int year) {
-    List<Baby> babyNames = desiredGenderMap(gender).get(year);
-    if (!babyNames.contains(new Baby(name))) {
+    return findRankFromNameAndGender(columnsFor(year, year), name, gender, year);
+  }
+
+  /**
+   * This method returns the rank of the specified name/gender pair in a dataset a question has
+   * already asked for with columnsFor, so a question about many years looks the dataset up once
+   *
+   * @param dataSet the dataset from columnsFor, which has the year loaded
+   * @param name    Baby's name
+   * @param gender  Baby's gender
+   * @param year    the specified year
+   * @return the rank within the specific year that matches the name/gender request
+   */
+  public static int findRankFromNameAndGender(ColumnarDataSet dataSet, String name, String gender,
+      int year) {
+    int canonicalId = dataSet.getNames().findIgnoreCase(name);
+    if (canonicalId < 0) {
       return 0;
     }
-    return babyNames.indexOf(new Baby(name)) + 1;
+    return dataSet.getColumns(gender).rankOf(year, canonicalId, dataSet.getNames());
   }
 
 
@@ -242,28 +797,122 @@ public class DataSetInformation {
    * @return the baby's name at a particular rank
    */
   public String findNameFromRankAndGender(String gender, int year, int rank) {
-    List<Baby> babyNames = desiredGenderMap(gender).get(year);
-    if (rank > babyNames.size() || rank == 0) {
+    return findNameFromRankAndGender(columnsFor(year, year), gender, year, rank);
+  }
+
+  /**
+   * This method returns the name found at the specified rank/gender in a dataset a question has
+   * already asked for with columnsFor, so a question about many years looks the dataset up once
+   *
+   * @param dataSet the dataset from columnsFor, which has the year loaded
+   * @param gender  Baby's gender
+   * @param year    the specified year
+   * @param rank    the specified rank
+   * @return the baby's name at a particular rank
+   */
+  public static String findNameFromRankAndGender(ColumnarDataSet dataSet, String gender, int year,
+      int rank) {
+    YearColumns yearColumns = dataSet.getColumns(gender).get(year);
+    if (rank > yearColumns.size() || rank == 0) {
       return NO_NAME_FOUND;
     }
-    return babyNames.get(rank - 1).getName();
+    return dataSet.getNames().nameOf(yearColumns.nameId(rank - 1));
+  }
+
+  /**
+   * This method returns the k names with the most births within a year range, see TopKNames
+   *
+   * @param gender    Baby's gender
+   * @param yearStart start of the year range
+   * @param yearEnd   end of the year range
+   * @param k         the most names to return, at least 1
+   * @return the names with their total births in the range, most births first
+   */
+  public List<Baby> topK(String gender, int yearStart, int yearEnd, int k) {
+    return TopKNames.of(columnsFor(yearStart, yearEnd), gender, yearStart, yearEnd, k);
+  }
+
+  /**
+   * This method returns every year in the dataset for the specified gender, loaded or not. If the
+   * requested gender isn't male or female, it returns an empty list.
+   *
+   * @param gender the specified gender
+   * @return all the years in the dataset in ascending order
+   */
+  public List<Integer> yearsInDataSet(String gender) {
+    if (lazyDataSet != null && loadedColumns().getColumns(gender) != GenderColumns.EMPTY) {
+      return lazyDataSet.years();
+    }
+    return loadedColumns().getColumns(gender).years();
   }
 
   /**
    * This method is used to return all the information from the dataset for the specified gender. If
-   * the requested gender isn't male or female, it returns an empty hashmap which the program
-   * realizes to return an InvalidParameterException
+   * the requested gender isn't male or female, it returns an empty map which the program realizes
+   * to return an InvalidParameterException. The lists are read only views over the columnar data.
+   * A lazily loaded dataset reads every year that is not loaded yet.
    *
    * @param gender the specified gender
    * @return a map containing the dataset information for that gender
    */
   public Map<Integer, List<Baby>> desiredGenderMap(String gender) {
-    if (gender.equalsIgnoreCase(MALE)) {
-      return allMaleBabiesInDataSet;
-    } else if (gender.equalsIgnoreCase(FEMALE)) {
-      return allFemaleBabiesInDataSet;
-    } else {
-      return new HashMap<>();
+    List<Integer> years = yearsInDataSet(gender);
+    ColumnarDataSet dataSet = years.isEmpty() ? loadedColumns()
+        : columnsFor(years.get(0), years.get(years.size() - 1));
+    return dataSet.getColumns(gender).asBabyMap(dataSet.getNames());
+  }
+
+  /**
+   * One version of the loaded dataset: its columns and the generation they were published as. A
+   * lazily loaded dataset's versions have no columns, only the generation.
+   */
+  private static class Version {
+
+    private final ColumnarDataSet columns;
+    private final long generation;
+
+    private Version(ColumnarDataSet columns, long generation) {
+      this.columns = columns;
+      this.generation = generation;
+    }
+  }
+
+  /**
+   * Scans a run of years by splitting it in halves until each half is small enough to scan on one
+   * thread, then appending the later half's scan to the earlier half's
+   */
+  private static class ScanTask extends RecursiveTask<RangeScan> {
+
+    private static final long serialVersionUID = 1L;
+    private final ColumnarDataSet dataSet;
+    private final String gender;
+    private final int yearStart;
+    private final int yearEnd;
+    private final int yearsPerTask;
+
+    private ScanTask(ColumnarDataSet dataSet, String gender, int yearStart, int yearEnd,
+        int yearsPerTask) {
+      this.dataSet = dataSet;
+      this.gender = gender;
+      this.yearStart = yearStart;
+      this.yearEnd = yearEnd;
+      this.yearsPerTask = yearsPerTask;
+    }
+
+    @Override
+    protected RangeScan compute() {
+      if (yearEnd - yearStart < yearsPerTask) {
+        RangeScan rangeScan = new RangeScan(dataSet, gender, yearStart, yearEnd);
+        scanYears(dataSet, gender, yearStart, yearEnd, List.of(rangeScan));
+        return rangeScan;
+      }
+      int middle = (yearStart + yearEnd) >>> 1;
+      ScanTask earlierYears = new ScanTask(dataSet, gender, yearStart, middle, yearsPerTask);
+      ScanTask laterYears = new ScanTask(dataSet, gender, middle + 1, yearEnd, yearsPerTask);
+      laterYears.fork();
+      RangeScan rangeScan = earlierYears.compute();
+      rangeScan.append(laterYears.join());
+      return rangeScan;
     }
   }
 
@@ -0,0 +1,43 @@
+package names;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for a full load of a dataset by YOBFileReader.loadDataSet or
+ * loadCompleteDataSet. A load that fails in loadDataSet still returns an empty dataset, so that
+ * questions about it throw InvalidParameterException; this event keeps the error the load failed
+ * with, which is otherwise lost. Each year file of the load also has its own YearFileLoadEvent.
+ *
+ * @author Hosam Tageldin
+ */
+@Name("names.DataSetLoad")
+@Label("Data Set Load")
+@Category({"Baby Names", "Loading"})
+@Description("Full load of a dataset")
+@StackTrace(false)
+public class DataSetLoadEvent extends jdk.jfr.Event {
+
+  @Label("Source")
+  @Description("Web, Local, Mapped or Zip")
+  String source;
+
+  @Label("Data Set")
+  String dataSet;
+
+  @Label("Years")
+  @Description("Years loaded")
+  int years;
+
+  @Label("Names")
+  @Description("Distinct name spellings loaded")
+  int names;
+
+  @Label("Failure")
+  @Description("The error the load failed with, or null if it succeeded")
+  String failure;
+
+}
@@ -0,0 +1,144 @@
+package names;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * This class hands out one loaded DataSetInformation per source (file type and dataset) to any
+ * number of users, so users of the same source share one load and one copy of the data. Every
+ * acquire returns a Lease, and the dataset is dropped from the registry once the last lease on it
+ * is closed; a later acquire loads it again.
+ * <p>
+ * The first acquire of a source loads it on the calling thread. Acquires of the same source that
+ * come in while it is loading wait for that load instead of starting their own. The source is
+ * loaded with DataSetInformation.loadComplete, so a source that cannot be read completely is never
+ * shared as an empty dataset: the load fails, every waiting acquire fails with it, the source is
+ * dropped from the registry and the next acquire tries again.
+ * <p>
+ * The shared dataset is a read only view (see DataSetInformation.pinned), so no user can change
+ * what the others see: reloading or updating it throws IllegalStateException. A user that needs to
+ * change its dataset takes a copy of its own (see DataSetInformation.copy), as Questions does.
+ *
+ * @author Hosam Tageldin
+ */
+public class DataSetRegistry {
+
+  private static final DataSetRegistry SHARED = new DataSetRegistry();
+  private final Map<List<String>, Entry> entries = new HashMap<>();
+
+  /**
+   * @return the registry shared by the whole process
+   */
+  public static DataSetRegistry getShared() {
+    return SHARED;
+  }
+
+  /**
+   * Returns a lease on the loaded dataset of a source, loading it if no one is using it yet
+   *
+   * @param fileType "Web" "Local" "Mapped" or "Zip", ignoring case
+   * @param dataSet  the specific set to read within the source
+   * @return a lease on the dataset, which must be closed once it is no longer used
+   * @throws IOException if the source cannot be found or read, or a year file is malformed
+   */
+  public Lease acquire(String fileType, String dataSet) throws IOException {
+    List<String> key = List.of(fileType.toUpperCase(), dataSet);
+    Entry entry;
+    boolean loadsDataSet = false;
+    synchronized (this) {
+      entry = entries.get(key);
+      if (entry == null) {
+        entry = new Entry();
+        entries.put(key, entry);
+        loadsDataSet = true;
+      }
+      entry.users++;
+    }
+    if (loadsDataSet) {
+      try {
+        entry.dataSetInfo.complete(DataSetInformation.loadComplete(fileType, dataSet).pinned());
+      } catch (IOException | RuntimeException | Error e) {
+        forget(key, entry);
+        entry.dataSetInfo.completeExceptionally(e);
+        throw e;
+      }
+    }
+    try {
+      return new Lease(this, key, entry, entry.dataSetInfo.join());
+    } catch (CompletionException e) {
+      forget(key, entry);
+      if (e.getCause() instanceof IOException) {
+        throw new IOException(e.getCause().getMessage(), e.getCause());
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * @param fileType "Web" "Local" "Mapped" or "Zip", ignoring case
+   * @param dataSet  the specific set to read within the source
+   * @return the number of open leases on the source's dataset, 0 if it is not loaded
+   */
+  public synchronized int userCount(String fileType, String dataSet) {
+    Entry entry = entries.get(List.of(fileType.toUpperCase(), dataSet));
+    return entry == null ? 0 : entry.users;
+  }
+
+  private synchronized void release(List<String> key, Entry entry) {
+    entry.users--;
+    if (entry.users == 0) {
+      entries.remove(key, entry);
+    }
+  }
+
+  private synchronized void forget(List<String> key, Entry entry) {
+    entries.remove(key, entry);
+  }
+
+  /**
+   * One user's hold on a shared dataset. Closing the lease more than once only releases it once.
+   */
+  public static class Lease implements AutoCloseable {
+
+    private final DataSetRegistry registry;
+    private final List<String> key;
+    private final Entry entry;
+    private final DataSetInformation dataSetInfo;
+    private boolean closed;
+
+    private Lease(DataSetRegistry registry, List<String> key, Entry entry,
+        DataSetInformation dataSetInfo) {
+      this.registry = registry;
+      this.key = key;
+      this.entry = entry;
+      this.dataSetInfo = dataSetInfo;
+    }
+
+    /**
+     * @return the shared dataset, which is read only
+     */
+    public DataSetInformation getDataSetInfo() {
+      return dataSetInfo;
+    }
+
+    /**
+     * Releases the dataset, dropping it from the registry if this was its last user
+     */
+    @Override
+    public synchronized void close() {
+      if (!closed) {
+        closed = true;
+        registry.release(key, entry);
+      }
+    }
+  }
+
+  private static class Entry {
+
+    private final CompletableFuture<DataSetInformation> dataSetInfo = new CompletableFuture<>();
+    private int users;
+  }
+
+}
@@ -0,0 +1,157 @@
+package names;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * This class watches the directory of a local dataset with a WatchService and keeps a
+ * DataSetInformation up to date as year files are added, changed or removed there. Each event only
+ * re-reads the one year whose file changed (see DataSetInformation.updateYear); if the watch
+ * service reports that it lost events, the whole dataset is reloaded instead. Events that arrive
+ * together are grouped, so a file that is written in several steps is only read once per batch. A
+ * year or reload that fails, for example because a file is still being written, keeps the dataset
+ * as it was; a failed reload is tried again with the next batch of events, since the events it
+ * stood for are gone. Every failure is counted, the last one is kept, and each is handed to a
+ * listener, so a broken update is visible to the watcher's owner (Questions records them in its
+ * metrics).
+ * <p>
+ * The watching is done on a daemon thread, which stops when the watcher is closed.
+ *
+ * @author Hosam Tageldin
+ */
+public class DataSetWatcher implements Closeable {
+
+  private static final String THREAD_NAME = "dataset-watcher-";
+  private final WatchService watchService;
+  private final DataSetInformation dataSetInfo;
+  private final Thread watchThread;
+  private final Consumer<IOException> failureListener;
+  private boolean reloadPending;
+  private long failedUpdateCount;
+  private IOException lastFailure;
+
+  /**
+   * Starts watching the directory
+   *
+   * @param directory   the directory holding the year files
+   * @param dataSetInfo the dataset to keep up to date
+   * @throws IOException if the directory cannot be watched
+   */
+  public DataSetWatcher(Path directory, DataSetInformation dataSetInfo) throws IOException {
+    this(directory, dataSetInfo, failure -> {
+    });
+  }
+
+  /**
+   * Starts watching the directory, handing every failed update or reload to a listener
+   *
+   * @param directory       the directory holding the year files
+   * @param dataSetInfo     the dataset to keep up to date
+   * @param failureListener called on the watching thread with the cause of each failed update
+   * @throws IOException if the directory cannot be watched
+   */
+  public DataSetWatcher(Path directory, DataSetInformation dataSetInfo,
+      Consumer<IOException> failureListener) throws IOException {
+    this.dataSetInfo = dataSetInfo;
+    this.failureListener = failureListener;
+    this.watchService = directory.getFileSystem().newWatchService();
+    directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+    this.watchThread = new Thread(this::watch, THREAD_NAME + directory.getFileName());
+    watchThread.setDaemon(true);
+    watchThread.start();
+  }
+
+  /**
+   * Stops watching the directory
+   *
+   * @throws IOException if the watch service cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+    watchThread.interrupt();
+  }
+
+  /**
+   * @return the number of year updates and reloads that have failed since the watcher started
+   */
+  public synchronized long getFailedUpdateCount() {
+    return failedUpdateCount;
+  }
+
+  /**
+   * @return the cause of the last failed year update or reload, or null if none has failed
+   */
+  public synchronized IOException getLastFailure() {
+    return lastFailure;
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        List<WatchEvent<?>> events = new ArrayList<>();
+        do {
+          events.addAll(key.pollEvents());
+          key.reset();
+          key = watchService.poll();
+        } while (key != null);
+        applyEvents(events);
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // the watcher was closed
+    }
+  }
+
+  /**
+   * Applies a batch of events that arrived together: every year named by the events is updated
+   * once, however many events it had, unless events were lost or an earlier reload failed, in which
+   * case the whole dataset is reloaded instead
+   *
+   * @param events the events of the batch, in the order they arrived
+   */
+  synchronized void applyEvents(List<WatchEvent<?>> events) {
+    Set<Integer> changedYears = new TreeSet<>();
+    boolean eventsLost = false;
+    for (WatchEvent<?> event : events) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        eventsLost = true;
+      } else {
+        int year = YOBFileReader.extractYear(event.context().toString());
+        if (year != 0) {
+          changedYears.add(year);
+        }
+      }
+    }
+    if (eventsLost || reloadPending) {
+      try {
+        dataSetInfo.reload();
+        reloadPending = false;
+      } catch (IOException e) {
+        // the dataset that was loaded stays in use until a later reload reads the whole directory
+        reloadPending = true;
+        recordFailure(e);
+      }
+      return;
+    }
+    for (int year : changedYears) {
+      try {
+        dataSetInfo.updateYear(year);
+      } catch (IOException e) {
+        // a file that is still being written is read again on its next modify event
+        recordFailure(e);
+      }
+    }
+  }
+
+  private void recordFailure(IOException failure) {
+    failedUpdateCount++;
+    lastFailure = failure;
+    failureListener.accept(failure);
+  }
+
+}
@@ -0,0 +1,212 @@
+package names;
+
+import java.util.*;
+
+/**
+ * This class holds every year of one gender, indexed by the year's offset from the first year in
+ * the dataset instead of by a Map of boxed Integer keys. Years missing from the dataset are null
+ * slots. Each year also gets a RankIndex, built once here, so the rank of a name can be found
+ * without scanning the year. A GenderColumns never changes once it is created; withYear and
+ * withoutYear return a new GenderColumns that shares every other year with this one.
+ *
+ * @author Hosam Tageldin
+ */
+public class GenderColumns {
+
+  /**
+   * Columns with no years, used for genders that are not in the dataset
+   */
+  public static final GenderColumns EMPTY = new GenderColumns(new NameDictionary(),
+      new HashMap<>());
+  private final int firstYear;
+  private final YearColumns[] columnsByYearOffset;
+  private final RankIndex[] rankIndexByYearOffset;
+  private final List<Integer> years;
+
+  /**
+   * @param names         the dictionary the name IDs refer to
+   * @param columnsByYear the columns for each year of this gender
+   */
+  public GenderColumns(NameDictionary names, Map<Integer, YearColumns> columnsByYear) {
+    List<Integer> sortedYears = new ArrayList<>(columnsByYear.keySet());
+    Collections.sort(sortedYears);
+    this.years = Collections.unmodifiableList(sortedYears);
+    if (sortedYears.isEmpty()) {
+      this.firstYear = 0;
+      this.columnsByYearOffset = new YearColumns[0];
+      this.rankIndexByYearOffset = new RankIndex[0];
+      return;
+    }
+    this.firstYear = sortedYears.get(0);
+    this.columnsByYearOffset = new YearColumns[sortedYears.get(sortedYears.size() - 1) - firstYear
+        + 1];
+    this.rankIndexByYearOffset = new RankIndex[columnsByYearOffset.length];
+    for (int year : sortedYears) {
+      columnsByYearOffset[year - firstYear] = columnsByYear.get(year);
+      rankIndexByYearOffset[year - firstYear] = new RankIndex(columnsByYear.get(year), names);
+    }
+  }
+
+  private GenderColumns(int firstYear, YearColumns[] columnsByYearOffset,
+      RankIndex[] rankIndexByYearOffset) {
+    this.firstYear = firstYear;
+    this.columnsByYearOffset = columnsByYearOffset;
+    this.rankIndexByYearOffset = rankIndexByYearOffset;
+    List<Integer> presentYears = new ArrayList<>();
+    for (int offset = 0; offset < columnsByYearOffset.length; offset++) {
+      if (columnsByYearOffset[offset] != null) {
+        presentYears.add(firstYear + offset);
+      }
+    }
+    this.years = Collections.unmodifiableList(presentYears);
+  }
+
+  /**
+   * Returns these columns with one year added, or replaced if it is already there. Only the new
+   * year's RankIndex is built; every other year is shared with these columns.
+   *
+   * @param year        the year to add or replace
+   * @param yearColumns the columns for that year
+   * @param names       the dictionary the name IDs of the new year refer to
+   * @return the columns with the year added or replaced
+   */
+  public GenderColumns withYear(int year, YearColumns yearColumns, NameDictionary names) {
+    int newFirstYear = years.isEmpty() ? year : Math.min(firstYear, year);
+    int newLastYear = years.isEmpty() ? year : Math.max(lastYear(), year);
+    YearColumns[] newColumns = new YearColumns[newLastYear - newFirstYear + 1];
+    RankIndex[] newRankIndexes = new RankIndex[newColumns.length];
+    if (!years.isEmpty()) {
+      System.arraycopy(columnsByYearOffset, 0, newColumns, firstYear - newFirstYear,
+          columnsByYearOffset.length);
+      System.arraycopy(rankIndexByYearOffset, 0, newRankIndexes, firstYear - newFirstYear,
+          rankIndexByYearOffset.length);
+    }
+    newColumns[year - newFirstYear] = yearColumns;
+    newRankIndexes[year - newFirstYear] = new RankIndex(yearColumns, names);
+    return new GenderColumns(newFirstYear, newColumns, newRankIndexes);
+  }
+
+  /**
+   * Returns these columns without one year, sharing every other year with these columns
+   *
+   * @param year the year to remove
+   * @return the columns without that year, or these columns if the year is not in them
+   */
+  public GenderColumns withoutYear(int year) {
+    if (!containsYear(year)) {
+      return this;
+    }
+    int newFirstYear = firstYear;
+    int newLastYear = lastYear();
+    while (newFirstYear <= newLastYear && (newFirstYear == year || get(newFirstYear) == null)) {
+      newFirstYear++;
+    }
+    while (newLastYear >= newFirstYear && (newLastYear == year || get(newLastYear) == null)) {
+      newLastYear--;
+    }
+    if (newFirstYear > newLastYear) {
+      return new GenderColumns(0, new YearColumns[0], new RankIndex[0]);
+    }
+    YearColumns[] newColumns = Arrays.copyOfRange(columnsByYearOffset, newFirstYear - firstYear,
+        newLastYear - firstYear + 1);
+    RankIndex[] newRankIndexes = Arrays.copyOfRange(rankIndexByYearOffset,
+        newFirstYear - firstYear, newLastYear - firstYear + 1);
+    if (year > newFirstYear && year < newLastYear) {
+      newColumns[year - newFirstYear] = null;
+      newRankIndexes[year - newFirstYear] = null;
+    }
+    return new GenderColumns(newFirstYear, newColumns, newRankIndexes);
+  }
+
+  /**
+   * @param year the requested year
+   * @return true iff the dataset has a file for that year
+   */
+  public boolean containsYear(int year) {
+    return get(year) != null;
+  }
+
+  /**
+   * @param year the requested year
+   * @return the columns for that year, or null if the dataset has no file for that year
+   */
+  public YearColumns get(int year) {
+    int offset = year - firstYear;
+    if (offset < 0 || offset >= columnsByYearOffset.length) {
+      return null;
+    }
+    return columnsByYearOffset[offset];
+  }
+
+  /**
+   * Finds the rank of a name in a year in constant time, see RankIndex.
+   *
+   * @param year        the requested year, which must be in the dataset
+   * @param canonicalId the canonical ID of the name, see NameDictionary.findIgnoreCase
+   * @param names       the dictionary the name IDs refer to
+   * @return the rank of the name in that year, or 0 if the name is not in that year
+   */
+  public int rankOf(int year, int canonicalId, NameDictionary names) {
+    return rankIndexByYearOffset[year - firstYear].rankOf(canonicalId, names);
+  }
+
+  /**
+   * @param year the requested year, which must be in the dataset
+   * @return true if the year has names that are equal ignoring case in more than one row, see
+   * RankIndex
+   */
+  public boolean hasCaseVariants(int year) {
+    return rankIndexByYearOffset[year - firstYear].hasCaseVariants();
+  }
+
+  /**
+   * @return every year in the dataset in ascending order
+   */
+  public List<Integer> years() {
+    return years;
+  }
+
+  /**
+   * Returns a read only map view of every year as a list of Babies, see YearColumns.asBabyList.
+   *
+   * @param names the dictionary the name IDs refer to
+   * @return a map of year to that year's Babies in rank order
+   */
+  public Map<Integer, List<Baby>> asBabyMap(NameDictionary names) {
+    Map<Integer, List<Baby>> babyMap = new HashMap<>();
+    for (int year : years) {
+      babyMap.put(year, get(year).asBabyList(names));
+    }
+    return Collections.unmodifiableMap(babyMap);
+  }
+
+  /**
+   * @return an estimate of the heap used by this gender's years, in bytes
+   */
+  public long estimatedHeapBytes() {
+    long heapBytes = (long) Integer.BYTES * 2 * columnsByYearOffset.length;
+    for (int year : years) {
+      heapBytes += get(year).estimatedHeapBytes() + rankIndexByYearOffset[year - firstYear]
+          .estimatedHeapBytes();
+    }
+    return heapBytes;
+  }
+
+  /**
+   * @param year the requested year
+   * @return an estimate of the heap used by that year's columns and RankIndex, in bytes, or 0 if
+   * the year is not in these columns
+   */
+  public long estimatedHeapBytes(int year) {
+    if (!containsYear(year)) {
+      return 0;
+    }
+    return get(year).estimatedHeapBytes() + rankIndexByYearOffset[year - firstYear]
+        .estimatedHeapBytes();
+  }
+
+  private int lastYear() {
+    return firstYear + columnsByYearOffset.length - 1;
+  }
+
+}
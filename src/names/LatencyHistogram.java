@@ -0,0 +1,107 @@
+package names;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is a histogram of latencies in nanoseconds that any number of threads can record into
+ * without locking. Buckets are log-linear, like HdrHistogram's: every power of two is split into
+ * SUB_BUCKETS equal buckets, so a percentile read back is within about 3% of the true latency,
+ * from single nanoseconds up to MAX_LATENCY_NANOS (latencies above it are counted as it).
+ * <p>
+ * Each bucket is a LongAdder, whose striped cells keep threads that record at the same time from
+ * contending on one counter. Buckets are only created the first time a latency falls in them, so a
+ * histogram whose latencies are close together stays small.
+ *
+ * @author Hosam Tageldin
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int HIGHEST_BIT = 42;
+  private static final long MAX_LATENCY_NANOS = (1L << (HIGHEST_BIT + 1)) - 1;
+  private static final int BUCKET_COUNT = SUB_BUCKETS * (HIGHEST_BIT - SUB_BUCKET_BITS + 2);
+  private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<>(BUCKET_COUNT);
+  private final LongAdder count = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /**
+   * @param nanos a latency in nanoseconds, negative latencies are counted as 0
+   */
+  public void record(long nanos) {
+    long latency = Math.min(Math.max(nanos, 0), MAX_LATENCY_NANOS);
+    int index = bucketIndex(latency);
+    LongAdder bucket = buckets.get(index);
+    if (bucket == null) {
+      buckets.compareAndSet(index, null, new LongAdder());
+      bucket = buckets.get(index);
+    }
+    bucket.increment();
+    count.increment();
+    max.accumulate(latency);
+  }
+
+  /**
+   * @return the number of latencies recorded
+   */
+  public long getCount() {
+    return count.sum();
+  }
+
+  /**
+   * @return the highest latency recorded, in nanoseconds, or 0 if none was
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Finds the latency that a fraction of the recorded latencies are at or below. Latencies that are
+   * recorded while this runs may or may not be counted.
+   *
+   * @param fraction the fraction of latencies, 0.5 for the median and 0.99 for the 99th percentile
+   * @return the highest latency of the bucket the percentile falls in, but no more than the highest
+   * latency recorded, in nanoseconds, or 0 if nothing was recorded
+   */
+  public long getPercentile(double fraction) {
+    long[] bucketCounts = new long[BUCKET_COUNT];
+    long total = 0;
+    for (int index = 0; index < BUCKET_COUNT; index++) {
+      LongAdder bucket = buckets.get(index);
+      if (bucket != null) {
+        bucketCounts[index] = bucket.sum();
+        total += bucketCounts[index];
+      }
+    }
+    long rank = Math.max(1, (long) Math.ceil(fraction * total));
+    long seen = 0;
+    for (int index = 0; index < BUCKET_COUNT; index++) {
+      seen += bucketCounts[index];
+      if (seen >= rank) {
+        return Math.min(highestInBucket(index), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  private static int bucketIndex(long latency) {
+    if (latency < SUB_BUCKETS) {
+      return (int) latency;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(latency) - SUB_BUCKET_BITS;
+    int subBucket = (int) (latency >>> shift) - SUB_BUCKETS;
+    return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+  }
+
+  private static long highestInBucket(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+    long lowest = (long) (SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+
+}
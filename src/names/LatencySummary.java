@@ -0,0 +1,49 @@
+package names;
+
+/**
+ * The call count and latency percentiles of one Questions method, read from its LatencyHistogram.
+ * The latencies are in microseconds.
+ *
+ * @author Hosam Tageldin
+ */
+public class LatencySummary {
+
+  private static final double NANOS_PER_MICRO = 1000.0;
+  private final long count;
+  private final double p50Micros;
+  private final double p99Micros;
+  private final double p999Micros;
+  private final double maxMicros;
+
+  /**
+   * @param histogram the histogram to summarize
+   */
+  public LatencySummary(LatencyHistogram histogram) {
+    this.count = histogram.getCount();
+    this.p50Micros = histogram.getPercentile(0.5) / NANOS_PER_MICRO;
+    this.p99Micros = histogram.getPercentile(0.99) / NANOS_PER_MICRO;
+    this.p999Micros = histogram.getPercentile(0.999) / NANOS_PER_MICRO;
+    this.maxMicros = histogram.getMax() / NANOS_PER_MICRO;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public double getP50Micros() {
+    return p50Micros;
+  }
+
+  public double getP99Micros() {
+    return p99Micros;
+  }
+
+  public double getP999Micros() {
+    return p999Micros;
+  }
+
+  public double getMaxMicros() {
+    return maxMicros;
+  }
+
+}
@@ -0,0 +1,258 @@
+package names;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * This class loads a dataset a few years at a time, as queries need them. Only the list of years is
+ * read up front (see YOBFileReader.listYears), which is enough to check the parameters of a query,
+ * so a query waits for the files of the years it asks about and no others. Loaded years are kept
+ * until their estimated heap use goes over a memory budget; then the years that have gone unused
+ * the longest are dropped, and read again if a later query needs them. The years a query asks for
+ * are never dropped to make room for each other, so a range that needs more than the budget is
+ * still answered, and the budget is met again once other years are asked for.
+ * <p>
+ * The loaded years are a ColumnarDataSet that is replaced, never changed, as years come and go, so
+ * a query keeps working on the dataset it was handed even if its years are dropped while it runs.
+ * Names of dropped years stay in the dictionary, which is small next to the year columns. Loading
+ * and dropping years is synchronized; handing out years that are already loaded is not.
+ *
+ * @author Hosam Tageldin
+ */
+public class LazyDataSet {
+
+  private static final String MALE = "M";
+  private static final String FEMALE = "F";
+  private final YOBFileReader yobFileReader;
+  private final long memoryBudgetBytes;
+  private volatile YearListing listing;
+  private volatile ColumnarDataSet loadedYears;
+  private long loadedBytes;
+
+  /**
+   * Lists the years of the dataset without reading any of them
+   *
+   * @param yobFileReader     the reader for the dataset's source
+   * @param memoryBudgetBytes the estimated heap the loaded years may use before the least recently
+   *                          used ones are dropped
+   */
+  public LazyDataSet(YOBFileReader yobFileReader, long memoryBudgetBytes) {
+    this.yobFileReader = yobFileReader;
+    this.memoryBudgetBytes = memoryBudgetBytes;
+    this.listing = listYears();
+    this.loadedYears = ColumnarDataSet.empty();
+  }
+
+  /**
+   * @return every year in the dataset in ascending order, loaded or not
+   */
+  public List<Integer> years() {
+    return listing.years;
+  }
+
+  /**
+   * @param year the requested year
+   * @return true iff the dataset has a file for that year, loaded or not
+   */
+  public boolean containsYear(int year) {
+    return listing.contains(year);
+  }
+
+  /**
+   * Returns the loaded years, first reading the files of any year in the range that is not loaded
+   * yet and dropping least recently used years outside the range if that goes over the budget.
+   *
+   * @param yearStart start of the year range
+   * @param yearEnd   end of the year range
+   * @return a dataset that has every year in the range the dataset has a file for
+   * @throws UncheckedIOException if a year file cannot be read
+   */
+  public ColumnarDataSet columnsFor(int yearStart, int yearEnd) {
+    YearListing currentListing = listing;
+    ColumnarDataSet dataSet = loadedYears;
+    for (int year = yearStart; year <= yearEnd; year++) {
+      if (currentListing.contains(year) && !dataSet.getColumns(MALE).containsYear(year)) {
+        dataSet = loadYears(yearStart, yearEnd);
+        break;
+      }
+    }
+    currentListing.markUsed(yearStart, yearEnd);
+    return dataSet;
+  }
+
+  /**
+   * @return the years that are loaded right now, without loading any
+   */
+  public ColumnarDataSet loadedYears() {
+    return loadedYears;
+  }
+
+  /**
+   * @return an estimate of the heap used by the loaded years' columns, in bytes
+   */
+  public synchronized long loadedBytes() {
+    return loadedBytes;
+  }
+
+  /**
+   * Lists the years of the source again and drops every loaded year. If the source cannot be
+   * listed, the dataset is kept as it was.
+   *
+   * @throws IOException if the source cannot be listed
+   */
+  public synchronized void refresh() throws IOException {
+    listing = new YearListing(yobFileReader.listYears(), null);
+    loadedYears = ColumnarDataSet.empty();
+    loadedBytes = 0;
+  }
+
+  /**
+   * Lists the years of the source again and drops one year, so its file is read again the next
+   * time a query needs it
+   *
+   * @param year the year whose file was added, changed or removed
+   * @throws IOException if the source cannot be listed
+   */
+  public synchronized void refreshYear(int year) throws IOException {
+    listing = new YearListing(yobFileReader.listYears(), listing);
+    dropYear(year);
+  }
+
+  /**
+   * Removes one year from the dataset, whether it is loaded or not
+   *
+   * @param year the year to remove
+   */
+  public synchronized void removeYear(int year) {
+    listing = listing.without(year);
+    dropYear(year);
+  }
+
+  private synchronized ColumnarDataSet loadYears(int yearStart, int yearEnd) {
+    YearListing currentListing = listing;
+    ColumnarDataSet dataSet = loadedYears;
+    List<Integer> missingYears = new ArrayList<>();
+    for (int year = yearStart; year <= yearEnd; year++) {
+      if (currentListing.contains(year) && !dataSet.getColumns(MALE).containsYear(year)) {
+        missingYears.add(year);
+      }
+    }
+    if (missingYears.isEmpty()) {
+      return dataSet;
+    }
+    NameDictionary yearNames = new NameDictionary();
+    Map<Integer, Map<String, YearColumns>> columnsByYear;
+    try {
+      columnsByYear = yobFileReader.loadYears(missingYears, yearNames);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    dataSet = dataSet.withYears(columnsByYear, yearNames);
+    for (int year : missingYears) {
+      if (columnsByYear.containsKey(year)) {
+        loadedBytes += yearBytes(dataSet, year);
+      } else {
+        currentListing = currentListing.without(year);
+      }
+    }
+    listing = currentListing;
+    dataSet = dropLeastRecentlyUsed(dataSet, currentListing, yearStart, yearEnd);
+    loadedYears = dataSet;
+    return dataSet;
+  }
+
+  private ColumnarDataSet dropLeastRecentlyUsed(ColumnarDataSet dataSet,
+      YearListing currentListing, int yearStart, int yearEnd) {
+    while (loadedBytes > memoryBudgetBytes) {
+      int leastRecentlyUsed = 0;
+      long oldestUse = Long.MAX_VALUE;
+      for (int year : dataSet.getColumns(MALE).years()) {
+        if ((year < yearStart || year > yearEnd) && currentListing.lastUse(year) < oldestUse) {
+          leastRecentlyUsed = year;
+          oldestUse = currentListing.lastUse(year);
+        }
+      }
+      if (oldestUse == Long.MAX_VALUE) {
+        break;
+      }
+      loadedBytes -= yearBytes(dataSet, leastRecentlyUsed);
+      dataSet = dataSet.withoutYear(leastRecentlyUsed);
+    }
+    return dataSet;
+  }
+
+  private void dropYear(int year) {
+    loadedBytes -= yearBytes(loadedYears, year);
+    loadedYears = loadedYears.withoutYear(year);
+  }
+
+  private long yearBytes(ColumnarDataSet dataSet, int year) {
+    return dataSet.getColumns(FEMALE).estimatedHeapBytes(year) + dataSet.getColumns(MALE)
+        .estimatedHeapBytes(year);
+  }
+
+  private YearListing listYears() {
+    try {
+      return new YearListing(yobFileReader.listYears(), null);
+    } catch (IOException e) {
+      // the source is missing, so the dataset has no years, as when it is loaded eagerly
+      return new YearListing(new ArrayList<>(), null);
+    }
+  }
+
+  /**
+   * The years the source has a file for, indexed by their offset from the first year, with the
+   * time each year was last asked for. The times are written without locking, so two queries
+   * touching the same year at once may leave either time, which is close enough for choosing the
+   * years to drop.
+   */
+  private static class YearListing {
+
+    private final List<Integer> years;
+    private final int firstYear;
+    private final boolean[] listedByYearOffset;
+    private final long[] lastUseByYearOffset;
+
+    YearListing(List<Integer> sortedYears, YearListing previous) {
+      this.years = Collections.unmodifiableList(sortedYears);
+      this.firstYear = sortedYears.isEmpty() ? 0 : sortedYears.get(0);
+      int yearCount = sortedYears.isEmpty() ? 0 : sortedYears.get(sortedYears.size() - 1)
+          - firstYear + 1;
+      this.listedByYearOffset = new boolean[yearCount];
+      this.lastUseByYearOffset = new long[yearCount];
+      for (int year : sortedYears) {
+        listedByYearOffset[year - firstYear] = true;
+        if (previous != null) {
+          lastUseByYearOffset[year - firstYear] = previous.lastUse(year);
+        }
+      }
+    }
+
+    boolean contains(int year) {
+      int offset = year - firstYear;
+      return offset >= 0 && offset < listedByYearOffset.length && listedByYearOffset[offset];
+    }
+
+    long lastUse(int year) {
+      return contains(year) ? lastUseByYearOffset[year - firstYear] : 0;
+    }
+
+    void markUsed(int yearStart, int yearEnd) {
+      long now = System.nanoTime();
+      for (int year = yearStart; year <= yearEnd; year++) {
+        if (contains(year)) {
+          lastUseByYearOffset[year - firstYear] = now;
+        }
+      }
+    }
+
+    YearListing without(int year) {
+      List<Integer> remainingYears = new ArrayList<>(years);
+      remainingYears.remove(Integer.valueOf(year));
+      return new YearListing(remainingYears, this);
+    }
+
+  }
+
+}
@@ -0,0 +1,430 @@
+package names;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class gives every distinct baby name in a dataset a dense int ID. The names themselves are
+ * kept once, as UTF-8 bytes in a single growing byte arena, instead of as one String per name per
+ * year. Names can be added straight from the bytes of a year file, so no String is built while
+ * loading, and a String is only created when a name is asked for with nameOf.
+ * <p>
+ * Names that are equal ignoring case share a canonical ID, the ID of the first of them that was
+ * added, so case insensitive lookups can be done with findIgnoreCase without folding any Strings.
+ * The folded key of a name (see Baby.foldName) is only built the first time it is asked for, and
+ * is then kept for every later query.
+ * <p>
+ * A dictionary is not thread safe while names are being added. Once loading is done it can be read
+ * from any number of threads. To add names to a dictionary that is already being read, add them to
+ * a copy instead; names keep their IDs in the copy.
+ *
+ * @author Hosam Tageldin
+ */
+public class NameDictionary {
+
+  private static final int INITIAL_CAPACITY = 1 << 12;
+  private static final int INITIAL_ARENA_SIZE = 1 << 15;
+  private byte[] arena;
+  private ByteBuffer arenaView;
+  private int arenaSize;
+  private int[] offsets;
+  private int[] hashes;
+  private int[] table;
+  private int[] canonicalIds;
+  private int[] foldedHashes;
+  private int[] foldedTable;
+  private int canonicalCount;
+  private volatile String[] foldedNames = new String[0];
+  private int size;
+
+  /**
+   * Creates an empty dictionary
+   */
+  public NameDictionary() {
+    arena = new byte[INITIAL_ARENA_SIZE];
+    arenaView = ByteBuffer.wrap(arena);
+    offsets = new int[INITIAL_CAPACITY + 1];
+    hashes = new int[INITIAL_CAPACITY];
+    table = new int[INITIAL_CAPACITY * 2];
+    canonicalIds = new int[INITIAL_CAPACITY];
+    foldedHashes = new int[INITIAL_CAPACITY];
+    foldedTable = new int[INITIAL_CAPACITY * 2];
+  }
+
+  private NameDictionary(NameDictionary other) {
+    arena = other.arena.clone();
+    arenaView = ByteBuffer.wrap(arena);
+    arenaSize = other.arenaSize;
+    offsets = other.offsets.clone();
+    hashes = other.hashes.clone();
+    table = other.table.clone();
+    canonicalIds = other.canonicalIds.clone();
+    foldedHashes = other.foldedHashes.clone();
+    foldedTable = other.foldedTable.clone();
+    canonicalCount = other.canonicalCount;
+    foldedNames = other.foldedNames.clone();
+    size = other.size;
+  }
+
+  /**
+   * @return a copy of this dictionary, in which every name has the same ID as in this one
+   */
+  public NameDictionary copy() {
+    return new NameDictionary(this);
+  }
+
+  /**
+   * @return the number of distinct names in the dictionary
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the ID of the name made of the UTF-8 bytes between from and to in the buffer, adding
+   * the name if it has not been seen before.
+   *
+   * @param buffer buffer holding the name's bytes
+   * @param from   index of the first byte of the name
+   * @param to     index after the last byte of the name
+   * @return the ID of the name
+   */
+  public int idOf(ByteBuffer buffer, int from, int to) {
+    int hash = hashBytes(buffer, from, to);
+    int slot = findSlot(buffer, from, to, hash);
+    if (table[slot] != 0) {
+      return table[slot] - 1;
+    }
+    return add(buffer, from, to, hash, slot);
+  }
+
+  /**
+   * Returns the ID of the name, adding the name if it has not been seen before.
+   *
+   * @param name the baby name
+   * @return the ID of the name
+   */
+  public int idOf(String name) {
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    return idOf(ByteBuffer.wrap(nameBytes), 0, nameBytes.length);
+  }
+
+  /**
+   * Returns the ID in this dictionary of a name from another dictionary, adding the name if it has
+   * not been seen before. Used to merge dictionaries that were filled on different threads.
+   *
+   * @param other   the dictionary the name comes from
+   * @param otherId the ID of the name in the other dictionary
+   * @return the ID of the same name in this dictionary
+   */
+  public int idOf(NameDictionary other, int otherId) {
+    return idOf(other.arenaView, other.offsets[otherId], other.offsets[otherId + 1]);
+  }
+
+  /**
+   * Looks up a name without adding it.
+   *
+   * @param name the baby name, matched exactly
+   * @return the ID of the name, or -1 if the dictionary does not contain it
+   */
+  public int find(String name) {
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer = ByteBuffer.wrap(nameBytes);
+    int slot = findSlot(buffer, 0, nameBytes.length, hashBytes(buffer, 0, nameBytes.length));
+    return table[slot] - 1;
+  }
+
+  /**
+   * Looks up a name from another dictionary without adding it.
+   *
+   * @param other   the dictionary the name comes from
+   * @param otherId the ID of the name in the other dictionary
+   * @return the ID of the same name in this dictionary, or -1 if this one does not contain it
+   */
+  public int find(NameDictionary other, int otherId) {
+    int from = other.offsets[otherId];
+    int to = other.offsets[otherId + 1];
+    return table[findSlot(other.arenaView, from, to, hashBytes(other.arenaView, from, to))] - 1;
+  }
+
+  /**
+   * Looks up a name ignoring case without adding it. Does not allocate for plain ASCII names.
+   *
+   * @param name the baby name, matched ignoring case
+   * @return the canonical ID of the name, or -1 if the dictionary does not contain it
+   */
+  public int findIgnoreCase(String name) {
+    int foldedHash = foldedHash(name);
+    int mask = foldedTable.length - 1;
+    int slot = foldedHash & mask;
+    while (foldedTable[slot] != 0) {
+      int canonicalId = foldedTable[slot] - 1;
+      if (foldedHashes[canonicalId] == foldedHash && equalsIgnoreCase(canonicalId, name)) {
+        return canonicalId;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * @param id the ID of a name
+   * @return the ID of the first name added that is equal to this one ignoring case
+   */
+  public int canonicalIdOf(int id) {
+    return canonicalIds[id];
+  }
+
+  /**
+   * Returns the case folded key of a name, the same key Baby.foldName would give, building it the
+   * first time it is asked for. Names that are equal ignoring case share one key.
+   *
+   * @param id the ID of a name
+   * @return the case folded key of that name
+   */
+  public String foldedNameOf(int id) {
+    int canonicalId = canonicalIds[id];
+    String[] folded = foldedNames;
+    if (canonicalId >= folded.length) {
+      // two threads growing at once only lose keys that will be built again
+      folded = Arrays.copyOf(folded, hashes.length);
+      foldedNames = folded;
+    }
+    String foldedName = folded[canonicalId];
+    if (foldedName == null) {
+      foldedName = Baby.foldName(nameOf(canonicalId));
+      folded[canonicalId] = foldedName;
+    }
+    return foldedName;
+  }
+
+  /**
+   * @param id the ID of a name
+   * @return the name with that ID
+   */
+  public String nameOf(int id) {
+    return new String(arena, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Compares a name in the dictionary to the given name ignoring case, the same way
+   * String.equalsIgnoreCase would, without creating a String for plain ASCII names.
+   *
+   * @param id   the ID of a name
+   * @param name the name to compare to
+   * @return true iff the names are equal ignoring case
+   */
+  public boolean equalsIgnoreCase(int id, String name) {
+    return matchesIgnoringCase(id, name, true);
+  }
+
+  /**
+   * Checks if a name in the dictionary starts with the given prefix ignoring case, the same way
+   * Baby.startsWith would, without creating a String for plain ASCII names.
+   *
+   * @param id     the ID of a name
+   * @param prefix the prefix to look for
+   * @return true iff the name starts with the prefix ignoring case
+   */
+  public boolean startsWithIgnoreCase(int id, String prefix) {
+    return matchesIgnoringCase(id, prefix, false);
+  }
+
+  /**
+   * Writes the dictionary in the format read back by readFrom
+   *
+   * @param out stream to write to
+   * @throws IOException if the stream cannot be written
+   */
+  public void writeTo(DataOutputStream out) throws IOException {
+    out.writeInt(size);
+    out.writeInt(arenaSize);
+    for (int id = 0; id <= size; id++) {
+      out.writeInt(offsets[id]);
+    }
+    out.write(arena, 0, arenaSize);
+  }
+
+  /**
+   * Reads a dictionary written by writeTo, leaving the buffer positioned after it
+   *
+   * @param in buffer to read from
+   * @return the dictionary that was written
+   */
+  public static NameDictionary readFrom(ByteBuffer in) {
+    NameDictionary names = new NameDictionary();
+    int nameCount = in.getInt();
+    int nameBytes = in.getInt();
+    int[] nameOffsets = new int[nameCount + 1];
+    in.asIntBuffer().get(nameOffsets);
+    in.position(in.position() + nameOffsets.length * Integer.BYTES);
+    ByteBuffer nameArena = in.slice();
+    nameArena.limit(nameBytes);
+    in.position(in.position() + nameBytes);
+    for (int id = 0; id < nameCount; id++) {
+      names.idOf(nameArena, nameOffsets[id], nameOffsets[id + 1]);
+    }
+    return names;
+  }
+
+  /**
+   * @return an estimate of the heap used by the dictionary, in bytes
+   */
+  public long estimatedHeapBytes() {
+    return arena.length + (long) Integer.BYTES * (offsets.length + hashes.length + table.length
+        + canonicalIds.length + foldedHashes.length + foldedTable.length + foldedNames.length);
+  }
+
+  private boolean matchesIgnoringCase(int id, String other, boolean wholeName) {
+    int start = offsets[id];
+    int length = offsets[id + 1] - start;
+    int compared = Math.min(length, other.length());
+    for (int i = 0; i < compared; i++) {
+      int nameByte = arena[start + i];
+      char otherChar = other.charAt(i);
+      if (nameByte < 0 || otherChar > 127) {
+        String name = nameOf(id);
+        return wholeName ? name.equalsIgnoreCase(other)
+            : name.toLowerCase().startsWith(other.toLowerCase());
+      }
+      if (nameByte != otherChar && toLowerAscii(nameByte) != toLowerAscii(otherChar)) {
+        return false;
+      }
+    }
+    return wholeName ? length == other.length() : other.length() <= length;
+  }
+
+  private int toLowerAscii(int c) {
+    return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+  }
+
+  private int foldCase(int c) {
+    return c < 128 ? toLowerAscii(c) : Character.toLowerCase(Character.toUpperCase(c));
+  }
+
+  private int foldedHash(String name) {
+    int hash = 1;
+    for (int i = 0; i < name.length(); i++) {
+      hash = 31 * hash + foldCase(name.charAt(i));
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+  private int foldedHash(int id) {
+    int hash = 1;
+    for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+      if (arena[i] < 0) {
+        return foldedHash(nameOf(id));
+      }
+      hash = 31 * hash + toLowerAscii(arena[i]);
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+  private int hashBytes(ByteBuffer buffer, int from, int to) {
+    int hash = 1;
+    for (int i = from; i < to; i++) {
+      hash = 31 * hash + buffer.get(i);
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+  private int findSlot(ByteBuffer buffer, int from, int to, int hash) {
+    int mask = table.length - 1;
+    int slot = hash & mask;
+    while (table[slot] != 0) {
+      int id = table[slot] - 1;
+      if (hashes[id] == hash && sameBytes(id, buffer, from, to)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private boolean sameBytes(int id, ByteBuffer buffer, int from, int to) {
+    int start = offsets[id];
+    if (offsets[id + 1] - start != to - from) {
+      return false;
+    }
+    for (int i = from; i < to; i++) {
+      if (arena[start + i - from] != buffer.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int add(ByteBuffer buffer, int from, int to, int hash, int slot) {
+    int length = to - from;
+    if (arenaSize + length > arena.length) {
+      arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+      arenaView = ByteBuffer.wrap(arena);
+    }
+    if (size == hashes.length) {
+      hashes = Arrays.copyOf(hashes, hashes.length * 2);
+      offsets = Arrays.copyOf(offsets, hashes.length + 1);
+      canonicalIds = Arrays.copyOf(canonicalIds, hashes.length);
+      foldedHashes = Arrays.copyOf(foldedHashes, hashes.length);
+    }
+    for (int i = from; i < to; i++) {
+      arena[arenaSize++] = buffer.get(i);
+    }
+    int id = size++;
+    hashes[id] = hash;
+    offsets[id + 1] = arenaSize;
+    table[slot] = id + 1;
+    if (size * 2 > table.length) {
+      rehash();
+    }
+    addCanonicalId(id);
+    return id;
+  }
+
+  private void addCanonicalId(int id) {
+    int foldedHash = foldedHash(id);
+    foldedHashes[id] = foldedHash;
+    int mask = foldedTable.length - 1;
+    int slot = foldedHash & mask;
+    while (foldedTable[slot] != 0) {
+      int canonicalId = foldedTable[slot] - 1;
+      if (foldedHashes[canonicalId] == foldedHash && equalsIgnoreCase(canonicalId, nameOf(id))) {
+        canonicalIds[id] = canonicalId;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    canonicalIds[id] = id;
+    foldedTable[slot] = id + 1;
+    canonicalCount++;
+    if (canonicalCount * 2 > foldedTable.length) {
+      foldedTable = new int[foldedTable.length * 2];
+      mask = foldedTable.length - 1;
+      for (int otherId = 0; otherId <= id; otherId++) {
+        if (canonicalIds[otherId] == otherId) {
+          int otherSlot = foldedHashes[otherId] & mask;
+          while (foldedTable[otherSlot] != 0) {
+            otherSlot = (otherSlot + 1) & mask;
+          }
+          foldedTable[otherSlot] = otherId + 1;
+        }
+      }
+    }
+  }
+
+  private void rehash() {
+    table = new int[table.length * 2];
+    int mask = table.length - 1;
+    for (int id = 0; id < size; id++) {
+      int slot = hashes[id] & mask;
+      while (table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = id + 1;
+    }
+  }
+
+}
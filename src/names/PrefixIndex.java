@@ -0,0 +1,117 @@
+package names;
+
+import java.util.*;
+
+/**
+ * This class counts, for every name in a set of unique names, how many names in the set start with
+ * it ignoring case (its derivatives, the name itself included). The names are sorted once by their
+ * case folded keys (see Baby.foldName), which puts every name that starts with a given prefix in
+ * one contiguous run right after the prefix. A single pass with a stack of the prefixes that are
+ * still open then finds where each name's run ends, so counting every name's derivatives takes one
+ * sort and one linear scan instead of comparing every pair of names.
+ *
+ * @author Hosam Tageldin
+ */
+public class PrefixIndex {
+
+  private final String[] sortedNames;
+  private final String[] foldedNames;
+  private final int[] runEnds;
+
+  /**
+   * Sorts the names and finds the run of derivatives of each one
+   *
+   * @param babies the unique names, no two of which are equal ignoring case
+   */
+  public PrefixIndex(Collection<Baby> babies) {
+    this(babies, false);
+  }
+
+  /**
+   * Same as PrefixIndex(babies), but the names can be sorted with Arrays.parallelSort, which runs
+   * on the pool of the calling thread when it is called from a ForkJoinPool task
+   *
+   * @param babies       the unique names, no two of which are equal ignoring case
+   * @param parallelSort whether to sort the names in parallel
+   */
+  public PrefixIndex(Collection<Baby> babies, boolean parallelSort) {
+    Baby[] sortedBabies = babies.toArray(new Baby[0]);
+    if (parallelSort) {
+      Arrays.parallelSort(sortedBabies);
+    } else {
+      Arrays.sort(sortedBabies);
+    }
+    sortedNames = new String[sortedBabies.length];
+    foldedNames = new String[sortedBabies.length];
+    for (int i = 0; i < sortedBabies.length; i++) {
+      foldedNames[i] = sortedBabies[i].getFoldedName();
+      sortedNames[i] = sortedBabies[i].getName();
+    }
+    runEnds = new int[sortedNames.length];
+    findRuns();
+  }
+
+  /**
+   * @return the number of names in the index
+   */
+  public int size() {
+    return sortedNames.length;
+  }
+
+  /**
+   * @param index position of a name in alphabetical order ignoring case
+   * @return the name at that position
+   */
+  public String nameAt(int index) {
+    return sortedNames[index];
+  }
+
+  /**
+   * @param index position of a name in alphabetical order ignoring case
+   * @return the number of names that start with that name ignoring case, the name itself included
+   */
+  public int derivativeCount(int index) {
+    return runEnds[index] - index;
+  }
+
+  /**
+   * @param index position of a name in alphabetical order ignoring case
+   * @return the names that start with that name ignoring case, the name itself included
+   */
+  public List<String> derivativesOf(int index) {
+    return Collections.unmodifiableList(
+        Arrays.asList(sortedNames).subList(index, runEnds[index]));
+  }
+
+  /**
+   * Finds the name with the most derivatives. Ties go to the alphabetically first name ignoring
+   * case, which is the first of them in the sorted order.
+   *
+   * @return the position of that name, or -1 if the index is empty
+   */
+  public int mostDerivatives() {
+    int best = -1;
+    for (int i = 0; i < sortedNames.length; i++) {
+      if (best < 0 || derivativeCount(i) > derivativeCount(best)) {
+        best = i;
+      }
+    }
+    return best;
+  }
+
+  private void findRuns() {
+    int[] openPrefixes = new int[foldedNames.length];
+    int openCount = 0;
+    for (int i = 0; i < foldedNames.length; i++) {
+      while (openCount > 0
+          && !foldedNames[i].startsWith(foldedNames[openPrefixes[openCount - 1]])) {
+        runEnds[openPrefixes[--openCount]] = i;
+      }
+      openPrefixes[openCount++] = i;
+    }
+    while (openCount > 0) {
+      runEnds[openPrefixes[--openCount]] = foldedNames.length;
+    }
+  }
+
+}
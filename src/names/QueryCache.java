@@ -0,0 +1,204 @@
+package names;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is a bounded cache of query results, kept in least recently used order so that once
+ * it is full, adding a result evicts the result that has gone unused the longest. A cache with a
+ * maximum of 0 entries keeps nothing and is not enabled, so callers can skip it, and building its
+ * keys, altogether.
+ * <p>
+ * The results are spread over up to 16 segments by the hash of their keys, each a least recently
+ * used map with its own lock and its share of the maximum, so threads asking different questions
+ * rarely wait on each other. Eviction picks the least recently used result of a segment, which is
+ * close to the least recently used result of the cache. A small cache has a single segment, so its
+ * order is exact.
+ * <p>
+ * Every result is stored with the generation of the dataset it was computed from. When a lookup or
+ * a store comes in with a newer generation, the dataset has been reloaded since the results were
+ * computed, so the results of every segment are dropped. A result computed from an older
+ * generation is never stored, and neither is a result for a key that already has one, as when two
+ * threads answered the same question at once.
+ * <p>
+ * A cache is safe to use from any number of threads. The results themselves are shared, so callers
+ * must copy any mutable result before handing it out.
+ *
+ * @author Hosam Tageldin
+ */
+public class QueryCache {
+
+  private static final int MAX_SEGMENTS = 16;
+  private static final int MIN_ENTRIES_PER_SEGMENT = 8;
+  private final int maxEntries;
+  private final Segment[] segments;
+  private final LongAdder hitCount = new LongAdder();
+  private final LongAdder missCount = new LongAdder();
+  private final LongAdder evictionCount = new LongAdder();
+  private volatile long generation;
+
+  /**
+   * @param maxEntries the most results kept at once, 0 to keep none
+   */
+  public QueryCache(int maxEntries) {
+    this.maxEntries = maxEntries;
+    int segmentCount = Math.min(MAX_SEGMENTS,
+        Integer.highestOneBit(Math.max(maxEntries / MIN_ENTRIES_PER_SEGMENT, 1)));
+    this.segments = new Segment[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      segments[i] = new Segment(maxEntries / segmentCount + (i < maxEntries % segmentCount ? 1
+          : 0));
+    }
+  }
+
+  /**
+   * @return true if the cache keeps any results, false if every lookup would be a miss
+   */
+  public boolean isEnabled() {
+    return maxEntries > 0;
+  }
+
+  /**
+   * Looks up a result and counts the lookup as a hit or a miss
+   *
+   * @param key        the query and its arguments
+   * @param generation the generation of the dataset being queried
+   * @return the cached result, or null if there is none for this generation
+   */
+  public Object get(List<Object> key, long generation) {
+    startGeneration(generation);
+    Object result = segmentFor(key).get(key, generation);
+    if (result == null) {
+      missCount.increment();
+    } else {
+      hitCount.increment();
+    }
+    return result;
+  }
+
+  /**
+   * Stores a result, evicting the least recently used result of its segment if the segment is
+   * full. A result for a key that already has one is not stored.
+   *
+   * @param key        the query and its arguments
+   * @param generation the generation of the dataset the result was computed from
+   * @param result     the result of the query
+   */
+  public void put(List<Object> key, long generation, Object result) {
+    startGeneration(generation);
+    segmentFor(key).put(key, generation, result);
+  }
+
+  /**
+   * Drops every cached result
+   */
+  public void clear() {
+    for (Segment segment : segments) {
+      segment.clear();
+    }
+  }
+
+  /**
+   * @return the number of results in the cache
+   */
+  public int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /**
+   * @return the number of lookups that found a result
+   */
+  public long hitCount() {
+    return hitCount.sum();
+  }
+
+  /**
+   * @return the number of lookups that did not find a result
+   */
+  public long missCount() {
+    return missCount.sum();
+  }
+
+  /**
+   * @return the number of results dropped to make room for newer ones
+   */
+  public long evictionCount() {
+    return evictionCount.sum();
+  }
+
+  private void startGeneration(long generation) {
+    if (generation <= this.generation) {
+      return;
+    }
+    synchronized (this) {
+      if (generation > this.generation) {
+        for (Segment segment : segments) {
+          segment.startGeneration(generation);
+        }
+        this.generation = generation;
+      }
+    }
+  }
+
+  private Segment segmentFor(List<Object> key) {
+    int hash = key.hashCode();
+    return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+  }
+
+  /**
+   * One least recently used map of the cache, with the generation its results were computed from
+   */
+  private class Segment {
+
+    private final int maxEntries;
+    private final Map<List<Object>, Object> results;
+    private long generation;
+
+    Segment(int maxEntries) {
+      this.maxEntries = maxEntries;
+      this.results = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+          if (size() > Segment.this.maxEntries) {
+            evictionCount.increment();
+            return true;
+          }
+          return false;
+        }
+      };
+    }
+
+    synchronized Object get(List<Object> key, long generation) {
+      startGeneration(generation);
+      return results.get(key);
+    }
+
+    synchronized void put(List<Object> key, long generation, Object result) {
+      startGeneration(generation);
+      if (generation == this.generation && maxEntries > 0) {
+        results.putIfAbsent(key, result);
+      }
+    }
+
+    synchronized void clear() {
+      results.clear();
+    }
+
+    synchronized int size() {
+      return results.size();
+    }
+
+    synchronized void startGeneration(long generation) {
+      if (generation > this.generation) {
+        results.clear();
+        this.generation = generation;
+      }
+    }
+
+  }
+
+}
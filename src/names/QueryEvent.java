@@ -0,0 +1,51 @@
+package names;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for one question asked through Questions, answered or read from the
+ * result cache. Rows In Range is the number of rows of the gender in the question's years that
+ * were loaded when it was answered, the most rows a question over that range reads; it is only
+ * worked out when a recording wants the event, so the event is cheap enough to leave enabled.
+ *
+ * @author Hosam Tageldin
+ */
+@Name("names.Query")
+@Label("Query")
+@Category({"Baby Names", "Queries"})
+@Description("One question answered by Questions")
+@StackTrace(false)
+public class QueryEvent extends jdk.jfr.Event {
+
+  @Label("Method")
+  String method;
+
+  @Label("Gender")
+  @Description("The gender asked about, or null if the question is about both")
+  String gender;
+
+  @Label("Year Start")
+  @Description("The first year asked about, or 0 if the question is about the latest years")
+  int yearStart;
+
+  @Label("Year End")
+  @Description("The last year asked about, or 0 if the question is about the latest years")
+  int yearEnd;
+
+  @Label("Rows In Range")
+  @Description("Loaded rows of the gender in the years asked about, or in every year if the "
+      + "question is about the latest years")
+  long rowsInRange;
+
+  @Label("Cache Hit")
+  boolean cacheHit;
+
+  @Label("Failure")
+  @Description("The error the question failed with, or null if it was answered")
+  String failure;
+
+}
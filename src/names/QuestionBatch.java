@@ -0,0 +1,238 @@
+package names;
+
+import java.util.*;
+
+/**
+ * This class answers many questions over one dataset together. Questions are asked first and only
+ * return an Answer; run then plans them as a whole: the year ranges the range questions of a
+ * gender need are scanned in a single pass (see DataSetInformation.scanRanges), so overlapping
+ * ranges read each year once, and questions on the same range share that range's unique names and
+ * rank totals instead of each working them out again.
+ * <p>
+ * The answers are the same as the answers of the matching methods of Questions, and an answer to a
+ * question with an invalid gender or years throws the same InvalidParameterException. Any other
+ * question of Questions can be added to the batch with ask, which answers it after the planned
+ * questions. A QuestionBatch is run once; start a new one from Questions.newBatch to ask again.
+ *
+ * @author Hosam Tageldin
+ */
+public class QuestionBatch {
+
+  private static final String ALREADY_RUN = "The questions have already been answered";
+  private static final String NOT_RUN_YET = "The questions have not been answered yet";
+  private final Questions questions;
+  private final DataSetInformation dataSetInfo;
+  private final Map<String, Map<List<Integer>, RangeScan>> plannedScans = new HashMap<>();
+  private final Map<RangeScan, Set<Baby>> namesByScan = new HashMap<>();
+  private final List<Answer<?>> answers = new ArrayList<>();
+  private boolean hasRun;
+
+  /**
+   * @param questions   the questions the batch answers for
+   * @param dataSetInfo the dataset of those questions
+   */
+  QuestionBatch(Questions questions, DataSetInformation dataSetInfo) {
+    this.questions = questions;
+    this.dataSetInfo = dataSetInfo;
+  }
+
+  /**
+   * Asks for the derivative names of the highest occurring prefix in a range, see
+   * Questions.highestOccurringPrefix
+   *
+   * @param gender    Baby's gender
+   * @param yearStart start of the year range
+   * @param yearEnd   end of the year range
+   * @return the answer, available once the batch has run
+   */
+  public Answer<String[]> highestOccurringPrefix(String gender, int yearStart, int yearEnd) {
+    return askForRange(gender, yearStart, yearEnd,
+        rangeScan -> questions.highestOccurringPrefix(namesOf(rangeScan)));
+  }
+
+  /**
+   * Asks for the name with the highest average rank in a range, see Questions.highestAverageRank
+   *
+   * @param gender    Baby's gender
+   * @param yearStart start of the year range
+   * @param yearEnd   end of the year range
+   * @return the answer, available once the batch has run
+   */
+  public Answer<String[]> highestAverageRank(String gender, int yearStart, int yearEnd) {
+    return askForRange(gender, yearStart, yearEnd, questions::highestAverageRank);
+  }
+
+  /**
+   * Asks for the name with the biggest rank change over a range, see
+   * Questions.nameWithHighestRankChange
+   *
+   * @param gender    Baby's gender
+   * @param yearStart start of the year range
+   * @param yearEnd   end of the year range
+   * @return the answer, available once the batch has run
+   */
+  public Answer<String[]> nameWithHighestRankChange(String gender, int yearStart, int yearEnd) {
+    return askForRange(gender, yearStart, yearEnd, questions::nameWithHighestRankChange);
+  }
+
+  /**
+   * Asks for the average rank of a name in a range, see Questions.averageRank. It is read from the
+   * range's scan if another question in the batch scans the same range.
+   *
+   * @param name      Baby's name
+   * @param gender    Baby's gender
+   * @param yearStart start of the year range
+   * @param yearEnd   end of the year range
+   * @return the answer, available once the batch has run
+   */
+  public Answer<Float> averageRank(String name, String gender, int yearStart, int yearEnd) {
+    return answerLater(() -> {
+      RangeScan rangeScan = plannedScan(gender, yearStart, yearEnd);
+      if (rangeScan == null) {
+        return questions.averageRank(name, gender, yearStart, yearEnd);
+      }
+      return rangeScan.averageRank(name);
+    });
+  }
+
+  /**
+   * Asks any question of Questions, which is answered after the planned questions
+   *
+   * @param question the question, e.g. {@code q -> q.mostPopularLetter("F", 1990, 2000)}
+   * @param <T>      the type of the answer
+   * @return the answer, available once the batch has run
+   */
+  public <T> Answer<T> ask(Call<T> question) {
+    return answerLater(() -> question.answer(questions));
+  }
+
+  /**
+   * Scans every planned range once and answers every question of the batch
+   *
+   * @throws IllegalStateException if the batch has already run
+   */
+  public void run() {
+    if (hasRun) {
+      throw new IllegalStateException(ALREADY_RUN);
+    }
+    hasRun = true;
+    for (Map.Entry<String, Map<List<Integer>, RangeScan>> genderScans : plannedScans.entrySet()) {
+      List<List<Integer>> ranges = new ArrayList<>(genderScans.getValue().keySet());
+      List<int[]> yearRanges = new ArrayList<>();
+      for (List<Integer> range : ranges) {
+        yearRanges.add(new int[]{range.get(0), range.get(1)});
+      }
+      List<RangeScan> rangeScans = dataSetInfo.scanRanges(genderScans.getKey(), yearRanges);
+      for (int i = 0; i < ranges.size(); i++) {
+        genderScans.getValue().put(ranges.get(i), rangeScans.get(i));
+      }
+    }
+    for (Answer<?> answer : answers) {
+      answer.work();
+    }
+  }
+
+  private <T> Answer<T> askForRange(String gender, int yearStart, int yearEnd,
+      RangeQuestion<T> question) {
+    boolean validRange;
+    try {
+      dataSetInfo.checkValidParameters(gender, yearStart, yearEnd);
+      validRange = true;
+    } catch (InvalidParameterException e) {
+      validRange = false;
+    }
+    if (validRange) {
+      plannedScans.computeIfAbsent(gender.toUpperCase(), key -> new HashMap<>())
+          .put(List.of(yearStart, yearEnd), null);
+    }
+    return answerLater(() -> {
+      dataSetInfo.checkValidParameters(gender, yearStart, yearEnd);
+      RangeScan rangeScan = plannedScan(gender, yearStart, yearEnd);
+      if (rangeScan == null) {
+        // the range only became valid after it was asked, when the dataset was reloaded
+        rangeScan = dataSetInfo.scanRange(gender, yearStart, yearEnd);
+      }
+      return question.answer(rangeScan);
+    });
+  }
+
+  private <T> Answer<T> answerLater(Work<T> work) {
+    if (hasRun) {
+      throw new IllegalStateException(ALREADY_RUN);
+    }
+    Answer<T> answer = new Answer<>(work);
+    answers.add(answer);
+    return answer;
+  }
+
+  private RangeScan plannedScan(String gender, int yearStart, int yearEnd) {
+    Map<List<Integer>, RangeScan> genderScans = plannedScans.get(gender.toUpperCase());
+    return genderScans == null ? null : genderScans.get(List.of(yearStart, yearEnd));
+  }
+
+  private Set<Baby> namesOf(RangeScan rangeScan) {
+    return namesByScan.computeIfAbsent(rangeScan, RangeScan::names);
+  }
+
+  /**
+   * A question of Questions asked through a batch
+   *
+   * @param <T> the type of the answer
+   */
+  public interface Call<T> {
+
+    T answer(Questions questions) throws InvalidParameterException;
+  }
+
+  private interface Work<T> {
+
+    T answer() throws InvalidParameterException;
+  }
+
+  private interface RangeQuestion<T> {
+
+    T answer(RangeScan rangeScan) throws InvalidParameterException;
+  }
+
+  /**
+   * The answer to one question of a batch
+   *
+   * @param <T> the type of the answer, the same as the matching method of Questions returns
+   */
+  public static class Answer<T> {
+
+    private final Work<T> work;
+    private boolean answered;
+    private T result;
+    private InvalidParameterException error;
+
+    private Answer(Work<T> work) {
+      this.work = work;
+    }
+
+    /**
+     * @return the answer to the question
+     * @throws InvalidParameterException if the years or gender is invalid for the dataset
+     * @throws IllegalStateException     if the batch has not run yet
+     */
+    public T get() throws InvalidParameterException {
+      if (!answered) {
+        throw new IllegalStateException(NOT_RUN_YET);
+      }
+      if (error != null) {
+        throw error;
+      }
+      return result;
+    }
+
+    private void work() {
+      try {
+        result = work.answer();
+      } catch (InvalidParameterException e) {
+        error = e;
+      }
+      answered = true;
+    }
+  }
+
+}
@@ -1,6 +1,13 @@
 package names;
 
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The Questions class will contain the methods for the user to call whenever an answer to a
@@ -10,27 +17,253 @@ import java.util.*;
  * depends on the DataSetInformation class to do the heavy lifting in answering the questions. To
  * use this class, call an instance of the Questions class and call any of the public methods within
  * it to answer any question about the baby names.
+ * <p>
+ * Questions objects over the same source that load it the default way share one loaded dataset
+ * through the process-wide DataSetRegistry, so only the first of them pays for the load and the
+ * heap. The shared dataset is read only; a Questions object that reloads or updates its dataset
+ * first takes a copy of its own, so the others never see the change. Close a Questions object once
+ * it is no longer used so the dataset can be dropped after its last user.
+ * <p>
+ * Every Questions object registers a QuestionsMetrics MXBean with the platform MBeanServer, which
+ * has the latency percentiles, call counts and error counts of each public method and the load
+ * time and size of the dataset.
  *
  * @author Hosam Tageldin
  */
-public class Questions {
+public class Questions implements AutoCloseable {
 
   private static final String MALE = "M";
   private static final String FEMALE = "F";
   private static final String NO_NAME_FOUND = "No Name Found";
   private static final String NO_PREFIX_FOUND = "No Prefix Found";
   private static final String INVALID_PARAMETER_MESSAGE = "Invalid year range, gender or file name";
-  private final DataSetInformation dataSetInfo;
+  private static final float NO_AVERAGE_RANK = Integer.MAX_VALUE;
+  private static final int LATEST_YEARS = 0;
+  private DataSetRegistry.Lease dataSetLease;
+  private volatile DataSetInformation dataSetInfo;
+  private final QueryCache resultCache;
+  private final ForkJoinPool queryPool;
+  private final QuestionsMetrics metrics;
+  private final Cleaner.Cleanable metricsRegistration;
 
   /**
-   * When calling the Questions class, one should include the fileType(web, local, or zip) and the
-   * specific dataset within those data types.
+   * When calling the Questions class, one should include the fileType(web, local, mapped or zip)
+   * and the specific dataset within those data types.
    *
-   * @param fileType "Web" "Local" or "Zip" supporting different data sources
+   * @param fileType "Web" "Local" "Mapped" or "Zip" supporting different data sources
    * @param dataSet  the specific set to read within the source
    */
   public Questions(String fileType, String dataSet) {
-    this.dataSetInfo = new DataSetInformation(fileType, dataSet);
+    this(fileType, dataSet, null);
+  }
+
+  /**
+   * Same as Questions(fileType, dataSet), but the year files of the dataset are parsed at the same
+   * time on the given executor. A ForkJoinPool or a virtual thread per task executor both work; the
+   * caller owns the executor and is responsible for shutting it down.
+   *
+   * @param fileType     "Web" "Local" "Mapped" or "Zip" supporting different data sources
+   * @param dataSet      the specific set to read within the source
+   * @param loadExecutor executor used to parse the year files, or null to read them sequentially
+   */
+  public Questions(String fileType, String dataSet, ExecutorService loadExecutor) {
+    this(fileType, dataSet, loadExecutor, null);
+  }
+
+  /**
+   * Same as Questions(fileType, dataSet, loadExecutor), but the dataset is loaded from a binary
+   * snapshot file when that snapshot is up to date with the source files. A missing or stale
+   * snapshot is rebuilt automatically after the source is parsed, so the next start is fast.
+   *
+   * @param fileType     "Web" "Local" "Mapped" or "Zip" supporting different data sources
+   * @param dataSet      the specific set to read within the source
+   * @param loadExecutor executor used to parse the year files, or null to read them sequentially
+   * @param snapshotPath binary snapshot file to load from and keep up to date, or null for none
+   */
+  public Questions(String fileType, String dataSet, ExecutorService loadExecutor,
+      Path snapshotPath) {
+    this(fileType, dataSet, loadExecutor, snapshotPath, 0);
+  }
+
+  /**
+   * Same as Questions(fileType, dataSet, loadExecutor, snapshotPath), but answers are kept in a
+   * bounded result cache so a question that is asked again is not worked out again. Two questions
+   * are the same when they call the same method with the same arguments, with "m" and "M" (or "f"
+   * and "F") counted as the same gender. When the cache is full the least recently used answer is
+   * evicted, and the whole cache is emptied when the dataset is reloaded.
+   *
+   * @param fileType        "Web" "Local" "Mapped" or "Zip" supporting different data sources
+   * @param dataSet         the specific set to read within the source
+   * @param loadExecutor    executor used to parse the year files, or null to read them sequentially
+   * @param snapshotPath    binary snapshot file to load from and keep up to date, or null for none
+   * @param resultCacheSize the most answers kept in the result cache, or 0 for no caching
+   */
+  public Questions(String fileType, String dataSet, ExecutorService loadExecutor,
+      Path snapshotPath, int resultCacheSize) {
+    this(fileType, dataSet, loadExecutor, snapshotPath, resultCacheSize, null);
+  }
+
+  /**
+   * Same as Questions(fileType, dataSet, loadExecutor, snapshotPath, resultCacheSize), but the
+   * questions over every name in a range (highestOccurringPrefix, highestAverageRank and
+   * nameWithHighestRankChange) are split across a ForkJoinPool: the years of the range are scanned
+   * in parallel and the names are then compared in parallel. The answers, ties included, are the
+   * same as on a single thread. The caller owns the pool and is responsible for shutting it down.
+   *
+   * @param fileType        "Web" "Local" "Mapped" or "Zip" supporting different data sources
+   * @param dataSet         the specific set to read within the source
+   * @param loadExecutor    executor used to parse the year files, or null to read them sequentially
+   * @param snapshotPath    binary snapshot file to load from and keep up to date, or null for none
+   * @param resultCacheSize the most answers kept in the result cache, or 0 for no caching
+   * @param queryPool       pool the range questions are split across, or null for the caller's
+   *                        thread only
+   */
+  public Questions(String fileType, String dataSet, ExecutorService loadExecutor,
+      Path snapshotPath, int resultCacheSize, ForkJoinPool queryPool) {
+    if (loadExecutor == null && snapshotPath == null) {
+      DataSetRegistry.Lease lease;
+      try {
+        lease = DataSetRegistry.getShared().acquire(fileType, dataSet);
+      } catch (IOException e) {
+        // a source that cannot be read is not shared, so this object tries it on its own and ends
+        // up with an empty dataset, and InvalidParameterException will get thrown later
+        lease = null;
+      }
+      this.dataSetLease = lease;
+      this.dataSetInfo = lease == null ? new DataSetInformation(fileType, dataSet)
+          : lease.getDataSetInfo();
+    } else {
+      // a parallel or snapshot load was asked for, so this object loads its own dataset that way
+      this.dataSetLease = null;
+      this.dataSetInfo = new DataSetInformation(fileType, dataSet, loadExecutor, snapshotPath);
+    }
+    this.resultCache = new QueryCache(resultCacheSize);
+    this.queryPool = queryPool;
+    this.metrics = new QuestionsMetrics(dataSetInfo);
+    this.metricsRegistration = metrics.register(this, fileType, dataSet);
+  }
+
+  /**
+   * Creates a Questions object over a lazily loaded dataset: only the list of years is read here,
+   * and each year file is read the first time a question needs that year, so a question about a
+   * few years is answered after reading only their files. Loaded years are dropped again, least
+   * recently used first, once they are estimated to use more heap than the budget.
+   *
+   * @param fileType          "Web" "Local" "Mapped" or "Zip" supporting different data sources
+   * @param dataSet           the specific set to read within the source
+   * @param memoryBudgetBytes the estimated heap the loaded years may use, in bytes
+   * @param resultCacheSize   the most answers kept in the result cache, or 0 for no caching
+   */
+  public Questions(String fileType, String dataSet, long memoryBudgetBytes,
+      int resultCacheSize) {
+    this.dataSetLease = null;
+    this.dataSetInfo = new DataSetInformation(fileType, dataSet, memoryBudgetBytes);
+    this.resultCache = new QueryCache(resultCacheSize);
+    this.queryPool = null;
+    this.metrics = new QuestionsMetrics(dataSetInfo);
+    this.metricsRegistration = metrics.register(this, fileType, dataSet);
+  }
+
+  /**
+   * Releases this object's hold on a shared dataset, see DataSetRegistry, and unregisters its
+   * metrics. This object must not be used after it is closed.
+   */
+  @Override
+  public synchronized void close() {
+    metricsRegistration.clean();
+    if (dataSetLease != null) {
+      dataSetLease.close();
+    }
+  }
+
+  /**
+   * Starts a batch of questions that are answered together, sharing the work they have in common,
+   * see QuestionBatch
+   *
+   * @return an empty batch over this object's dataset as it is now, which its planned questions
+   * keep answering from if the dataset is reloaded before the batch runs
+   */
+  public QuestionBatch newBatch() {
+    return new QuestionBatch(this, dataSetInfo.pinned());
+  }
+
+  /**
+   * @return the result cache, whose hit, miss and eviction counts show how well it is working
+   */
+  public QueryCache getResultCache() {
+    return resultCache;
+  }
+
+  /**
+   * @return the latencies and error counts of this object's questions, also registered as an
+   * MXBean
+   */
+  public QuestionsMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Parses the source files of the dataset again, for when they have changed. Cached answers from
+   * the old dataset are not used afterwards. A dataset shared through the DataSetRegistry is not
+   * changed: this object first takes a copy of its own, and the other users keep the dataset as it
+   * was. If the source cannot be read completely, the old dataset is kept.
+   *
+   * @throws IOException if the source cannot be found or read, or a year file is malformed
+   */
+  public void reloadDataSet() throws IOException {
+    ownDataSet().reload();
+  }
+
+  /**
+   * Same as reloadDataSet, but the dataset is parsed on an executor while this object keeps
+   * answering questions from the old dataset, and the new one is switched in once it is built.
+   * Questions that are already running finish on the old dataset.
+   *
+   * @param executor the executor the dataset is parsed on
+   * @return a future that completes once the new dataset is in use, or completes exceptionally if
+   * the reload failed, leaving the old dataset in place
+   */
+  public CompletableFuture<Void> reloadDataSetInBackground(Executor executor) {
+    return ownDataSet().reloadInBackground(executor);
+  }
+
+  /**
+   * Reads one year file of the dataset again, for when a new year is published or a year file is
+   * corrected or removed. Only that year's file is parsed, and cached answers are not used
+   * afterwards. A shared dataset is copied first, see reloadDataSet.
+   *
+   * @param year the year whose file was added, changed or removed
+   * @throws IOException if the source cannot be read or the year file is malformed
+   */
+  public void updateYear(int year) throws IOException {
+    ownDataSet().updateYear(year);
+  }
+
+  /**
+   * Keeps the dataset up to date with its directory as year files are added, changed or removed
+   * there, for the "Local" and "Mapped" file types. Close the returned watcher to stop. A shared
+   * dataset is copied first, see reloadDataSet. Updates that fail are counted in the metrics, with
+   * the cause of the last one.
+   *
+   * @return the running watcher
+   * @throws IOException if the dataset is not read from a local directory or cannot be watched
+   */
+  public DataSetWatcher watchDataSet() throws IOException {
+    return ownDataSet().watchSource(metrics::recordDataSetUpdateFailure);
+  }
+
+  /**
+   * Returns the dataset this object may change. A dataset shared through the registry is read only,
+   * so it is first replaced by a copy of its own and the lease on it is released.
+   */
+  private synchronized DataSetInformation ownDataSet() {
+    if (dataSetLease != null) {
+      dataSetInfo = dataSetInfo.copy();
+      metrics.setDataSetInfo(dataSetInfo);
+      dataSetLease.close();
+      dataSetLease = null;
+    }
+    return dataSetInfo;
   }
 
   /**
@@ -46,13 +279,13 @@ public class Questions {
    */
   public String[] highestOccurringPrefix(String gender, int yearStart, int yearEnd)
       throws InvalidParameterException {
-    dataSetInfo.checkValidParameters(gender, yearStart, yearEnd);
-    Set<Baby> allNamesInRange = dataSetInfo.allNamesInYearRange(gender, yearStart, yearEnd);
-    Baby maxPrefix = dataSetInfo.findMaxPrefixInRange(allNamesInRange);
-    if (maxPrefix.getNameDerivatives().size() == 1) {
-      return new String[]{NO_PREFIX_FOUND};
-    }
-    return maxPrefix.getNameDerivatives().toArray(new String[0]);
+    return cached(pinned -> {
+      pinned.checkValidParameters(gender, yearStart, yearEnd);
+      Set<Baby> allNamesInRange = queryPool == null
+          ? pinned.allNamesInYearRange(gender, yearStart, yearEnd)
+          : pinned.scanRange(gender, yearStart, yearEnd, queryPool).names();
+      return highestOccurringPrefix(allNamesInRange);
+    }, "highestOccurringPrefix", gender, yearStart, yearEnd);
   }
 
   /**
@@ -69,10 +302,12 @@ public class Questions {
    */
   public String[] nameHoldingRankMostOften(String gender, int yearStart, int yearEnd, int rank)
       throws InvalidParameterException {
-    dataSetInfo.checkValidParameters(gender, yearStart, yearEnd);
-    Map<String, Integer> nameCounter = dataSetInfo
-        .countAllNamesAtRank(gender, yearStart, yearEnd, rank);
-    return findMostCommonKeysAndMaxValue(nameCounter);
+    return cached(pinned -> {
+      pinned.checkValidParameters(gender, yearStart, yearEnd);
+      Map<String, Integer> nameCounter = pinned
+          .countAllNamesAtRank(gender, yearStart, yearEnd, rank);
+      return findMostCommonKeysAndMaxValue(nameCounter);
+    }, "nameHoldingRankMostOften", gender, yearStart, yearEnd, rank);
   }
 
   /**
@@ -88,12 +323,16 @@ public class Questions {
    */
   public String[] findAllNamesWithRank(String gender, int yearStart, int yearEnd, int rank)
       throws InvalidParameterException {
-    dataSetInfo.checkValidParameters(gender, yearStart, yearEnd);
-    List<String> allRanks = new ArrayList<>();
-    for (int year = yearStart; year <= yearEnd; year++) {
-      allRanks.add(year + ":" + dataSetInfo.findNameFromRankAndGender(gender, year, rank));
-    }
-    return allRanks.toArray(new String[0]);
+    return cached(pinned -> {
+      pinned.checkValidParameters(gender, yearStart, yearEnd);
+      ColumnarDataSet dataSet = pinned.columnsFor(yearStart, yearEnd);
+      List<String> allRanks = new ArrayList<>();
+      for (int year = yearStart; year <= yearEnd; year++) {
+        allRanks.add(year + ":" + DataSetInformation.findNameFromRankAndGender(dataSet, gender,
+            year, rank));
+      }
+      return allRanks.toArray(new String[0]);
+    }, "findAllNamesWithRank", gender, yearStart, yearEnd, rank);
   }
 
   /**
@@ -109,12 +348,15 @@ public class Questions {
    */
   public float averageRankMostRecentNumberOfYears(String name, String gender, int numberOfYears)
       throws InvalidParameterException {
-    if (numberOfYears > dataSetInfo.desiredGenderMap(gender).keySet().size()) {
-      throw new InvalidParameterException(INVALID_PARAMETER_MESSAGE);
-    }
-    int mostRecentYear = Collections.max(dataSetInfo.desiredGenderMap(gender).keySet());
-    int startYear = mostRecentYear - numberOfYears + 1;
-    return averageRank(name, gender, startYear, mostRecentYear);
+    return cached(pinned -> {
+      if (numberOfYears > pinned.yearsInDataSet(gender).size()) {
+        throw new InvalidParameterException(INVALID_PARAMETER_MESSAGE);
+      }
+      int mostRecentYear = Collections.max(pinned.yearsInDataSet(gender));
+      int startYear = mostRecentYear - numberOfYears + 1;
+      return averageRankInRange(pinned, name, gender, startYear, mostRecentYear);
+    }, "averageRankMostRecentNumberOfYears", gender, LATEST_YEARS, LATEST_YEARS, name,
+        numberOfYears);
   }
 
   /**
@@ -130,17 +372,10 @@ public class Questions {
    */
   public String[] highestAverageRank(String gender, int yearStart, int yearEnd)
       throws InvalidParameterException {
-    dataSetInfo.checkValidParameters(gender, yearStart, yearEnd);
-    float highestAverageRank = Integer.MAX_VALUE;
-    String nameWithHighestRank = NO_NAME_FOUND;
-    for (Baby babyName : dataSetInfo.allNamesInYearRange(gender, yearStart, yearEnd)) {
-      float averageRank = averageRank(babyName.getName(), gender, yearStart, yearEnd);
-      if (averageRank < highestAverageRank) {
-        highestAverageRank = averageRank;
-        nameWithHighestRank = babyName.getName();
-      }
-    }
-    return new String[]{nameWithHighestRank, Float.toString(highestAverageRank)};
+    return cached(pinned -> {
+      pinned.checkValidParameters(gender, yearStart, yearEnd);
+      return highestAverageRank(pinned.scanRange(gender, yearStart, yearEnd, queryPool));
+    }, "highestAverageRank", gender, yearStart, yearEnd);
   }
 
   /**
@@ -156,19 +391,8 @@ public class Questions {
    */
   public float averageRank(String name, String gender, int yearStart, int yearEnd)
       throws InvalidParameterException {
-    dataSetInfo.checkValidParameters(gender, yearStart, yearEnd);
-    float rankSum = 0, validYears = 0;
-    for (int year = yearStart; year <= yearEnd; year++) {
-      int rank = dataSetInfo.findRankFromNameAndGender(name, gender, year);
-      if (rank != 0) {
-        rankSum += rank;
-        validYears++;
-      }
-    }
-    if (validYears == 0) {
-      return 0;
-    }
-    return rankSum / validYears;
+    return cached(pinned -> averageRankInRange(pinned, name, gender, yearStart, yearEnd),
+        "averageRank", gender, yearStart, yearEnd, name);
   }
 
   /**
@@ -184,17 +408,11 @@ public class Questions {
    */
   public String[] nameWithHighestRankChange(String gender, int yearStart, int yearEnd)
       throws InvalidParameterException {
-    dataSetInfo.checkValidParameters(gender, yearStart, yearEnd);
-    int highestRankChange = 0;
-    String greatestRankChangeName = NO_NAME_FOUND;
-    for (Baby baby : dataSetInfo.allNamesInYearRange(gender, yearStart, yearEnd)) {
-      int babyRankChange = Math.abs(differenceInRank(baby.getName(), gender, yearStart, yearEnd));
-      if (babyRankChange > highestRankChange) {
-        highestRankChange = babyRankChange;
-        greatestRankChangeName = baby.getName();
-      }
-    }
-    return new String[]{greatestRankChangeName, Integer.toString(highestRankChange)};
+    return cached(pinned -> {
+      pinned.checkValidParameters(gender, yearStart, yearEnd);
+      return nameWithHighestRankChange(
+          pinned.scanRange(gender, yearStart, yearEnd, queryPool));
+    }, "nameWithHighestRankChange", gender, yearStart, yearEnd);
   }
 
   /**
@@ -212,13 +430,8 @@ public class Questions {
    */
   public int differenceInRank(String name, String gender, int yearStart, int yearEnd)
       throws InvalidParameterException {
-    dataSetInfo.checkValidParameters(gender, yearStart, yearEnd);
-    int firstYearRank = dataSetInfo.findRankFromNameAndGender(name, gender, yearStart);
-    int lastYearRank = dataSetInfo.findRankFromNameAndGender(name, gender, yearEnd);
-    if (firstYearRank == 0 || lastYearRank == 0) {
-      return 0;
-    }
-    return firstYearRank - lastYearRank;
+    return cached(pinned -> rankDifference(pinned, name, gender, yearStart, yearEnd),
+        "differenceInRank", gender, yearStart, yearEnd, name);
   }
 
 
@@ -235,12 +448,8 @@ public class Questions {
    */
   public String[] findAllRanks(String name, String gender, int yearStart, int yearEnd)
       throws InvalidParameterException {
-    dataSetInfo.checkValidParameters(gender, yearStart, yearEnd);
-    List<String> allRanks = new ArrayList<>();
-    for (int year = yearStart; year <= yearEnd; year++) {
-      allRanks.add(year + ":" + dataSetInfo.findRankFromNameAndGender(name, gender, year));
-    }
-    return allRanks.toArray(new String[0]);
+    return cached(pinned -> allRanksInRange(pinned, name, gender, yearStart, yearEnd),
+        "findAllRanks", gender, yearStart, yearEnd, name);
   }
 
   /**
@@ -257,12 +466,14 @@ public class Questions {
    */
   public String[] mostPopularLetter(String gender, int yearStart, int yearEnd)
       throws InvalidParameterException {
-    dataSetInfo.checkValidParameters(gender, yearStart, yearEnd);
-    Map<String, Integer> letterCounter = dataSetInfo
-        .countAllNamesFirstLetter(gender, yearStart, yearEnd);
-    String alphabeticallyFirstPopularLetter = findMostCommonKeysAndMaxValue(letterCounter)[0];
-    return dataSetInfo
-        .allNamesWithLetter(gender, alphabeticallyFirstPopularLetter, yearStart, yearEnd);
+    return cached(pinned -> {
+      pinned.checkValidParameters(gender, yearStart, yearEnd);
+      Map<String, Integer> letterCounter = pinned
+          .countAllNamesFirstLetter(gender, yearStart, yearEnd);
+      String alphabeticallyFirstPopularLetter = findMostCommonKeysAndMaxValue(letterCounter)[0];
+      return pinned
+          .allNamesWithLetter(gender, alphabeticallyFirstPopularLetter, yearStart, yearEnd);
+    }, "mostPopularLetter", gender, yearStart, yearEnd);
   }
 
 
@@ -279,10 +490,12 @@ public class Questions {
    */
   public String[] mostPopularNames(String gender, int yearStart, int yearEnd)
       throws InvalidParameterException {
-    dataSetInfo.checkValidParameters(gender, yearStart, yearEnd);
-    Map<String, Integer> popularNameCounter = dataSetInfo
-        .countTopRankedNames(gender, yearStart, yearEnd);
-    return findMostCommonKeysAndMaxValue(popularNameCounter);
+    return cached(pinned -> {
+      pinned.checkValidParameters(gender, yearStart, yearEnd);
+      Map<String, Integer> popularNameCounter = pinned
+          .countTopRankedNames(gender, yearStart, yearEnd);
+      return findMostCommonKeysAndMaxValue(popularNameCounter);
+    }, "mostPopularNames", gender, yearStart, yearEnd);
   }
 
   /**
@@ -298,10 +511,12 @@ public class Questions {
    */
   public String mostRecentYearSameRank(String name, String gender, int year)
       throws InvalidParameterException {
-    dataSetInfo.checkValidParameters(gender, year, year);
-    int rank = dataSetInfo.findRankFromNameAndGender(name, gender, year);
-    int mostRecentYear = Collections.max(dataSetInfo.desiredGenderMap(gender).keySet());
-    return dataSetInfo.findNameFromRankAndGender(gender, mostRecentYear, rank);
+    return cached(pinned -> {
+      pinned.checkValidParameters(gender, year, year);
+      int rank = pinned.findRankFromNameAndGender(name, gender, year);
+      int mostRecentYear = Collections.max(pinned.yearsInDataSet(gender));
+      return pinned.findNameFromRankAndGender(gender, mostRecentYear, rank);
+    }, "mostRecentYearSameRank", gender, year, year, name);
   }
 
   /**
@@ -316,15 +531,17 @@ public class Questions {
    */
   public String[] findAllRanksInDataSet(String name, String gender)
       throws InvalidParameterException {
-    int minYearInDataSet;
-    int maxYearInDataSet;
-    try {
-      minYearInDataSet = Collections.min(dataSetInfo.desiredGenderMap(gender).keySet());
-      maxYearInDataSet = Collections.max(dataSetInfo.desiredGenderMap(gender).keySet());
-    } catch (Exception e) {
-      throw new InvalidParameterException(INVALID_PARAMETER_MESSAGE);
-    }
-    return findAllRanks(name, gender, minYearInDataSet, maxYearInDataSet);
+    return cached(pinned -> {
+      int minYearInDataSet;
+      int maxYearInDataSet;
+      try {
+        minYearInDataSet = Collections.min(pinned.yearsInDataSet(gender));
+        maxYearInDataSet = Collections.max(pinned.yearsInDataSet(gender));
+      } catch (Exception e) {
+        throw new InvalidParameterException(INVALID_PARAMETER_MESSAGE);
+      }
+      return allRanksInRange(pinned, name, gender, minYearInDataSet, maxYearInDataSet);
+    }, "findAllRanksInDataSet", gender, LATEST_YEARS, LATEST_YEARS, name);
   }
 
   /**
@@ -341,8 +558,10 @@ public class Questions {
    */
   public int[] nameAndTotalBabiesCount(String gender, String letter, int year)
       throws InvalidParameterException {
-    dataSetInfo.checkValidParameters(gender, year, year);
-    return dataSetInfo.letterCount(gender, letter, year);
+    return cached(pinned -> {
+      pinned.checkValidParameters(gender, year, year);
+      return pinned.letterCount(gender, letter, year);
+    }, "nameAndTotalBabiesCount", gender, year, year, letter);
   }
 
   /**
@@ -356,13 +575,185 @@ public class Questions {
    * @throws InvalidParameterException if filename, the years or gender is invalid
    */
   public String[] topRankedMaleAndFemaleName(int year) throws InvalidParameterException {
-    dataSetInfo.checkValidParameters(MALE, year, year);
-    String topRankedFemale = dataSetInfo.findNameFromRankAndGender(FEMALE, year, 1);
-    String topRankedMale = dataSetInfo.findNameFromRankAndGender(MALE, year, 1);
-    return new String[]{topRankedFemale, topRankedMale};
+    return cached(pinned -> {
+      pinned.checkValidParameters(MALE, year, year);
+      String topRankedFemale = pinned.findNameFromRankAndGender(FEMALE, year, 1);
+      String topRankedMale = pinned.findNameFromRankAndGender(MALE, year, 1);
+      return new String[]{topRankedFemale, topRankedMale};
+    }, "topRankedMaleAndFemaleName", null, year, year);
+  }
+
+  /**
+   * This method returns the k names with the most births within a year range, with their total
+   * births. Names with the same total are in alphabetical order, and names that differ only in
+   * case are counted as one name, in a single year as well as over a range.
+   *
+   * @param gender    Baby's gender
+   * @param yearStart start of the year range
+   * @param yearEnd   end of the year range
+   * @param k         the most names to return
+   * @return an unmodifiable list of the names and their total births, most births first
+   * @throws InvalidParameterException if filename, the years or gender is invalid, or k is less
+   *                                   than 1
+   */
+  public List<Baby> topK(String gender, int yearStart, int yearEnd, int k)
+      throws InvalidParameterException {
+    return cached(pinned -> {
+      pinned.checkValidParameters(gender, yearStart, yearEnd);
+      if (k < 1) {
+        throw new InvalidParameterException(INVALID_PARAMETER_MESSAGE);
+      }
+      return pinned.topK(gender, yearStart, yearEnd, k);
+    }, "topK", gender, yearStart, yearEnd, k);
   }
 
-  private String[] findMostCommonKeysAndMaxValue(Map<String, Integer> counter) {
+  /**
+   * Finds the highest occurring prefix among the names of a range, see highestOccurringPrefix
+   */
+  String[] highestOccurringPrefix(Set<Baby> allNamesInRange) {
+    Set<String> maxPrefixDerivatives =
+        dataSetInfo.findMaxPrefixInRange(allNamesInRange, queryPool);
+    if (maxPrefixDerivatives.size() == 1) {
+      return new String[]{NO_PREFIX_FOUND};
+    }
+    return maxPrefixDerivatives.toArray(new String[0]);
+  }
+
+  /**
+   * Finds the name with the highest average rank in a scanned range, see highestAverageRank. Ties
+   * go to the alphabetically first name ignoring case.
+   */
+  String[] highestAverageRank(RangeScan rangeScan) {
+    int highestRanked = rangeScan.bestName(index -> -rangeScan.averageRankAt(index),
+        -NO_AVERAGE_RANK, queryPool);
+    if (highestRanked < 0) {
+      return new String[]{NO_NAME_FOUND, Float.toString(NO_AVERAGE_RANK)};
+    }
+    return new String[]{rangeScan.babyAt(highestRanked).getName(),
+        Float.toString(rangeScan.averageRankAt(highestRanked))};
+  }
+
+  /**
+   * Finds the name with the biggest rank change in a scanned range, see nameWithHighestRankChange.
+   * Ties go to the alphabetically first name ignoring case.
+   */
+  String[] nameWithHighestRankChange(RangeScan rangeScan) {
+    int greatestChange = rangeScan.bestName(index -> Math.abs(rangeScan.rankDifferenceAt(index)),
+        0, queryPool);
+    if (greatestChange < 0) {
+      return new String[]{NO_NAME_FOUND, Integer.toString(0)};
+    }
+    return new String[]{rangeScan.babyAt(greatestChange).getName(),
+        Integer.toString(Math.abs(rangeScan.rankDifferenceAt(greatestChange)))};
+  }
+
+  private float averageRankInRange(DataSetInformation pinned, String name, String gender,
+      int yearStart, int yearEnd) throws InvalidParameterException {
+    pinned.checkValidParameters(gender, yearStart, yearEnd);
+    ColumnarDataSet dataSet = pinned.columnsFor(yearStart, yearEnd);
+    long rankSum = 0;
+    int validYears = 0;
+    for (int year = yearStart; year <= yearEnd; year++) {
+      int rank = DataSetInformation.findRankFromNameAndGender(dataSet, name, gender, year);
+      if (rank != 0) {
+        rankSum += rank;
+        validYears++;
+      }
+    }
+    if (validYears == 0) {
+      return 0;
+    }
+    return (float) rankSum / validYears;
+  }
+
+  private int rankDifference(DataSetInformation pinned, String name, String gender,
+      int yearStart, int yearEnd) throws InvalidParameterException {
+    pinned.checkValidParameters(gender, yearStart, yearEnd);
+    int firstYearRank = pinned.findRankFromNameAndGender(name, gender, yearStart);
+    int lastYearRank = pinned.findRankFromNameAndGender(name, gender, yearEnd);
+    if (firstYearRank == 0 || lastYearRank == 0) {
+      return 0;
+    }
+    return firstYearRank - lastYearRank;
+  }
+
+  private String[] allRanksInRange(DataSetInformation pinned, String name, String gender,
+      int yearStart, int yearEnd) throws InvalidParameterException {
+    pinned.checkValidParameters(gender, yearStart, yearEnd);
+    ColumnarDataSet dataSet = pinned.columnsFor(yearStart, yearEnd);
+    List<String> allRanks = new ArrayList<>();
+    for (int year = yearStart; year <= yearEnd; year++) {
+      allRanks.add(year + ":" + DataSetInformation.findRankFromNameAndGender(dataSet, name, gender,
+          year));
+    }
+    return allRanks.toArray(new String[0]);
+  }
+
+  private String genderKey(String gender) {
+    return gender == null ? null : gender.toUpperCase();
+  }
+
+  /**
+   * Answers a question, or reads its answer from the result cache, records its latency in the
+   * metrics and emits a QueryEvent for it. The method, gender, years and other arguments together
+   * are the question's cache key; a question about the latest years of the dataset passes
+   * LATEST_YEARS for both years. The question is answered on a pinned view of the dataset, so it
+   * sees one version of it from start to finish and its answer is cached under that version's
+   * generation. When the result cache is not enabled, no key is built and the cache is not touched.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> T cached(Question<T> question, String method, String gender, int yearStart,
+      int yearEnd, Object... otherArguments) throws InvalidParameterException {
+    long startNanos = System.nanoTime();
+    QueryEvent event = new QueryEvent();
+    event.begin();
+    List<Object> key = null;
+    DataSetInformation pinned = dataSetInfo.pinned();
+    long generation = pinned.getGeneration();
+    Object answer = null;
+    if (resultCache.isEnabled()) {
+      key = new ArrayList<>(List.of(method, yearStart, yearEnd));
+      key.add(genderKey(gender));
+      key.addAll(Arrays.asList(otherArguments));
+      answer = resultCache.get(key, generation);
+    }
+    boolean cacheHit = answer != null;
+    Exception failure = null;
+    try {
+      if (answer == null) {
+        answer = question.answer(pinned);
+        if (key != null) {
+          resultCache.put(key, generation, answer);
+        }
+      }
+    } catch (InvalidParameterException | RuntimeException e) {
+      failure = e;
+      event.failure = e.toString();
+      throw e;
+    } finally {
+      metrics.record(method, System.nanoTime() - startNanos, failure);
+      if (event.shouldCommit()) {
+        event.method = method;
+        event.gender = genderKey(gender);
+        event.yearStart = yearStart;
+        event.yearEnd = yearEnd;
+        event.rowsInRange = yearEnd == LATEST_YEARS
+            ? pinned.rowsInRange(gender, Integer.MIN_VALUE, Integer.MAX_VALUE)
+            : pinned.rowsInRange(gender, yearStart, yearEnd);
+        event.cacheHit = cacheHit;
+        event.commit();
+      }
+    }
+    // arrays are copied so a caller changing its answer cannot change the cached one
+    if (answer instanceof String[]) {
+      return (T) ((String[]) answer).clone();
+    } else if (answer instanceof int[]) {
+      return (T) ((int[]) answer).clone();
+    }
+    return (T) answer;
+  }
+
+  static String[] findMostCommonKeysAndMaxValue(Map<String, Integer> counter) {
     int maxValue = (Collections.max(counter.values()));
     List<String> keysWithMaxValueAndMaxValue = new ArrayList<>();
     for (String key : counter.keySet()) {
@@ -374,6 +765,11 @@ public class Questions {
     return keysWithMaxValueAndMaxValue.toArray(new String[0]);
   }
 
+  private interface Question<T> {
+
+    T answer(DataSetInformation pinned) throws InvalidParameterException;
+  }
+
   /**
    * Returns answers to all the questions from Test, Basic and Complete in the ssa_complete dataset
    *
@@ -0,0 +1,210 @@
+package names;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Cleaner;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class keeps the monitoring metrics of one Questions object: a LatencyHistogram and error
+ * counts for each public method asked, the load time, loaded years and heap estimate of its
+ * dataset, and the failures of the DataSetWatcher keeping the dataset up to date. Recording a
+ * call takes no locks (see LatencyHistogram), so it adds no contention when many threads ask
+ * questions at once.
+ * <p>
+ * Questions registers its metrics as an MXBean with the platform MBeanServer, so they can be read
+ * with JConsole or any JMX client. The MXBean is unregistered when the Questions object is closed,
+ * or else once it is garbage collected, so a dropped Questions object does not keep its dataset
+ * loaded through the MBeanServer.
+ *
+ * @author Hosam Tageldin
+ */
+public class QuestionsMetrics implements QuestionsMetricsMXBean {
+
+  private static final String OBJECT_NAME = "names:type=Questions,fileType=%s,dataSet=%s,id=%d";
+  private static final double NANOS_PER_MILLI = 1_000_000.0;
+  private static final AtomicInteger NEXT_ID = new AtomicInteger();
+  private static final Cleaner UNREGISTERER = Cleaner.create();
+  private volatile DataSetInformation dataSetInfo;
+  private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+  private final LongAdder dataSetUpdateFailures = new LongAdder();
+  private volatile String lastDataSetUpdateFailure;
+  private volatile ObjectName objectName;
+
+  /**
+   * @param dataSetInfo the dataset the questions are asked about
+   */
+  public QuestionsMetrics(DataSetInformation dataSetInfo) {
+    this.dataSetInfo = dataSetInfo;
+  }
+
+  /**
+   * Switches the dataset metrics to another dataset, for when the owner replaces its dataset
+   *
+   * @param dataSetInfo the dataset the questions are asked about from now on
+   */
+  void setDataSetInfo(DataSetInformation dataSetInfo) {
+    this.dataSetInfo = dataSetInfo;
+  }
+
+  /**
+   * Records one call of a method
+   *
+   * @param method  the name of the method called
+   * @param nanos   how long the call took, in nanoseconds
+   * @param failure the exception the call failed with, or null if it succeeded
+   */
+  public void record(String method, long nanos, Exception failure) {
+    LatencyHistogram histogram = latencies.get(method);
+    if (histogram == null) {
+      histogram = latencies.computeIfAbsent(method, newMethod -> new LatencyHistogram());
+    }
+    histogram.record(nanos);
+    if (failure != null) {
+      String cause = failure instanceof InvalidParameterException ? failure.getMessage()
+          : failure.getClass().getName();
+      LongAdder errorCount = errors.get(cause);
+      if (errorCount == null) {
+        errorCount = errors.computeIfAbsent(cause, newCause -> new LongAdder());
+      }
+      errorCount.increment();
+    }
+  }
+
+  /**
+   * Records a year update or reload of the dataset that failed, see DataSetWatcher
+   *
+   * @param failure the cause of the failure
+   */
+  public void recordDataSetUpdateFailure(Exception failure) {
+    dataSetUpdateFailures.increment();
+    lastDataSetUpdateFailure = failure.toString();
+  }
+
+  /**
+   * @param method the name of a method
+   * @return the latencies of the method's calls, or null if it has not been called
+   */
+  public LatencyHistogram getLatencyHistogram(String method) {
+    return latencies.get(method);
+  }
+
+  /**
+   * @return the name these metrics were registered under, or null if they could not be registered
+   */
+  public ObjectName getObjectName() {
+    return objectName;
+  }
+
+  @Override
+  public Map<String, LatencySummary> getLatencies() {
+    Map<String, LatencySummary> summaries = new TreeMap<>();
+    latencies.forEach((method, histogram) -> summaries.put(method, new LatencySummary(histogram)));
+    return summaries;
+  }
+
+  @Override
+  public Map<String, Long> getCallCounts() {
+    Map<String, Long> callCounts = new TreeMap<>();
+    latencies.forEach((method, histogram) -> callCounts.put(method, histogram.getCount()));
+    return callCounts;
+  }
+
+  @Override
+  public Map<String, Long> getErrorCounts() {
+    Map<String, Long> errorCounts = new TreeMap<>();
+    errors.forEach((cause, errorCount) -> errorCounts.put(cause, errorCount.sum()));
+    return errorCounts;
+  }
+
+  @Override
+  public double getDataSetLoadMillis() {
+    return dataSetInfo.getLoadNanos() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public int getLoadedYears() {
+    return dataSetInfo.loadedYearCount();
+  }
+
+  @Override
+  public long getEstimatedHeapBytes() {
+    return dataSetInfo.estimatedHeapBytes();
+  }
+
+  @Override
+  public long getDataSetUpdateFailures() {
+    return dataSetUpdateFailures.sum();
+  }
+
+  @Override
+  public String getLastDataSetUpdateFailure() {
+    return lastDataSetUpdateFailure;
+  }
+
+  @Override
+  public void reset() {
+    latencies.clear();
+    errors.clear();
+    dataSetUpdateFailures.reset();
+    lastDataSetUpdateFailure = null;
+  }
+
+  /**
+   * Registers these metrics with the platform MBeanServer until the returned Cleanable is cleaned
+   * or the owner is garbage collected. If they cannot be registered, they are still recorded and
+   * can be read from the owner.
+   *
+   * @param owner    the object whose metrics these are
+   * @param fileType the file type of the dataset
+   * @param dataSet  the name of the dataset
+   * @return the registration, clean it to unregister the metrics
+   */
+  Cleaner.Cleanable register(Object owner, String fileType, String dataSet) {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = null;
+    try {
+      name = new ObjectName(String.format(OBJECT_NAME, ObjectName.quote(String.valueOf(fileType)),
+          ObjectName.quote(String.valueOf(dataSet)), NEXT_ID.getAndIncrement()));
+      server.registerMBean(this, name);
+      objectName = name;
+    } catch (JMException e) {
+      // monitoring is optional, the questions are answered the same without it
+      name = null;
+    }
+    return UNREGISTERER.register(owner, new Unregistration(server, name));
+  }
+
+  /**
+   * Unregisters the metrics, and must not refer to their owner so that the owner can be collected
+   */
+  private static class Unregistration implements Runnable {
+
+    private final MBeanServer server;
+    private final ObjectName name;
+
+    private Unregistration(MBeanServer server, ObjectName name) {
+      this.server = server;
+      this.name = name;
+    }
+
+    @Override
+    public void run() {
+      if (name == null) {
+        return;
+      }
+      try {
+        server.unregisterMBean(name);
+      } catch (JMException e) {
+        // it was already unregistered
+      }
+    }
+  }
+
+}
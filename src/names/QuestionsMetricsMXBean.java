@@ -0,0 +1,61 @@
+package names;
+
+import java.util.*;
+
+/**
+ * The management interface of QuestionsMetrics, which every Questions object registers with the
+ * platform MBeanServer under "names:type=Questions,fileType=...,dataSet=...,id=...". The maps are
+ * keyed by the name of the public Questions method asked.
+ *
+ * @author Hosam Tageldin
+ */
+public interface QuestionsMetricsMXBean {
+
+  /**
+   * @return the latency percentiles of each method that has been asked
+   */
+  Map<String, LatencySummary> getLatencies();
+
+  /**
+   * @return the number of calls to each method that has been asked, failed calls included
+   */
+  Map<String, Long> getCallCounts();
+
+  /**
+   * @return the number of failed calls for each cause: the message of an InvalidParameterException,
+   * or the class name of any other exception
+   */
+  Map<String, Long> getErrorCounts();
+
+  /**
+   * @return how long the last full load of the dataset took, in milliseconds
+   */
+  double getDataSetLoadMillis();
+
+  /**
+   * @return the number of years loaded, of either gender
+   */
+  int getLoadedYears();
+
+  /**
+   * @return an estimate of the heap used by the loaded dataset, in bytes
+   */
+  long getEstimatedHeapBytes();
+
+  /**
+   * @return the number of year updates and reloads of a watched dataset that have failed, see
+   * DataSetWatcher
+   */
+  long getDataSetUpdateFailures();
+
+  /**
+   * @return the cause of the last failed year update or reload of a watched dataset, or null if
+   * none has failed
+   */
+  String getLastDataSetUpdateFailure();
+
+  /**
+   * Clears every latency histogram, call count and error count, and the dataset update failures
+   */
+  void reset();
+}
@@ -0,0 +1,427 @@
+package names;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class serves the questions of one Questions object over HTTP with JSON answers, on the
+ * JDK's HttpServer. Every public question method has an endpoint of the same name, and its
+ * arguments are query parameters named after the method's parameters:
+ * <pre>
+ *   GET /averageRank?name=Emily&amp;gender=F&amp;yearStart=1990&amp;yearEnd=2010
+ *   200 {"answer":3.1904762}
+ * </pre>
+ * An invalid, missing or malformed argument is answered with 400 and {"error":"..."}, and an
+ * unknown endpoint with 404.
+ * <p>
+ * POST /batch asks many questions at once: each line of the body is one question written as the
+ * path and query of its GET request without the leading slash. They are answered together as a
+ * QuestionBatch, so questions over the same years share their range scans, and the answer is a
+ * JSON array with an {"answer":...} or {"error":"..."} object for each line, in order.
+ * <p>
+ * Every request runs on its own virtual thread when the JVM has them (Java 21 and later), and
+ * otherwise on a fixed pool of platform threads. Questions are read only and the dataset is shared,
+ * so requests are answered concurrently. Answers are sent with their length, so HTTP/1.1 clients
+ * keep their connections open between requests.
+ *
+ * @author Hosam Tageldin
+ */
+public class QuestionsServer implements AutoCloseable {
+
+  private static final String BATCH = "batch";
+  private static final String GET = "GET";
+  private static final String POST = "POST";
+  private static final String CONTENT_TYPE = "application/json; charset=utf-8";
+  private static final String UNKNOWN_QUESTION = "Unknown question: ";
+  private static final String MISSING_PARAMETER = "Missing parameter: ";
+  private static final String NOT_A_NUMBER = "Not a whole number: ";
+  private static final String WRONG_METHOD = "Use GET for a question and POST for a batch";
+  private static final int OK = 200;
+  private static final int BAD_REQUEST = 400;
+  private static final int NOT_FOUND = 404;
+  private static final int METHOD_NOT_ALLOWED = 405;
+  private static final int SERVER_ERROR = 500;
+  private static final int CONNECTION_BACKLOG = 1024;
+  private static final int THREADS_PER_PROCESSOR = 4;
+  private static final int DEFAULT_PORT = 8080;
+  private static final long STOP_SECONDS = 5;
+  private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+  private final Questions questions;
+  private final HttpServer server;
+  private final ExecutorService requestExecutor;
+  private final Map<String, Endpoint> endpoints = new HashMap<>();
+
+  static {
+    // without TCP_NODELAY each small answer on a kept-alive connection waits for the client's
+    // delayed ACK, which caps a connection at a few dozen requests a second. The JDK reads this
+    // once, when the first HttpServer is created, so a server created earlier keeps its setting.
+    if (System.getProperty(NO_DELAY_PROPERTY) == null) {
+      System.setProperty(NO_DELAY_PROPERTY, Boolean.TRUE.toString());
+    }
+  }
+
+  /**
+   * Binds the server to an address, without starting it yet
+   *
+   * @param questions the questions to serve, which stay owned by the caller
+   * @param address   the address to listen on, port 0 for any free port
+   * @throws IOException if the address cannot be bound
+   */
+  public QuestionsServer(Questions questions, InetSocketAddress address) throws IOException {
+    this.questions = questions;
+    this.server = HttpServer.create(address, CONNECTION_BACKLOG);
+    this.requestExecutor = newRequestExecutor();
+    server.setExecutor(requestExecutor);
+    server.createContext("/", this::handle);
+    addEndpoints();
+  }
+
+  /**
+   * Starts answering requests
+   */
+  public void start() {
+    server.start();
+  }
+
+  /**
+   * @return the port the server listens on
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Stops the server, letting requests that are being answered finish first. The Questions object
+   * is not closed.
+   */
+  @Override
+  public void close() {
+    server.stop(0);
+    requestExecutor.shutdown();
+    try {
+      requestExecutor.awaitTermination(STOP_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static ExecutorService newRequestExecutor() {
+    try {
+      Method newVirtualThreadPerTaskExecutor = Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // this JVM has no virtual threads, so requests share a pool of platform threads
+      return Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors() * THREADS_PER_PROCESSOR);
+    }
+  }
+
+  private void addEndpoints() {
+    addEndpoint("highestOccurringPrefix",
+        (questions, with) -> questions.highestOccurringPrefix(with.text("gender"),
+            with.number("yearStart"), with.number("yearEnd")),
+        (batch, with) -> batch.highestOccurringPrefix(with.text("gender"),
+            with.number("yearStart"), with.number("yearEnd")));
+    addEndpoint("nameHoldingRankMostOften",
+        (questions, with) -> questions.nameHoldingRankMostOften(with.text("gender"),
+            with.number("yearStart"), with.number("yearEnd"), with.number("rank")));
+    addEndpoint("findAllNamesWithRank",
+        (questions, with) -> questions.findAllNamesWithRank(with.text("gender"),
+            with.number("yearStart"), with.number("yearEnd"), with.number("rank")));
+    addEndpoint("averageRankMostRecentNumberOfYears",
+        (questions, with) -> questions.averageRankMostRecentNumberOfYears(with.text("name"),
+            with.text("gender"), with.number("numberOfYears")));
+    addEndpoint("highestAverageRank",
+        (questions, with) -> questions.highestAverageRank(with.text("gender"),
+            with.number("yearStart"), with.number("yearEnd")),
+        (batch, with) -> batch.highestAverageRank(with.text("gender"),
+            with.number("yearStart"), with.number("yearEnd")));
+    addEndpoint("averageRank",
+        (questions, with) -> questions.averageRank(with.text("name"), with.text("gender"),
+            with.number("yearStart"), with.number("yearEnd")),
+        (batch, with) -> batch.averageRank(with.text("name"), with.text("gender"),
+            with.number("yearStart"), with.number("yearEnd")));
+    addEndpoint("nameWithHighestRankChange",
+        (questions, with) -> questions.nameWithHighestRankChange(with.text("gender"),
+            with.number("yearStart"), with.number("yearEnd")),
+        (batch, with) -> batch.nameWithHighestRankChange(with.text("gender"),
+            with.number("yearStart"), with.number("yearEnd")));
+    addEndpoint("differenceInRank",
+        (questions, with) -> questions.differenceInRank(with.text("name"), with.text("gender"),
+            with.number("yearStart"), with.number("yearEnd")));
+    addEndpoint("findAllRanks",
+        (questions, with) -> questions.findAllRanks(with.text("name"), with.text("gender"),
+            with.number("yearStart"), with.number("yearEnd")));
+    addEndpoint("mostPopularLetter",
+        (questions, with) -> questions.mostPopularLetter(with.text("gender"),
+            with.number("yearStart"), with.number("yearEnd")));
+    addEndpoint("mostPopularNames",
+        (questions, with) -> questions.mostPopularNames(with.text("gender"),
+            with.number("yearStart"), with.number("yearEnd")));
+    addEndpoint("mostRecentYearSameRank",
+        (questions, with) -> questions.mostRecentYearSameRank(with.text("name"),
+            with.text("gender"), with.number("year")));
+    addEndpoint("findAllRanksInDataSet",
+        (questions, with) -> questions.findAllRanksInDataSet(with.text("name"),
+            with.text("gender")));
+    addEndpoint("nameAndTotalBabiesCount",
+        (questions, with) -> questions.nameAndTotalBabiesCount(with.text("gender"),
+            with.text("letter"), with.number("year")));
+    addEndpoint("topRankedMaleAndFemaleName",
+        (questions, with) -> questions.topRankedMaleAndFemaleName(with.number("year")));
+    addEndpoint("topK",
+        (questions, with) -> questions.topK(with.text("gender"), with.number("yearStart"),
+            with.number("yearEnd"), with.number("k")));
+  }
+
+  /**
+   * Adds an endpoint that is asked in a batch like any other question
+   */
+  private void addEndpoint(String name, Question question) {
+    addEndpoint(name, question,
+        (batch, with) -> batch.ask(batchQuestions -> question.answer(batchQuestions, with)));
+  }
+
+  private void addEndpoint(String name, Question question, BatchQuestion batchQuestion) {
+    endpoints.put(name, new Endpoint(question, batchQuestion));
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    String path = exchange.getRequestURI().getPath().substring(1);
+    String method = exchange.getRequestMethod();
+    try {
+      if (path.equals(BATCH) && method.equals(POST)) {
+        respond(exchange, OK, answerBatch(readBody(exchange)));
+      } else if (path.equals(BATCH) || !method.equals(GET)) {
+        respond(exchange, METHOD_NOT_ALLOWED, errorJson(WRONG_METHOD));
+      } else {
+        respond(exchange, OK, answer(path, exchange.getRequestURI().getRawQuery()));
+      }
+    } catch (UnknownQuestionException e) {
+      respond(exchange, NOT_FOUND, errorJson(e.getMessage()));
+    } catch (InvalidParameterException e) {
+      respond(exchange, BAD_REQUEST, errorJson(e.getMessage()));
+    } catch (RuntimeException e) {
+      respond(exchange, SERVER_ERROR, errorJson(e.toString()));
+    }
+  }
+
+  private String answer(String path, String rawQuery) throws InvalidParameterException {
+    Object answer = endpointAt(path).question.answer(questions, new Parameters(rawQuery));
+    return "{\"answer\":" + toJson(answer) + "}";
+  }
+
+  private String answerBatch(String body) {
+    QuestionBatch batch = questions.newBatch();
+    List<QuestionBatch.Answer<?>> answers = new ArrayList<>();
+    for (String line : body.split("\n")) {
+      String question = line.strip();
+      if (question.isEmpty()) {
+        continue;
+      }
+      int queryStart = question.indexOf('?');
+      String path = queryStart < 0 ? question : question.substring(0, queryStart);
+      String rawQuery = queryStart < 0 ? null : question.substring(queryStart + 1);
+      answers.add(askInBatch(batch, path, rawQuery));
+    }
+    batch.run();
+    StringJoiner json = new StringJoiner(",", "[", "]");
+    for (QuestionBatch.Answer<?> answer : answers) {
+      try {
+        json.add("{\"answer\":" + toJson(answer.get()) + "}");
+      } catch (InvalidParameterException e) {
+        json.add(errorJson(e.getMessage()));
+      }
+    }
+    return json.toString();
+  }
+
+  private QuestionBatch.Answer<?> askInBatch(QuestionBatch batch, String path, String rawQuery) {
+    try {
+      return endpointAt(path).batchQuestion.ask(batch, new Parameters(rawQuery));
+    } catch (InvalidParameterException | UnknownQuestionException e) {
+      // the question cannot be asked, so its answer in the batch is the error
+      String message = e.getMessage();
+      return batch.ask(batchQuestions -> {
+        throw new InvalidParameterException(message);
+      });
+    }
+  }
+
+  private Endpoint endpointAt(String path) {
+    Endpoint endpoint = endpoints.get(path.startsWith("/") ? path.substring(1) : path);
+    if (endpoint == null) {
+      throw new UnknownQuestionException(UNKNOWN_QUESTION + path);
+    }
+    return endpoint;
+  }
+
+  private static String readBody(HttpExchange exchange) throws IOException {
+    try (InputStream body = exchange.getRequestBody()) {
+      return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream responseBody = exchange.getResponseBody()) {
+      responseBody.write(body);
+    }
+  }
+
+  private static String errorJson(String message) {
+    return "{\"error\":" + toJson(message) + "}";
+  }
+
+  /**
+   * Writes an answer of a Questions method as JSON
+   *
+   * @param answer a String, String[], int[], list of Baby or number, or null
+   * @return the answer as a JSON value
+   */
+  static String toJson(Object answer) {
+    if (answer == null) {
+      return "null";
+    }
+    if (answer instanceof String[]) {
+      StringJoiner array = new StringJoiner(",", "[", "]");
+      for (String element : (String[]) answer) {
+        array.add(toJson(element));
+      }
+      return array.toString();
+    }
+    if (answer instanceof int[]) {
+      StringJoiner array = new StringJoiner(",", "[", "]");
+      for (int element : (int[]) answer) {
+        array.add(Integer.toString(element));
+      }
+      return array.toString();
+    }
+    if (answer instanceof List) {
+      StringJoiner array = new StringJoiner(",", "[", "]");
+      for (Object element : (List<?>) answer) {
+        Baby baby = (Baby) element;
+        array.add("{\"name\":" + toJson(baby.getName()) + ",\"count\":" + baby.getCount() + "}");
+      }
+      return array.toString();
+    }
+    if (answer instanceof Number) {
+      return answer.toString();
+    }
+    StringBuilder text = new StringBuilder("\"");
+    for (char character : answer.toString().toCharArray()) {
+      if (character == '"' || character == '\\') {
+        text.append('\\').append(character);
+      } else if (character < ' ') {
+        text.append(String.format("\\u%04x", (int) character));
+      } else {
+        text.append(character);
+      }
+    }
+    return text.append('"').toString();
+  }
+
+  /**
+   * Serves a dataset until the process is stopped
+   *
+   * @param args the file type and dataset to serve, and optionally the port, 8080 by default
+   * @throws IOException if the port cannot be bound
+   */
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PORT;
+    QuestionsServer questionsServer = new QuestionsServer(new Questions(args[0], args[1]),
+        new InetSocketAddress(port));
+    questionsServer.start();
+    System.out.println("Serving " + args[1] + " on port " + questionsServer.getPort());
+  }
+
+  /**
+   * One public method of Questions, called with the arguments of a request
+   */
+  private interface Question {
+
+    Object answer(Questions questions, Parameters with) throws InvalidParameterException;
+  }
+
+  /**
+   * The same method asked in a QuestionBatch
+   */
+  private interface BatchQuestion {
+
+    QuestionBatch.Answer<?> ask(QuestionBatch batch, Parameters with)
+        throws InvalidParameterException;
+  }
+
+  private static class Endpoint {
+
+    private final Question question;
+    private final BatchQuestion batchQuestion;
+
+    private Endpoint(Question question, BatchQuestion batchQuestion) {
+      this.question = question;
+      this.batchQuestion = batchQuestion;
+    }
+  }
+
+  private static class UnknownQuestionException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private UnknownQuestionException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * The query parameters of a request
+   */
+  private static class Parameters {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    private Parameters(String rawQuery) {
+      if (rawQuery == null) {
+        return;
+      }
+      for (String parameter : rawQuery.split("&")) {
+        int equals = parameter.indexOf('=');
+        if (equals > 0) {
+          values.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+              URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+        }
+      }
+    }
+
+    private String text(String name) throws InvalidParameterException {
+      String value = values.get(name);
+      if (value == null) {
+        throw new InvalidParameterException(MISSING_PARAMETER + name);
+      }
+      return value;
+    }
+
+    private int number(String name) throws InvalidParameterException {
+      String value = text(name);
+      try {
+        return Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        throw new InvalidParameterException(NOT_A_NUMBER + name + "=" + value);
+      }
+    }
+  }
+
+}
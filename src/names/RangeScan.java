@@ -0,0 +1,296 @@
+package names;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class holds what one pass over a gender's years in a range finds out about every name in
+ * it: how the name was first spelled in the range, and the sum of its ranks over the years it was
+ * ranked. The totals are kept in arrays indexed by canonical ID (see NameDictionary), so the
+ * average rank of any name in the range is one lookup instead of a rank lookup in every year. A
+ * RangeScan is filled by DataSetInformation.scanRanges, which fills the scans of overlapping
+ * ranges in the same pass.
+ * <p>
+ * A range can also be scanned in parts, one per thread, and the parts appended in year order (see
+ * DataSetInformation.scanRange). The rank sums are exact, so the totals do not depend on how the
+ * range was split, and bestName reduces the names the same way on any number of threads.
+ *
+ * @author Hosam Tageldin
+ */
+public class RangeScan {
+
+  private static final int MIN_NAMES_PER_TASK = 4096;
+  private final ColumnarDataSet dataSet;
+  private final String gender;
+  private final int yearStart;
+  private int yearEnd;
+  private final int[] firstNameIds;
+  private final int[] firstCounts;
+  private final long[] rankSums;
+  private final int[] rankedYears;
+  private int[] seenCanonicalIds;
+  private int seenCount;
+
+  /**
+   * @param dataSet   the dataset the range is scanned in
+   * @param gender    Baby's gender
+   * @param yearStart start of the year range
+   * @param yearEnd   end of the year range
+   */
+  RangeScan(ColumnarDataSet dataSet, String gender, int yearStart, int yearEnd) {
+    this.dataSet = dataSet;
+    this.gender = gender;
+    this.yearStart = yearStart;
+    this.yearEnd = yearEnd;
+    int nameCount = dataSet.getNames().size();
+    this.firstNameIds = new int[nameCount];
+    this.firstCounts = new int[nameCount];
+    this.rankSums = new long[nameCount];
+    this.rankedYears = new int[nameCount];
+    this.seenCanonicalIds = new int[16];
+  }
+
+  /**
+   * Adds a name's rank in one year of the range. Years must be added in ascending order, and only
+   * the best rank of a name in a year (its first row) is added.
+   *
+   * @param nameId      the ID of the name as it is spelled in that row
+   * @param canonicalId the canonical ID of the name
+   * @param rank        the rank of the name in that year
+   * @param count       the number of babies given the name in that year
+   */
+  void add(int nameId, int canonicalId, int rank, int count) {
+    if (rankedYears[canonicalId] == 0) {
+      firstNameIds[canonicalId] = nameId;
+      firstCounts[canonicalId] = count;
+      if (seenCount == seenCanonicalIds.length) {
+        seenCanonicalIds = Arrays.copyOf(seenCanonicalIds, seenCount * 2);
+      }
+      seenCanonicalIds[seenCount++] = canonicalId;
+    }
+    rankSums[canonicalId] += rank;
+    rankedYears[canonicalId]++;
+  }
+
+  /**
+   * Appends the scan of the years right after this range, so this becomes the scan of both ranges.
+   * A name keeps the spelling it first had in this range.
+   *
+   * @param later the scan of the range that starts the year after this one ends
+   */
+  void append(RangeScan later) {
+    for (int i = 0; i < later.seenCount; i++) {
+      int canonicalId = later.seenCanonicalIds[i];
+      if (rankedYears[canonicalId] == 0) {
+        firstNameIds[canonicalId] = later.firstNameIds[canonicalId];
+        firstCounts[canonicalId] = later.firstCounts[canonicalId];
+        if (seenCount == seenCanonicalIds.length) {
+          seenCanonicalIds = Arrays.copyOf(seenCanonicalIds, seenCount * 2);
+        }
+        seenCanonicalIds[seenCount++] = canonicalId;
+      }
+      rankSums[canonicalId] += later.rankSums[canonicalId];
+      rankedYears[canonicalId] += later.rankedYears[canonicalId];
+    }
+    yearEnd = later.yearEnd;
+  }
+
+  /**
+   * @return start of the year range
+   */
+  public int getYearStart() {
+    return yearStart;
+  }
+
+  /**
+   * @return end of the year range
+   */
+  public int getYearEnd() {
+    return yearEnd;
+  }
+
+  /**
+   * @return the unique names in the range, as DataSetInformation.allNamesInYearRange returns them
+   */
+  public Set<Baby> names() {
+    Set<Baby> allNames = new HashSet<>();
+    for (int i = 0; i < seenCount; i++) {
+      allNames.add(babyAt(i));
+    }
+    return allNames;
+  }
+
+  /**
+   * @return the number of unique names in the range
+   */
+  public int size() {
+    return seenCount;
+  }
+
+  /**
+   * @param index position of a name in the order the range first ranked it
+   * @return the name as it was first spelled in the range
+   */
+  public Baby babyAt(int index) {
+    NameDictionary names = dataSet.getNames();
+    int nameId = firstNameIds[seenCanonicalIds[index]];
+    return new Baby(names.nameOf(nameId), names.foldedNameOf(nameId),
+        firstCounts[seenCanonicalIds[index]]);
+  }
+
+  /**
+   * @param index position of a name in the order the range first ranked it
+   * @return the average rank of the name over the years in the range it was ranked
+   */
+  public float averageRankAt(int index) {
+    int canonicalId = seenCanonicalIds[index];
+    return (float) rankSums[canonicalId] / rankedYears[canonicalId];
+  }
+
+  /**
+   * @param index position of a name in the order the range first ranked it
+   * @return the rank of the name in the first year of the range minus its rank in the last year,
+   * or 0 if it was not ranked in either of them
+   */
+  public int rankDifferenceAt(int index) {
+    return rankDifferenceOf(seenCanonicalIds[index]);
+  }
+
+  /**
+   * Finds the name with the best score. A name only counts if it scores higher than the baseline,
+   * and ties go to the alphabetically first name ignoring case. Every name is compared the same
+   * way, so the name found does not depend on the order the names are looked at, and splitting
+   * them across a pool finds the same name as looking at them on one thread.
+   *
+   * @param score    the score of the name at a position, higher is better
+   * @param baseline the score a name must beat
+   * @param pool     the pool the names are split across, or null to look at them on this thread
+   * @return the position of the name with the best score, or -1 if no name beats the baseline
+   */
+  public int bestName(NameScore score, double baseline, ForkJoinPool pool) {
+    if (pool == null) {
+      return bestName(score, baseline, 0, seenCount);
+    }
+    int namesPerTask = Math.max(MIN_NAMES_PER_TASK, seenCount / (pool.getParallelism() * 4));
+    return pool.invoke(new BestNameTask(this, score, baseline, 0, seenCount, namesPerTask));
+  }
+
+  /**
+   * @param name Baby's name
+   * @return the average rank of the name over the years in the range it was ranked, or 0 if it was
+   * not ranked in the range
+   */
+  public float averageRank(String name) {
+    int canonicalId = dataSet.getNames().findIgnoreCase(name);
+    if (canonicalId < 0 || rankedYears[canonicalId] == 0) {
+      return 0;
+    }
+    return (float) rankSums[canonicalId] / rankedYears[canonicalId];
+  }
+
+  /**
+   * @param name Baby's name
+   * @return the rank of the name in the first year of the range minus its rank in the last year,
+   * or 0 if it was not ranked in either of them
+   */
+  public int rankDifference(String name) {
+    int canonicalId = dataSet.getNames().findIgnoreCase(name);
+    if (canonicalId < 0) {
+      return 0;
+    }
+    return rankDifferenceOf(canonicalId);
+  }
+
+  private int rankDifferenceOf(int canonicalId) {
+    NameDictionary names = dataSet.getNames();
+    GenderColumns genderColumns = dataSet.getColumns(gender);
+    int firstYearRank = genderColumns.rankOf(yearStart, canonicalId, names);
+    int lastYearRank = genderColumns.rankOf(yearEnd, canonicalId, names);
+    if (firstYearRank == 0 || lastYearRank == 0) {
+      return 0;
+    }
+    return firstYearRank - lastYearRank;
+  }
+
+  private int bestName(NameScore score, double baseline, int from, int to) {
+    int best = -1;
+    double bestScore = baseline;
+    for (int i = from; i < to; i++) {
+      double nameScore = score.of(i);
+      if (nameScore > bestScore
+          || (nameScore == bestScore && best >= 0 && comesBefore(i, best))) {
+        best = i;
+        bestScore = nameScore;
+      }
+    }
+    return best;
+  }
+
+  private int betterName(NameScore score, int first, int second) {
+    if (first < 0 || second < 0) {
+      return first < 0 ? second : first;
+    }
+    double firstScore = score.of(first);
+    double secondScore = score.of(second);
+    if (secondScore > firstScore || (secondScore == firstScore && comesBefore(second, first))) {
+      return second;
+    }
+    return first;
+  }
+
+  private boolean comesBefore(int index, int otherIndex) {
+    NameDictionary names = dataSet.getNames();
+    return names.foldedNameOf(firstNameIds[seenCanonicalIds[index]])
+        .compareTo(names.foldedNameOf(firstNameIds[seenCanonicalIds[otherIndex]])) < 0;
+  }
+
+  /**
+   * The score of a name in a scanned range, see bestName
+   */
+  public interface NameScore {
+
+    double of(int index);
+  }
+
+  /**
+   * Finds the best name among a run of positions by splitting the run in halves until each half
+   * is small enough to look at on one thread
+   */
+  private static class BestNameTask extends RecursiveTask<Integer> {
+
+    private static final long serialVersionUID = 1L;
+    private final RangeScan rangeScan;
+    private final NameScore score;
+    private final double baseline;
+    private final int from;
+    private final int to;
+    private final int namesPerTask;
+
+    private BestNameTask(RangeScan rangeScan, NameScore score, double baseline, int from, int to,
+        int namesPerTask) {
+      this.rangeScan = rangeScan;
+      this.score = score;
+      this.baseline = baseline;
+      this.from = from;
+      this.to = to;
+      this.namesPerTask = namesPerTask;
+    }
+
+    @Override
+    protected Integer compute() {
+      if (to - from <= namesPerTask) {
+        return rangeScan.bestName(score, baseline, from, to);
+      }
+      int middle = (from + to) >>> 1;
+      BestNameTask firstHalf =
+          new BestNameTask(rangeScan, score, baseline, from, middle, namesPerTask);
+      BestNameTask secondHalf =
+          new BestNameTask(rangeScan, score, baseline, middle, to, namesPerTask);
+      secondHalf.fork();
+      int firstBest = firstHalf.compute();
+      return rangeScan.betterName(score, firstBest, secondHalf.join());
+    }
+  }
+
+}
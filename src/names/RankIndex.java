@@ -0,0 +1,90 @@
+package names;
+
+/**
+ * This class finds the rank of a name within one gender-year in constant time. It is an open
+ * addressing hash table of plain ints, keyed on the name's canonical ID from the NameDictionary so
+ * that lookups ignore case, and each slot holds the rank itself. The name at that rank is then
+ * checked against the key, so the table needs no separate key column. When names that are equal
+ * ignoring case appear more than once in a year, the best rank wins, and the index remembers that
+ * the year has such case variants. Lookups do not allocate.
+ * <p>
+ * The index does not keep the dictionary. Lookups take the current one, so an index built for a
+ * year stays valid when later years add names to a copy of the dictionary (see
+ * NameDictionary.copy).
+ *
+ * @author Hosam Tageldin
+ */
+public class RankIndex {
+
+  private final YearColumns yearColumns;
+  private final int[] ranks;
+  private final boolean hasCaseVariants;
+
+  /**
+   * Builds the index for one gender-year
+   *
+   * @param yearColumns the names of the year in rank order
+   * @param names       the dictionary the name IDs refer to
+   */
+  public RankIndex(YearColumns yearColumns, NameDictionary names) {
+    this.yearColumns = yearColumns;
+    int capacity = Integer.highestOneBit(Math.max(yearColumns.size(), 1) * 2) * 2;
+    ranks = new int[capacity];
+    int mask = capacity - 1;
+    boolean foundCaseVariant = false;
+    for (int rank = 1; rank <= yearColumns.size(); rank++) {
+      int canonicalId = names.canonicalIdOf(yearColumns.nameId(rank - 1));
+      int slot = slotFor(canonicalId, mask);
+      while (ranks[slot] != 0 && canonicalIdAt(ranks[slot], names) != canonicalId) {
+        slot = (slot + 1) & mask;
+      }
+      if (ranks[slot] == 0) {
+        ranks[slot] = rank;
+      } else {
+        foundCaseVariant = true;
+      }
+    }
+    hasCaseVariants = foundCaseVariant;
+  }
+
+  /**
+   * @param canonicalId the canonical ID of a name, see NameDictionary.findIgnoreCase
+   * @param names       the dictionary the name IDs refer to, or a later copy of it
+   * @return the rank of the name in the year, or 0 if the name is not in the year
+   */
+  public int rankOf(int canonicalId, NameDictionary names) {
+    int mask = ranks.length - 1;
+    int slot = slotFor(canonicalId, mask);
+    while (ranks[slot] != 0) {
+      if (canonicalIdAt(ranks[slot], names) == canonicalId) {
+        return ranks[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return 0;
+  }
+
+  /**
+   * @return true if the year has names that are equal ignoring case in more than one row
+   */
+  public boolean hasCaseVariants() {
+    return hasCaseVariants;
+  }
+
+  /**
+   * @return an estimate of the heap used by this index, in bytes
+   */
+  public long estimatedHeapBytes() {
+    return (long) Integer.BYTES * ranks.length;
+  }
+
+  private int canonicalIdAt(int rank, NameDictionary names) {
+    return names.canonicalIdOf(yearColumns.nameId(rank - 1));
+  }
+
+  private int slotFor(int canonicalId, int mask) {
+    int hash = canonicalId * 0x9E3779B9;
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+}
@@ -0,0 +1,120 @@
+package names;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * This class saves an already parsed dataset to a compact binary file and reads it back, so that a
+ * restart can skip parsing the text files. The file starts with a header holding a magic number, a
+ * format version and a fingerprint of the source files the data was parsed from. A snapshot is only
+ * used when all three match; otherwise it is treated as stale and the caller re-parses the source
+ * and writes a new one.
+ * <p>
+ * After the header comes the NameDictionary, followed by each gender's years as a column of name
+ * IDs and a column of counts in rank order, so a snapshot loads with bulk int copies.
+ *
+ * @author Hosam Tageldin
+ */
+public class SnapshotFile {
+
+  private static final int MAGIC = 0x424E534E;
+  private static final int FORMAT_VERSION = 2;
+  private static final String[] GENDERS = {"F", "M"};
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+  private final Path snapshotPath;
+
+  /**
+   * @param snapshotPath where the snapshot is read from and written to
+   */
+  public SnapshotFile(Path snapshotPath) {
+    this.snapshotPath = snapshotPath;
+  }
+
+  /**
+   * Reads the snapshot if it exists, has the current format version and was written for the given
+   * source fingerprint.
+   *
+   * @param sourceFingerprint fingerprint of the source files as they are now
+   * @return the dataset in columnar form, or null if there is no usable snapshot
+   */
+  public ColumnarDataSet read(long sourceFingerprint) {
+    if (!Files.isRegularFile(snapshotPath)) {
+      return null;
+    }
+    try {
+      ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(snapshotPath));
+      if (snapshot.getInt() != MAGIC || snapshot.getInt() != FORMAT_VERSION
+          || snapshot.getLong() != sourceFingerprint) {
+        return null;
+      }
+      NameDictionary names = NameDictionary.readFrom(snapshot);
+      Map<String, Map<Integer, YearColumns>> columnsByGender = new HashMap<>();
+      for (String gender : GENDERS) {
+        Map<Integer, YearColumns> columnsByYear = new HashMap<>();
+        int yearCount = snapshot.getInt();
+        for (int i = 0; i < yearCount; i++) {
+          int year = snapshot.getInt();
+          int[] nameIds = readInts(snapshot, snapshot.getInt());
+          int[] counts = readInts(snapshot, nameIds.length);
+          for (int nameId : nameIds) {
+            if (nameId < 0 || nameId >= names.size()) {
+              return null;
+            }
+          }
+          columnsByYear.put(year, new YearColumns(nameIds, counts));
+        }
+        columnsByGender.put(gender, columnsByYear);
+      }
+      return new ColumnarDataSet(names, columnsByGender);
+    } catch (IOException | RuntimeException e) {
+      // a missing, truncated or corrupt snapshot is handled the same as a stale one
+      return null;
+    }
+  }
+
+  /**
+   * Writes the dataset to the snapshot path. The snapshot is first written next to the final file
+   * and then moved into place, so a reader never sees a half written snapshot.
+   *
+   * @param sourceFingerprint fingerprint of the source files the dataset was parsed from
+   * @param columns           the dataset in columnar form
+   * @throws IOException if the snapshot could not be written
+   */
+  public void write(long sourceFingerprint, ColumnarDataSet columns) throws IOException {
+    Path temporaryPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + TEMPORARY_SUFFIX);
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(sourceFingerprint);
+      columns.getNames().writeTo(out);
+      for (String gender : GENDERS) {
+        GenderColumns genderColumns = columns.getColumns(gender);
+        out.writeInt(genderColumns.years().size());
+        for (int year : genderColumns.years()) {
+          YearColumns yearColumns = genderColumns.get(year);
+          out.writeInt(year);
+          out.writeInt(yearColumns.size());
+          for (int i = 0; i < yearColumns.size(); i++) {
+            out.writeInt(yearColumns.nameId(i));
+          }
+          for (int i = 0; i < yearColumns.size(); i++) {
+            out.writeInt(yearColumns.count(i));
+          }
+        }
+      }
+    }
+    Files.move(temporaryPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private int[] readInts(ByteBuffer snapshot, int length) {
+    int[] values = new int[length];
+    snapshot.asIntBuffer().get(values);
+    snapshot.position(snapshot.position() + length * Integer.BYTES);
+    return values;
+  }
+
+}
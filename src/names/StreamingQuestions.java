@@ -0,0 +1,180 @@
+package names;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * This class answers questions over a whole dataset without ever loading it. Every question is
+ * asked first and only returns an Answer; run then reads the year files one at a time (see
+ * YOBFileReader.streamYears), folds each year into the small running totals of every question that
+ * needs it and drops the year before the next file is read. The most memory in use at once is one
+ * year file plus the running totals, however many years the dataset has.
+ * <p>
+ * The answers are the same as the answers Questions gives for the same dataset, and an answer to a
+ * question with an invalid gender or years throws the same InvalidParameterException, once the
+ * dataset has been read and its years are known. A StreamingQuestions is run once; ask the
+ * questions on a new one to read the dataset again.
+ *
+ * @author Hosam Tageldin
+ */
+public class StreamingQuestions {
+
+  private static final String MALE = "M";
+  private static final String FEMALE = "F";
+  private static final String NO_NAME_FOUND = "No Name Found";
+  private static final String ALREADY_RUN = "The questions have already been answered";
+  private static final String NOT_RUN_YET = "The questions have not been answered yet";
+  private final YOBFileReader yobFileReader;
+  private final List<Answer<?>> answers = new ArrayList<>();
+  private boolean hasRun;
+
+  /**
+   * @param fileType "Web" "Local" "Mapped" or "Zip" supporting different data sources
+   * @param dataSet  the specific set to read within the source
+   */
+  public StreamingQuestions(String fileType, String dataSet) {
+    this.yobFileReader = new YOBFileReader(fileType, dataSet);
+  }
+
+  /**
+   * Asks for the top ranked female and male baby name in a year, see
+   * Questions.topRankedMaleAndFemaleName
+   *
+   * @param year the given year
+   * @return the answer, available once run has read the dataset
+   */
+  public Answer<String[]> topRankedMaleAndFemaleName(int year) {
+    String[] topRankedNames = {NO_NAME_FOUND, NO_NAME_FOUND};
+    return ask(MALE, year, year, (visitedYear, columnsForYear, names) -> {
+      topRankedNames[0] = topRankedName(columnsForYear.get(FEMALE), names);
+      topRankedNames[1] = topRankedName(columnsForYear.get(MALE), names);
+    }, topRankedNames::clone);
+  }
+
+  /**
+   * Asks for the number of names with a given gender and first letter in a year and how many
+   * babies had those names, see Questions.nameAndTotalBabiesCount
+   *
+   * @param gender the given gender
+   * @param letter the given first letter
+   * @param year   the given year
+   * @return the answer, available once run has read the dataset
+   */
+  public Answer<int[]> nameAndTotalBabiesCount(String gender, String letter, int year) {
+    int[] namesAndBabies = new int[2];
+    return ask(gender, year, year, (visitedYear, columnsForYear, names) -> {
+      YearColumns yearColumns = columnsForYear.get(gender.toUpperCase());
+      for (int i = 0; i < yearColumns.size(); i++) {
+        if (names.startsWithIgnoreCase(yearColumns.nameId(i), letter)) {
+          namesAndBabies[0]++;
+          namesAndBabies[1] += yearColumns.count(i);
+        }
+      }
+    }, namesAndBabies::clone);
+  }
+
+  /**
+   * Asks for the names that were top ranked the most years in a range, with the number of years
+   * last, see Questions.mostPopularNames
+   *
+   * @param gender    the requested gender
+   * @param yearStart the start year of the given range
+   * @param yearEnd   the ending year for the given range
+   * @return the answer, available once run has read the dataset
+   */
+  public Answer<String[]> mostPopularNames(String gender, int yearStart, int yearEnd) {
+    Map<String, Integer> popularNameCounter = new TreeMap<>();
+    return ask(gender, yearStart, yearEnd, (visitedYear, columnsForYear, names) -> {
+      String nameForThatYear = topRankedName(columnsForYear.get(gender.toUpperCase()), names);
+      popularNameCounter.put(nameForThatYear,
+          popularNameCounter.getOrDefault(nameForThatYear, 0) + 1);
+    }, () -> Questions.findMostCommonKeysAndMaxValue(popularNameCounter));
+  }
+
+  /**
+   * Reads every year file of the dataset once, folding each year into the answers that need it
+   *
+   * @throws IOException           if the data source cannot be found or read
+   * @throws IllegalStateException if the questions have already been answered
+   */
+  public void run() throws IOException {
+    if (hasRun) {
+      throw new IllegalStateException(ALREADY_RUN);
+    }
+    hasRun = true;
+    Set<Integer> yearsInDataSet = new HashSet<>();
+    yobFileReader.streamYears((year, columnsForYear, names) -> {
+      yearsInDataSet.add(year);
+      for (Answer<?> answer : answers) {
+        answer.fold(year, columnsForYear, names);
+      }
+    });
+    for (Answer<?> answer : answers) {
+      answer.yearsInDataSet = yearsInDataSet;
+    }
+  }
+
+  private <T> Answer<T> ask(String gender, int yearStart, int yearEnd,
+      YOBFileReader.YearVisitor accumulator, Supplier<T> result) {
+    if (hasRun) {
+      throw new IllegalStateException(ALREADY_RUN);
+    }
+    Answer<T> answer = new Answer<>(gender, yearStart, yearEnd, accumulator, result);
+    answers.add(answer);
+    return answer;
+  }
+
+  private static String topRankedName(YearColumns yearColumns, NameDictionary names) {
+    if (yearColumns.size() == 0) {
+      return NO_NAME_FOUND;
+    }
+    return names.nameOf(yearColumns.nameId(0));
+  }
+
+  /**
+   * The answer to one question, which is worked out as the dataset is read
+   *
+   * @param <T> the type of the answer, the same as the matching method of Questions returns
+   */
+  public static class Answer<T> {
+
+    private final String gender;
+    private final int yearStart;
+    private final int yearEnd;
+    private final YOBFileReader.YearVisitor accumulator;
+    private final Supplier<T> result;
+    private Set<Integer> yearsInDataSet;
+
+    private Answer(String gender, int yearStart, int yearEnd,
+        YOBFileReader.YearVisitor accumulator, Supplier<T> result) {
+      this.gender = gender;
+      this.yearStart = yearStart;
+      this.yearEnd = yearEnd;
+      this.accumulator = accumulator;
+      this.result = result;
+    }
+
+    /**
+     * @return the answer to the question
+     * @throws InvalidParameterException if the years or gender is invalid for the dataset
+     * @throws IllegalStateException     if the dataset has not been read yet
+     */
+    public T get() throws InvalidParameterException {
+      if (yearsInDataSet == null) {
+        throw new IllegalStateException(NOT_RUN_YET);
+      }
+      DataSetInformation.checkValidParameters(gender, yearStart, yearEnd,
+          yearsInDataSet::contains);
+      return result.get();
+    }
+
+    private void fold(int year, Map<String, YearColumns> columnsForYear, NameDictionary names) {
+      boolean validGender = gender.equalsIgnoreCase(MALE) || gender.equalsIgnoreCase(FEMALE);
+      if (validGender && year >= yearStart && year <= yearEnd) {
+        accumulator.visit(year, columnsForYear, names);
+      }
+    }
+  }
+
+}
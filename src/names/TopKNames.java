@@ -0,0 +1,188 @@
+package names;
+
+import java.util.*;
+
+/**
+ * This class finds the k names of a gender with the most births over a range of years. Births are
+ * added up per canonical ID (see NameDictionary), so names that differ only in case count as one,
+ * in a single year as well as over a range. The totals are kept in an open addressing table of
+ * primitive arrays sized to the rows of the range, but never to more names than the dictionary
+ * has, so a query over a few years costs as little as those years and a wide range costs no more
+ * than the dictionary, and no boxed counts are built. The totals are then pushed through a
+ * min-heap of at most k names, so picking the top names costs O(names log k) instead of a sort of
+ * every name in the range.
+ * <p>
+ * A single year is already in rank order, which is birth order, so unless it has case variants to
+ * merge (see RankIndex) its top names are its first k rows. Only those rows and the rows tied with
+ * the last of them are sorted, to put ties in alphabetical order, and no table is built.
+ *
+ * @author Hosam Tageldin
+ */
+public class TopKNames {
+
+  private static final int EMPTY = -1;
+  private static final int HASH_MULTIPLIER = 0x9E3779B9;
+  private final NameDictionary names;
+  private final int[] canonicalIds;
+  private final int[] firstNameIds;
+  private final long[] totals;
+  private final int mask;
+  private final int[] heap;
+  private int heapSize;
+
+  /**
+   * @param rows the rows that will be added, which bounds the number of distinct names along with
+   *             the size of the dictionary
+   */
+  private TopKNames(NameDictionary names, int rows, int k) {
+    int distinctNames = Math.min(rows, names.size());
+    int capacity = Integer.highestOneBit(Math.max(2 * distinctNames - 1, 1)) << 1;
+    this.names = names;
+    this.canonicalIds = new int[capacity];
+    Arrays.fill(canonicalIds, EMPTY);
+    this.firstNameIds = new int[capacity];
+    this.totals = new long[capacity];
+    this.mask = capacity - 1;
+    this.heap = new int[Math.min(k, distinctNames)];
+  }
+
+  /**
+   * Finds the k names with the most births in a range. Names with the same number of births are in
+   * alphabetical order ignoring case, and each name is spelled as it was first spelled in the
+   * range. Totals are added up as longs, so the order is right however large they grow, but a
+   * total above Integer.MAX_VALUE is returned as Integer.MAX_VALUE, the most a Baby can count.
+   *
+   * @param dataSet   the dataset, which must have every year of the range loaded
+   * @param gender    Baby's gender
+   * @param yearStart start of the year range
+   * @param yearEnd   end of the year range
+   * @param k         the most names to return, at least 1
+   * @return the names with their total births, most births first, and fewer than k names only if
+   * the range has fewer names
+   */
+  public static List<Baby> of(ColumnarDataSet dataSet, String gender, int yearStart, int yearEnd,
+      int k) {
+    GenderColumns genderColumns = dataSet.getColumns(gender);
+    if (yearStart == yearEnd && genderColumns.containsYear(yearStart)
+        && !genderColumns.hasCaseVariants(yearStart)) {
+      return topOfYear(dataSet.getNames(), genderColumns.get(yearStart), k);
+    }
+    int rows = 0;
+    for (int year = yearStart; year <= yearEnd; year++) {
+      YearColumns yearColumns = genderColumns.get(year);
+      if (yearColumns != null) {
+        rows += yearColumns.size();
+      }
+    }
+    TopKNames topNames = new TopKNames(dataSet.getNames(), rows, k);
+    for (int year = yearStart; year <= yearEnd; year++) {
+      YearColumns yearColumns = genderColumns.get(year);
+      if (yearColumns != null) {
+        topNames.addYear(yearColumns);
+      }
+    }
+    return topNames.topNames();
+  }
+
+  /**
+   * @return the first k rows of a year with no case variants, with the rows tied with the last of
+   * them sorted so that the names in the tie are in alphabetical order ignoring case
+   */
+  private static List<Baby> topOfYear(NameDictionary names, YearColumns yearColumns, int k) {
+    int end = Math.min(k, yearColumns.size());
+    while (end > 0 && end < yearColumns.size()
+        && yearColumns.count(end) == yearColumns.count(end - 1)) {
+      end++;
+    }
+    List<Baby> rows = new ArrayList<>(yearColumns.asBabyList(names).subList(0, end));
+    rows.sort(Comparator.comparingInt(Baby::getCount).reversed()
+        .thenComparing(Baby::getFoldedName));
+    return List.copyOf(rows.subList(0, Math.min(k, end)));
+  }
+
+  private void addYear(YearColumns yearColumns) {
+    for (int i = 0; i < yearColumns.size(); i++) {
+      int nameId = yearColumns.nameId(i);
+      int canonicalId = names.canonicalIdOf(nameId);
+      int slot = (canonicalId * HASH_MULTIPLIER) & mask;
+      while (canonicalIds[slot] != canonicalId && canonicalIds[slot] != EMPTY) {
+        slot = (slot + 1) & mask;
+      }
+      if (canonicalIds[slot] == EMPTY) {
+        canonicalIds[slot] = canonicalId;
+        firstNameIds[slot] = nameId;
+      }
+      totals[slot] += yearColumns.count(i);
+    }
+  }
+
+  private List<Baby> topNames() {
+    for (int slot = 0; slot < canonicalIds.length; slot++) {
+      if (canonicalIds[slot] == EMPTY) {
+        continue;
+      }
+      if (heapSize < heap.length) {
+        heap[heapSize] = slot;
+        siftUp(heapSize++);
+      } else if (heapSize > 0 && ranksBelow(heap[0], slot)) {
+        heap[0] = slot;
+        siftDown(0);
+      }
+    }
+    Baby[] topNames = new Baby[heapSize];
+    for (int i = heapSize - 1; i >= 0; i--) {
+      int slot = heap[0];
+      heap[0] = heap[--heapSize];
+      siftDown(0);
+      int nameId = firstNameIds[slot];
+      topNames[i] = new Baby(names.nameOf(nameId), names.foldedNameOf(nameId),
+          (int) Math.min(totals[slot], Integer.MAX_VALUE));
+    }
+    return List.of(topNames);
+  }
+
+  /**
+   * @return true if the name in the first slot comes after the one in the second in the top names:
+   * it has fewer births, or as many and comes later in alphabetical order ignoring case
+   */
+  private boolean ranksBelow(int slot, int otherSlot) {
+    if (totals[slot] != totals[otherSlot]) {
+      return totals[slot] < totals[otherSlot];
+    }
+    return names.foldedNameOf(canonicalIds[slot])
+        .compareTo(names.foldedNameOf(canonicalIds[otherSlot])) > 0;
+  }
+
+  private void siftUp(int index) {
+    int slot = heap[index];
+    while (index > 0) {
+      int parent = (index - 1) >>> 1;
+      if (!ranksBelow(slot, heap[parent])) {
+        break;
+      }
+      heap[index] = heap[parent];
+      index = parent;
+    }
+    heap[index] = slot;
+  }
+
+  private void siftDown(int index) {
+    int slot = heap[index];
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      if (child + 1 < heapSize && ranksBelow(heap[child + 1], heap[child])) {
+        child++;
+      }
+      if (!ranksBelow(heap[child], slot)) {
+        break;
+      }
+      heap[index] = heap[child];
+      index = child;
+    }
+    heap[index] = slot;
+  }
+
+}
@@ -0,0 +1,317 @@
+package names;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class downloads the files of a web dataset with an HttpClient into a directory on disk and
+ * keeps them there. Each file's ETag and Last-Modified headers are kept next to it and sent back on
+ * the next request for the file, so a file that has not changed on the server is answered with 304
+ * Not Modified and read from disk instead of being downloaded again.
+ * <p>
+ * Requests are sent asynchronously, so any number of files can be fetched at once, but at most a
+ * fixed number of requests are in flight at any time. A request that would go over that number is
+ * queued, without holding a thread, and sent as soon as a request in flight completes, so neither
+ * the caller of fetch nor the thread that runs a retry ever waits for a permit. A request that
+ * fails to connect, or that the server answers with 429 or a 5xx status, is tried again after a
+ * delay that doubles with every attempt; any other status fails the fetch right away.
+ *
+ * @author Hosam Tageldin
+ */
+public class WebSource {
+
+  private static final String ETAG = "ETag";
+  private static final String LAST_MODIFIED = "Last-Modified";
+  private static final String IF_NONE_MATCH = "If-None-Match";
+  private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+  private static final String VALIDATORS_SUFFIX = ".validators";
+  private static final String PARTIAL_SUFFIX = ".part";
+  private static final String HTTP_ERROR = "HTTP status %d for %s";
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+  private static final int OK = 200;
+  private static final int NOT_MODIFIED = 304;
+  private static final int TOO_MANY_REQUESTS = 429;
+  private static final int SERVER_ERROR = 500;
+  private final HttpClient client;
+  private final URI baseUri;
+  private final Path cacheDirectory;
+  private final int maxConcurrentRequests;
+  private final Deque<CompletableFuture<Void>> waitingForPermit = new ArrayDeque<>();
+  private int requestsInFlight;
+  private final int maxAttempts;
+  private final Duration firstBackoff;
+  private final AtomicLong downloadCount = new AtomicLong();
+  private final AtomicLong notModifiedCount = new AtomicLong();
+
+  /**
+   * @param baseUri               the URI the paths of the files are resolved against
+   * @param cacheDirectory        the directory the files are kept in, created if it is missing
+   * @param maxConcurrentRequests the most requests in flight at once
+   * @param maxAttempts           the most times a request is sent before the fetch fails
+   * @param firstBackoff          the delay before the first retry, doubled for every retry after
+   */
+  public WebSource(URI baseUri, Path cacheDirectory, int maxConcurrentRequests, int maxAttempts,
+      Duration firstBackoff) {
+    this.client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NORMAL).build();
+    this.baseUri = baseUri;
+    this.cacheDirectory = cacheDirectory;
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    this.maxAttempts = maxAttempts;
+    this.firstBackoff = firstBackoff;
+  }
+
+  /**
+   * Starts fetching a file into the cache directory, downloading it only if it changed since it
+   * was last fetched. This never waits: if the most requests are already in flight, the request is
+   * queued and sent once one of them completes.
+   *
+   * @param relativePath the path of the file, resolved against the base URI
+   * @return a future for the cached copy of the file, which fails with an IOException if the file
+   * cannot be fetched
+   */
+  public CompletableFuture<Path> fetch(String relativePath) {
+    return attempt(relativePath, 1);
+  }
+
+  /**
+   * Fetches a file into the cache directory and waits for it, see fetch
+   *
+   * @param relativePath the path of the file, resolved against the base URI
+   * @return the cached copy of the file
+   * @throws IOException if the file cannot be fetched
+   */
+  public Path fetchNow(String relativePath) throws IOException {
+    return await(fetch(relativePath));
+  }
+
+  /**
+   * @return the number of files downloaded in full because they were new or had changed
+   */
+  public long downloadCount() {
+    return downloadCount.get();
+  }
+
+  /**
+   * @return the number of files read from the cache because the server said they had not changed
+   */
+  public long notModifiedCount() {
+    return notModifiedCount.get();
+  }
+
+  /**
+   * Returns a version of a fetched file that changes whenever the file changes on the server: the
+   * ETag and Last-Modified headers it was last fetched with, or a SHA-256 digest of the cached copy
+   * if the server sent neither
+   *
+   * @param cachedFile the cached copy of the file, as returned by fetch
+   * @return the version of the file
+   * @throws IOException if the cached copy cannot be read
+   */
+  public String versionOf(Path cachedFile) throws IOException {
+    List<String> validators = readValidators(cachedFile, validatorsFileOf(cachedFile));
+    if (!validators.get(0).isEmpty() || !validators.get(1).isEmpty()) {
+      return validators.get(0) + "\n" + validators.get(1);
+    }
+    try {
+      MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+      return HexFormat.of().formatHex(digest.digest(Files.readAllBytes(cachedFile)));
+    } catch (NoSuchAlgorithmException e) {
+      // every JDK has SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Waits for a fetch to finish
+   *
+   * @param fetch a future returned by fetch
+   * @return the cached copy of the file
+   * @throws IOException if the file cannot be fetched
+   */
+  static Path await(CompletableFuture<Path> fetch) throws IOException {
+    try {
+      return fetch.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private CompletableFuture<Path> attempt(String relativePath, int attempt) {
+    CompletableFuture<Path> response;
+    try {
+      response = send(relativePath);
+    } catch (IOException e) {
+      response = CompletableFuture.failedFuture(e);
+    }
+    return response.exceptionallyCompose(error -> {
+      Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+      if (attempt >= maxAttempts || !isRetryable(cause)) {
+        return CompletableFuture.failedFuture(cause);
+      }
+      long backoffMillis = firstBackoff.toMillis() << (attempt - 1);
+      return CompletableFuture.supplyAsync(() -> relativePath,
+          CompletableFuture.delayedExecutor(backoffMillis, TimeUnit.MILLISECONDS))
+          .thenCompose(path -> attempt(path, attempt + 1));
+    });
+  }
+
+  private boolean isRetryable(Throwable error) {
+    if (error instanceof HttpStatusException) {
+      int status = ((HttpStatusException) error).status;
+      return status == TOO_MANY_REQUESTS || status >= SERVER_ERROR;
+    }
+    return error instanceof IOException;
+  }
+
+  private CompletableFuture<Path> send(String relativePath) throws IOException {
+    Files.createDirectories(cacheDirectory);
+    Path cachedFile = cacheDirectory.resolve(
+        URLEncoder.encode(relativePath, StandardCharsets.UTF_8));
+    Path validatorsFile = validatorsFileOf(cachedFile);
+    URI uri = baseUri.resolve(relativePath);
+    HttpRequest.Builder request = HttpRequest.newBuilder(uri).GET();
+    List<String> validators = readValidators(cachedFile, validatorsFile);
+    if (!validators.get(0).isEmpty()) {
+      request.header(IF_NONE_MATCH, validators.get(0));
+    }
+    if (!validators.get(1).isEmpty()) {
+      request.header(IF_MODIFIED_SINCE, validators.get(1));
+    }
+    return acquirePermit().thenCompose(permit -> {
+      Path partialFile;
+      try {
+        partialFile = Files.createTempFile(cacheDirectory, cachedFile.getFileName().toString(),
+            PARTIAL_SUFFIX);
+      } catch (IOException e) {
+        releasePermit();
+        return CompletableFuture.failedFuture(e);
+      }
+      CompletableFuture<HttpResponse<Path>> response;
+      try {
+        response = client.sendAsync(request.build(),
+            responseInfo -> responseInfo.statusCode() == OK ? BodySubscribers.ofFile(partialFile)
+                : BodySubscribers.replacing(partialFile));
+      } catch (RuntimeException e) {
+        releasePermit();
+        deleteQuietly(partialFile);
+        return CompletableFuture.failedFuture(e);
+      }
+      return response.whenComplete((ignored, error) -> releasePermit())
+          .thenApply(completed -> {
+            try {
+              return store(completed, uri, cachedFile, validatorsFile, partialFile);
+            } catch (IOException e) {
+              throw new CompletionException(e);
+            }
+          })
+          .whenComplete((ignored, error) -> deleteQuietly(partialFile));
+    });
+  }
+
+  /**
+   * @return a future that completes once a request may be sent, right away if fewer than the most
+   * requests are in flight
+   */
+  private synchronized CompletableFuture<Void> acquirePermit() {
+    if (requestsInFlight < maxConcurrentRequests) {
+      requestsInFlight++;
+      return CompletableFuture.completedFuture(null);
+    }
+    CompletableFuture<Void> permit = new CompletableFuture<>();
+    waitingForPermit.add(permit);
+    return permit;
+  }
+
+  /**
+   * Hands the permit of a completed request to the request that has waited longest, if any
+   */
+  private void releasePermit() {
+    CompletableFuture<Void> next;
+    synchronized (this) {
+      next = waitingForPermit.poll();
+      if (next == null) {
+        requestsInFlight--;
+        return;
+      }
+    }
+    next.complete(null);
+  }
+
+  private Path store(HttpResponse<Path> response, URI uri, Path cachedFile, Path validatorsFile,
+      Path partialFile) throws IOException {
+    if (response.statusCode() == NOT_MODIFIED && Files.exists(cachedFile)) {
+      notModifiedCount.incrementAndGet();
+      return cachedFile;
+    }
+    if (response.statusCode() != OK) {
+      throw new HttpStatusException(response.statusCode(), uri);
+    }
+    Files.move(partialFile, cachedFile, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    Path partialValidators = Files.createTempFile(cacheDirectory,
+        validatorsFile.getFileName().toString(), PARTIAL_SUFFIX);
+    Files.write(partialValidators, List.of(response.headers().firstValue(ETAG).orElse(""),
+        response.headers().firstValue(LAST_MODIFIED).orElse("")));
+    Files.move(partialValidators, validatorsFile, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    downloadCount.incrementAndGet();
+    return cachedFile;
+  }
+
+  private static Path validatorsFileOf(Path cachedFile) {
+    return cachedFile.resolveSibling(cachedFile.getFileName() + VALIDATORS_SUFFIX);
+  }
+
+  private List<String> readValidators(Path cachedFile, Path validatorsFile) throws IOException {
+    if (Files.exists(cachedFile) && Files.exists(validatorsFile)) {
+      List<String> validators = Files.readAllLines(validatorsFile);
+      if (validators.size() == 2) {
+        return validators;
+      }
+    }
+    return List.of("", "");
+  }
+
+  private void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      // a leftover partial file is only wasted space, it is never read
+    }
+  }
+
+  /**
+   * A response whose status means the file could not be fetched
+   */
+  private static class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+    private final int status;
+
+    private HttpStatusException(int status, URI uri) {
+      super(String.format(HTTP_ERROR, status, uri));
+      this.status = status;
+    }
+  }
+
+}
@@ -2,14 +2,29 @@ package names;
 
 import java.io.*;
 import java.net.URISyntaxException;
-import java.net.URL;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 
 /**
  * This class is designed to find the directory that includes all the files and reading all the data
@@ -25,24 +40,92 @@ public class YOBFileReader {
   private static final String URL_LOCATION = "https://www2.cs.duke.edu/courses/fall20/compsci307d/assign/01_data/data/";
   private static final String WEB = "WEB";
   private static final String ZIP = "ZIP";
+  private static final String MAPPED = "MAPPED";
   private static final String ZIP_NAME = "names.zip";
   private static final String HREF_REGEX = "href\\s?=\\s?\"([^\"]+)\"";
   private static final String NONEXISTENT_DIRECTORY = "Nonexistent Directory!";
+  private static final String FILE_TOO_LARGE_TO_MAP = "Year file too large to map: ";
+  private static final String NOT_A_LOCAL_SOURCE = "Not a local directory source: ";
+  private static final String WEB_CACHE_DIRECTORY = "names-web-cache";
+  private static final int WEB_MAX_CONCURRENT_REQUESTS = 8;
+  private static final int WEB_MAX_ATTEMPTS = 4;
+  private static final Duration WEB_FIRST_BACKOFF = Duration.ofMillis(250);
+  private static final String[] GENDERS = {"F", "M"};
+  private static final String FINGERPRINT_ALGORITHM = "SHA-256";
+  private static final Object UNSAFE;
+  private static final Method INVOKE_CLEANER;
   private String fileType;
   private String dataSet;
   private final Pattern hrefPattern;
+  private final ExecutorService loadExecutor;
+  private final WebSource webSource;
+
+  static {
+    Object unsafe = null;
+    Method invokeCleaner = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafe = theUnsafe.get(null);
+      invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // mapped files will be released by the garbage collector instead
+    }
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+  }
 
   /**
-   * Reads all files involved in a dataset/fileType
+   * Reads all files involved in a dataset/fileType one at a time on the calling thread. A "local"
+   * or "mapped" dataset is a directory of the classpath resources, or any directory given by its
+   * absolute path.
    *
-   * @param fileType "web" "zip" or "local" file type to open
+   * @param fileType "web" "zip" "local" or "mapped" file type to open
    * @param dataSet  specific dataset to read from
    */
   public YOBFileReader(String fileType, String dataSet) {
+    this(fileType, dataSet, null);
+  }
+
+  /**
+   * Reads all files involved in a dataset/fileType, parsing the year files at the same time on the
+   * given executor (for example a ForkJoinPool or a virtual thread per task executor). Each year
+   * file is parsed into its own lists by a worker, and the calling thread then merges the results
+   * in the same order the sequential reader would, so the loaded data is identical either way.
+   * The web source downloads its files into a cache under the temporary directory (see WebSource),
+   * so files that have not changed on the server are not downloaded again.
+   *
+   * @param fileType     "web" "zip" "local" or "mapped" file type to open
+   * @param dataSet      specific dataset to read from
+   * @param loadExecutor executor used to parse the year files, or null to read them sequentially
+   */
+  public YOBFileReader(String fileType, String dataSet, ExecutorService loadExecutor) {
+    this(fileType, dataSet, loadExecutor, fileType.equalsIgnoreCase(WEB) ? new WebSource(
+        URI.create(URL_LOCATION), Paths.get(System.getProperty("java.io.tmpdir"),
+        WEB_CACHE_DIRECTORY), WEB_MAX_CONCURRENT_REQUESTS, WEB_MAX_ATTEMPTS, WEB_FIRST_BACKOFF)
+        : null);
+  }
+
+  /**
+   * Reads all files involved in a web dataset from the given web source, for example one with its
+   * own server, cache directory or request limits
+   *
+   * @param dataSet      specific dataset to read from, a directory under the web source's base URI
+   * @param webSource    where the dataset's directory listing and year files are fetched from
+   * @param loadExecutor executor used to parse the year files, or null to read them sequentially
+   */
+  public YOBFileReader(String dataSet, WebSource webSource, ExecutorService loadExecutor) {
+    this(WEB, dataSet, loadExecutor, webSource);
+  }
+
+  private YOBFileReader(String fileType, String dataSet, ExecutorService loadExecutor,
+      WebSource webSource) {
     this.fileType = fileType;
     this.dataSet = dataSet;
     this.hrefPattern = Pattern.compile(HREF_REGEX);
-
+    this.loadExecutor = loadExecutor;
+    this.webSource = webSource;
   }
 
   /**
@@ -53,95 +136,462 @@ public class YOBFileReader {
    * @return all the gendered babies in the data set in a map
    */
   public Map<Integer, List<Baby>> allBabiesInDataSet(String gender) {
-    Map<Integer, List<Baby>> allBabiesInDataSet = new HashMap<>();
-    openBasedOnType(allBabiesInDataSet, gender);
-    return allBabiesInDataSet;
+    ColumnarDataSet columns = loadDataSet();
+    return columns.getColumns(gender).asBabyMap(columns.getNames());
+  }
+
+  /**
+   * Reads every year file in the data set exactly once and splits its rows by gender in the same
+   * pass, storing them in columnar form. Every year found gets columns for both genders, even if
+   * that gender does not appear in the year's file. If the source cannot be read, the data set is
+   * empty and InvalidParameterException will get thrown later; see loadCompleteDataSet to find out
+   * why.
+   *
+   * @return all the babies in the data set, partitioned by gender and then by year
+   */
+  public ColumnarDataSet loadDataSet() {
+    try {
+      return loadCompleteDataSet();
+    } catch (IOException e) {
+      // the cause is kept in the load's flight recorder event
+      return ColumnarDataSet.empty();
+    }
+  }
+
+  /**
+   * Same as loadDataSet, but fails instead of returning a data set that is empty or is missing
+   * some of its years, so a dataset that is already loaded can be kept when the source breaks
+   *
+   * @return all the babies in the data set, partitioned by gender and then by year
+   * @throws IOException if the data source cannot be found or listed, or any year file cannot be
+   *                     read or is malformed
+   */
+  public ColumnarDataSet loadCompleteDataSet() throws IOException {
+    DataSetLoadEvent event = new DataSetLoadEvent();
+    event.begin();
+    NameDictionary names = new NameDictionary();
+    Map<String, Map<Integer, YearColumns>> columnsByGender = new HashMap<>();
+    for (String gender : GENDERS) {
+      columnsByGender.put(gender, new HashMap<>());
+    }
+    try {
+      withYearFiles(yearFiles -> {
+        loadYearFiles(yearFiles, names, columnsByGender);
+        return null;
+      });
+    } catch (Exception e) {
+      event.failure = e.toString();
+      if (e instanceof IOException) {
+        throw (IOException) e;
+      }
+      throw new IOException(NONEXISTENT_DIRECTORY, e);
+    } finally {
+      if (event.shouldCommit()) {
+        event.source = fileType;
+        event.dataSet = dataSet;
+        event.years = columnsByGender.get(GENDERS[0]).size();
+        event.names = names.size();
+        event.commit();
+      }
+    }
+    return new ColumnarDataSet(names, columnsByGender);
   }
 
-  private void openBasedOnType(Map<Integer, List<Baby>> babyMap, String gender) {
+  /**
+   * Lists the years the data set has a file for, without reading any of the files
+   *
+   * @return every year in the data set in ascending order
+   * @throws IOException if the data source cannot be found or listed
+   */
+  public List<Integer> listYears() throws IOException {
+    try {
+      return withYearFiles(yearFiles -> {
+        SortedSet<Integer> years = new TreeSet<>();
+        for (YearFile yearFile : yearFiles) {
+          years.add(yearFile.year);
+        }
+        return new ArrayList<>(years);
+      });
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(NONEXISTENT_DIRECTORY, e);
+    }
+  }
+
+  /**
+   * Reads only the files for some years of the data set, for when they were not loaded yet or were
+   * added or changed after the data set was loaded. The source is listed once to find the files,
+   * and no other file is parsed.
+   *
+   * @param years the years to read
+   * @param names dictionary the names of the years are added to
+   * @return a map from each year that has a file to the columns of each gender ("F", "M") for that
+   * year; years with no file are left out
+   * @throws IOException if the data source cannot be found or read, or a year file is malformed
+   */
+  public Map<Integer, Map<String, YearColumns>> loadYears(Collection<Integer> years,
+      NameDictionary names) throws IOException {
+    YearFileParser parser = new YearFileParser(names, GENDERS);
+    try {
+      return withYearFiles(yearFiles -> {
+        Map<Integer, Map<String, YearColumns>> columnsByYear = new HashMap<>();
+        List<YearFile> wantedYearFiles = new ArrayList<>();
+        for (YearFile yearFile : yearFiles) {
+          if (years.contains(yearFile.year)) {
+            wantedYearFiles.add(yearFile);
+            yearFile.prefetch.run();
+          }
+        }
+        for (YearFile yearFile : wantedYearFiles) {
+          columnsByYear.put(yearFile.year, allBabiesInFile(yearFile, parser));
+        }
+        return columnsByYear;
+      });
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(NONEXISTENT_DIRECTORY, e);
+    }
+  }
+
+  /**
+   * @return the directory the year files of a local or mapped source are read from
+   * @throws IOException if the source is the web or a zip, or the directory does not exist
+   */
+  public Path localDirectory() throws IOException {
+    if (fileType.equalsIgnoreCase(WEB) || fileType.equalsIgnoreCase(ZIP)) {
+      throw new IOException(NOT_A_LOCAL_SOURCE + fileType);
+    }
+    try {
+      return Paths.get(getPathToDataSource(dataSet));
+    } catch (Exception e) {
+      throw new IOException(NONEXISTENT_DIRECTORY, e);
+    }
+  }
+
+  /**
+   * Reads the year files one at a time, each with its own dictionary, and hands each year to the
+   * visitor before the next file is read. Nothing is kept once the visitor returns, so no more than
+   * one year is held in memory at a time as long as the visitor does not keep the columns or the
+   * dictionary. Years are handed over in the order the source lists them.
+   *
+   * @param visitor receives every year of the data set
+   * @throws IOException if the data source cannot be found or read, or a year file is malformed
+   */
+  public void streamYears(YearVisitor visitor) throws IOException {
+    try {
+      withYearFiles(yearFiles -> {
+        for (YearFile yearFile : yearFiles) {
+          yearFile.prefetch.run();
+        }
+        for (YearFile yearFile : yearFiles) {
+          NameDictionary names = new NameDictionary();
+          visitor.visit(yearFile.year,
+              allBabiesInFile(yearFile, new YearFileParser(names, GENDERS)), names);
+        }
+        return null;
+      });
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException(NONEXISTENT_DIRECTORY, e);
+    }
+  }
+
+  /**
+   * Computes a fingerprint of the source files without parsing them, which changes whenever a year
+   * file is added, removed or modified. Local and mapped sources use the name, size and last
+   * modified time of every file, and the zip source uses the size and last modified time of the
+   * zip. The web source uses the path and version (see WebSource.versionOf) of every year file in
+   * the directory listing, so it revalidates each year file with the server, downloading only the
+   * ones that changed, which the load that follows then reads from the cache. The fingerprint is
+   * the first 64 bits of a SHA-256 digest of all of these.
+   *
+   * @return a fingerprint of the source files as they are now
+   * @throws IOException if the data source cannot be found or read
+   */
+  public long sourceFingerprint() throws IOException {
+    MessageDigest fingerprint;
+    try {
+      fingerprint = MessageDigest.getInstance(FINGERPRINT_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      // every JDK has SHA-256
+      throw new IllegalStateException(e);
+    }
+    addToFingerprint(fingerprint, fileType.toUpperCase() + "/" + dataSet);
     try {
       if (fileType.equalsIgnoreCase(WEB)) {
-        collectYearsFromWeb(babyMap, gender);
+        List<String> yearFileNames = listWebYearFiles();
+        List<CompletableFuture<Path>> fetches = new ArrayList<>();
+        for (String yearFileName : yearFileNames) {
+          fetches.add(webSource.fetch(dataSet + "/" + yearFileName));
+        }
+        for (int i = 0; i < yearFileNames.size(); i++) {
+          addToFingerprint(fingerprint, yearFileNames.get(i));
+          addToFingerprint(fingerprint, webSource.versionOf(WebSource.await(fetches.get(i))));
+        }
       } else if (fileType.equalsIgnoreCase(ZIP)) {
-        collectYearsFromZip(babyMap, gender);
+        File zip = new File(getPathToDataSource(ZIP_NAME));
+        addToFingerprint(fingerprint, zip.length() + "/" + zip.lastModified());
       } else {
-        collectYearsFromLocalPath(babyMap, gender);
+        File[] children = new File(getPathToDataSource(dataSet)).listFiles();
+        Arrays.sort(children);
+        for (File child : children) {
+          addToFingerprint(fingerprint, child.getName());
+          addToFingerprint(fingerprint, child.length() + "/" + child.lastModified());
+        }
       }
+      return ByteBuffer.wrap(fingerprint.digest()).getLong();
+    } catch (IOException e) {
+      throw e;
     } catch (Exception e) {
-      // babyMap will remain empty and InvalidParameterException will get thrown later
+      throw new IOException(NONEXISTENT_DIRECTORY, e);
     }
   }
 
+  /**
+   * Adds a value to the fingerprint, followed by a separator so that consecutive values cannot run
+   * into each other
+   */
+  private static void addToFingerprint(MessageDigest fingerprint, String value) {
+    fingerprint.update(value.getBytes(StandardCharsets.UTF_8));
+    fingerprint.update((byte) 0);
+  }
 
-  private void collectYearsFromWeb(Map<Integer, List<Baby>> babyMap, String gender)
-      throws Exception {
-    URL folderLocation = new URL(URL_LOCATION + dataSet);
-    BufferedReader readFolder = new BufferedReader(
-        new InputStreamReader(folderLocation.openStream()));
-    String fileLine;
-    while ((fileLine = readFolder.readLine()) != null) {
-      Matcher matcher = hrefPattern.matcher(fileLine);
-      if (matcher.find(0)) {
-        String hrefValue = matcher.group(1);
-        int year = extractYear(hrefValue);
-        if (year == 0) {
-          continue;
+  /**
+   * Lists the year files of the source and hands them to the action. The zip stays open until the
+   * action is done, since its year files are read through it.
+   */
+  private <T> T withYearFiles(YearFilesAction<T> action) throws Exception {
+    if (fileType.equalsIgnoreCase(WEB)) {
+      return action.apply(collectYearsFromWeb());
+    } else if (fileType.equalsIgnoreCase(ZIP)) {
+      try (ZipFile zipFile = new ZipFile(getPathToDataSource(ZIP_NAME))) {
+        return action.apply(collectYearsFromZip(zipFile));
+      }
+    } else if (fileType.equalsIgnoreCase(MAPPED)) {
+      return action.apply(collectYearsFromMappedPath());
+    } else {
+      return action.apply(collectYearsFromLocalPath());
+    }
+  }
+
+  /**
+   * Parses the year files and adds their columns to the maps in listing order. Web year files all
+   * start downloading first, so they download at the same time as earlier years are parsed. In
+   * parallel mode every file is parsed with its own dictionary on the executor, and the calling
+   * thread then moves the names into the shared dictionary and renumbers the name IDs as it merges
+   * each year. If a year fails, the other years' tasks are abandoned and waited for before the
+   * failure is thrown, so none of them still reads a zip entry or mapped file once the source is
+   * closed.
+   */
+  private void loadYearFiles(List<YearFile> yearFiles, NameDictionary names,
+      Map<String, Map<Integer, YearColumns>> columnsByGender) throws Exception {
+    for (YearFile yearFile : yearFiles) {
+      yearFile.prefetch.run();
+    }
+    if (loadExecutor == null) {
+      YearFileParser parser = new YearFileParser(names, GENDERS);
+      for (YearFile yearFile : yearFiles) {
+        addYearToMaps(yearFile.year, allBabiesInFile(yearFile, parser), columnsByGender);
+      }
+      return;
+    }
+    List<YearFileParser> parsers = new ArrayList<>();
+    List<Future<Map<String, YearColumns>>> parsedYears = new ArrayList<>();
+    ParseTasks parseTasks = new ParseTasks();
+    try {
+      for (YearFile yearFile : yearFiles) {
+        YearFileParser parser = new YearFileParser(new NameDictionary(), GENDERS);
+        parsers.add(parser);
+        parsedYears.add(loadExecutor.submit(
+            () -> parseTasks.run(() -> allBabiesInFile(yearFile, parser))));
+      }
+      for (int i = 0; i < yearFiles.size(); i++) {
+        Map<String, YearColumns> columnsForYear = renumber(parsedYears.get(i).get(),
+            parsers.get(i).getNames(), names);
+        addYearToMaps(yearFiles.get(i).year, columnsForYear, columnsByGender);
+      }
+    } catch (Exception | Error e) {
+      parseTasks.abandon(parsedYears);
+      throw e;
+    }
+  }
+
+  private Map<String, YearColumns> renumber(Map<String, YearColumns> columnsForYear,
+      NameDictionary yearNames, NameDictionary names) {
+    int[] sharedIds = new int[yearNames.size()];
+    for (int id = 0; id < sharedIds.length; id++) {
+      sharedIds[id] = names.idOf(yearNames, id);
+    }
+    Map<String, YearColumns> renumberedColumns = new HashMap<>();
+    for (String gender : GENDERS) {
+      YearColumns columns = columnsForYear.get(gender);
+      int[] nameIds = new int[columns.size()];
+      int[] counts = new int[columns.size()];
+      for (int i = 0; i < nameIds.length; i++) {
+        nameIds[i] = sharedIds[columns.nameId(i)];
+        counts[i] = columns.count(i);
+      }
+      renumberedColumns.put(gender, new YearColumns(nameIds, counts));
+    }
+    return renumberedColumns;
+  }
+
+  private void addYearToMaps(int year, Map<String, YearColumns> columnsForYear,
+      Map<String, Map<Integer, YearColumns>> columnsByGender) {
+    for (String gender : GENDERS) {
+      columnsByGender.get(gender).put(year, columnsForYear.get(gender));
+    }
+  }
+
+
+  private List<YearFile> collectYearsFromWeb() throws Exception {
+    List<YearFile> yearFiles = new ArrayList<>();
+    for (String yearFileName : listWebYearFiles()) {
+      WebDownload download = new WebDownload(webSource, dataSet + "/" + yearFileName);
+      yearFiles.add(new YearFile(extractYear(yearFileName),
+          parser -> parseStream(download::open, parser), download::start));
+    }
+    return yearFiles;
+  }
+
+  /**
+   * Fetches the directory listing of the web dataset and finds the year files it links to
+   *
+   * @return the name of every year file, relative to the dataset's directory, in listing order
+   */
+  private List<String> listWebYearFiles() throws IOException {
+    List<String> yearFileNames = new ArrayList<>();
+    try (BufferedReader readFolder = Files.newBufferedReader(webSource.fetchNow(dataSet))) {
+      String fileLine;
+      while ((fileLine = readFolder.readLine()) != null) {
+        Matcher matcher = hrefPattern.matcher(fileLine);
+        if (matcher.find(0)) {
+          String hrefValue = matcher.group(1);
+          if (extractYear(hrefValue) != 0) {
+            yearFileNames.add(hrefValue);
+          }
         }
-        babyMap.put(year, allBabiesInFile(openWebURL(hrefValue), gender));
       }
     }
+    return yearFileNames;
   }
 
-  private BufferedReader openWebURL(String fileLink) throws IOException {
-    URL webLocation = new URL(URL_LOCATION + dataSet + "/" + fileLink);
-    return new BufferedReader(new InputStreamReader(webLocation.openStream()));
+  /**
+   * Lists the year files in the zip from its central directory. Every entry is read through the one
+   * shared ZipFile, so the entries can be inflated and parsed at the same time, and entries that
+   * are directories or have no year in their name are skipped.
+   */
+  private List<YearFile> collectYearsFromZip(ZipFile zipFile) {
+    List<YearFile> yearFiles = new ArrayList<>();
+    Enumeration<? extends ZipEntry> entries = zipFile.entries();
+    while (entries.hasMoreElements()) {
+      ZipEntry entry = entries.nextElement();
+      int year = extractYear(entry.getName());
+      if (entry.isDirectory() || year == 0) {
+        continue;
+      }
+      yearFiles.add(new YearFile(year,
+          parser -> parseStream(() -> zipFile.getInputStream(entry), parser)));
+    }
+    return yearFiles;
   }
 
-  private void collectYearsFromZip(Map<Integer, List<Baby>> babyMap, String gender)
-      throws Exception {
-    FileInputStream fis = new FileInputStream(getPathToDataSource(ZIP_NAME));
-    BufferedInputStream bis = new BufferedInputStream(fis);
-    ZipInputStream zis = new ZipInputStream(bis);
-    ZipEntry ze;
-    while ((ze = zis.getNextEntry()) != null) {
-      int year = extractYear(ze.getName());
-      babyMap.put(year, allBabiesInFile(openLocalZIPFile(ze), gender));
+  private List<YearFile> collectYearsFromLocalPath() throws Exception {
+    List<YearFile> yearFiles = new ArrayList<>();
+    File dir = new File(getPathToDataSource(dataSet));
+    for (File child : dir.listFiles()) {
+      //NullPointerException noted, InvalidParameterException will be thrown if there is invalid dataset
+      yearFiles.add(new YearFile(extractYear(child.getName()),
+          parser -> parseStream(() -> openLocalFile(child), parser)));
     }
+    return yearFiles;
   }
 
-  private BufferedReader openLocalZIPFile(ZipEntry zipFileToOpen) throws Exception {
-    ZipFile zipFile = new ZipFile(getPathToDataSource(ZIP_NAME));
-    InputStream stream = zipFile.getInputStream(zipFileToOpen);
-    return new BufferedReader(new InputStreamReader(stream));
+  private InputStream openLocalFile(File fileToOpen) throws Exception {
+    return new FileInputStream(fileToOpen);
   }
 
-  private void collectYearsFromLocalPath(Map<Integer, List<Baby>> babyMap, String gender)
-      throws Exception {
+  private List<YearFile> collectYearsFromMappedPath() throws Exception {
+    List<YearFile> yearFiles = new ArrayList<>();
     File dir = new File(getPathToDataSource(dataSet));
     for (File child : dir.listFiles()) {
       //NullPointerException noted, InvalidParameterException will be thrown if there is invalid dataset
-      int year = extractYear(child.getName());
-      babyMap.put(year, allBabiesInFile(openLocalFile(child), gender));
+      yearFiles.add(new YearFile(extractYear(child.getName()),
+          parser -> parseMappedFile(child, parser)));
     }
+    return yearFiles;
   }
 
-  private BufferedReader openLocalFile(File fileToOpen) throws Exception {
-    return new BufferedReader(new FileReader(fileToOpen));
+  private Map<String, YearColumns> parseMappedFile(File fileToMap, YearFileParser parser)
+      throws Exception {
+    try (FileChannel channel = FileChannel.open(fileToMap.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException(FILE_TOO_LARGE_TO_MAP + fileToMap);
+      }
+      MappedByteBuffer mappedFile = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      try {
+        return parser.parse(mappedFile);
+      } finally {
+        unmap(mappedFile);
+      }
+    }
   }
 
-  private List<Baby> allBabiesInFile(BufferedReader br, String gender) throws Exception {
-    List<Baby> babyList = new ArrayList<>();
-    String lineData;
-    while ((lineData = br.readLine()) != null) {
-      String[] lineDataArray = lineData.split(",");
-      if (lineDataArray[1].equals(gender)) {
-        babyList.add(new Baby(lineDataArray[0], Integer.parseInt(lineDataArray[2])));
+  /**
+   * Releases the mapping right away instead of waiting for the buffer to be garbage collected. The
+   * parser copies out every name it keeps, so nothing refers to the buffer once it is done.
+   */
+  private static void unmap(ByteBuffer mappedFile) {
+    if (INVOKE_CLEANER == null) {
+      return;
+    }
+    try {
+      INVOKE_CLEANER.invoke(UNSAFE, mappedFile);
+    } catch (ReflectiveOperationException e) {
+      // the mapping is released when the buffer is garbage collected instead
+    }
+  }
+
+  private Map<String, YearColumns> parseStream(StreamOpener opener, YearFileParser parser)
+      throws Exception {
+    try (InputStream stream = opener.open()) {
+      return parser.parse(stream);
+    }
+  }
+
+  private Map<String, YearColumns> allBabiesInFile(YearFile yearFile, YearFileParser parser)
+      throws Exception {
+    YearFileLoadEvent event = new YearFileLoadEvent();
+    event.begin();
+    parser.resetCounts();
+    try {
+      return yearFile.contents.parseWith(parser);
+    } catch (Exception e) {
+      event.failure = e.toString();
+      throw e;
+    } finally {
+      if (event.shouldCommit()) {
+        event.source = fileType;
+        event.dataSet = dataSet;
+        event.year = yearFile.year;
+        event.bytes = parser.bytesParsed();
+        event.rowsParsed = parser.rowsParsed();
+        event.rowsKept = parser.rowsKept();
+        event.commit();
       }
     }
-    return babyList;
   }
 
-  private int extractYear(String fileName) {
+  /**
+   * Finds the year in the name of a year file, such as yob2000.txt
+   *
+   * @param fileName the name of the file
+   * @return the year, or 0 if the name does not hold exactly four digits
+   */
+  public static int extractYear(String fileName) {
     StringBuilder year = new StringBuilder();
     for (int i = 0; i < fileName.length(); i++) {
       if (Character.isDigit(fileName.charAt(i))) {
@@ -155,6 +605,9 @@ public class YOBFileReader {
   }
 
   private String getPathToDataSource(String dataSource) throws InvalidParameterException {
+    if (Paths.get(dataSource).isAbsolute()) {
+      return dataSource;
+    }
     try {
       return String
           .valueOf(Paths.get(Questions.class.getClassLoader().getResource(dataSource).toURI()));
@@ -164,6 +617,128 @@ public class YOBFileReader {
     }
   }
 
-}
+  /**
+   * The parse tasks of one parallel load. Once the load fails they are abandoned: tasks that have
+   * not started are cancelled, or skip their file if they start anyway, and the tasks that are
+   * already running are waited for.
+   */
+  private static class ParseTasks {
+
+    private int running;
+    private boolean abandoned;
 
+    <T> T run(Callable<T> task) throws Exception {
+      synchronized (this) {
+        if (abandoned) {
+          return null;
+        }
+        running++;
+      }
+      try {
+        return task.call();
+      } finally {
+        synchronized (this) {
+          running--;
+          notifyAll();
+        }
+      }
+    }
 
+    void abandon(List<? extends Future<?>> tasks) {
+      synchronized (this) {
+        abandoned = true;
+      }
+      for (Future<?> task : tasks) {
+        task.cancel(false);
+      }
+      boolean interrupted = false;
+      synchronized (this) {
+        while (running > 0) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            // the running tasks must still finish before the source is closed
+            interrupted = true;
+          }
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Receives the years of a data set one at a time, see streamYears
+   */
+  public interface YearVisitor {
+
+    /**
+     * @param year           the year of the file
+     * @param columnsForYear the columns of each gender ("F", "M") for that year
+     * @param names          the dictionary the name IDs of this year refer to
+     */
+    void visit(int year, Map<String, YearColumns> columnsForYear, NameDictionary names);
+  }
+
+  private interface StreamOpener {
+
+    InputStream open() throws Exception;
+  }
+
+  private interface YearFilesAction<T> {
+
+    T apply(List<YearFile> yearFiles) throws Exception;
+  }
+
+  private interface YearFileContents {
+
+    Map<String, YearColumns> parseWith(YearFileParser parser) throws Exception;
+  }
+
+  private static class YearFile {
+
+    private final int year;
+    private final YearFileContents contents;
+    private final Runnable prefetch;
+
+    private YearFile(int year, YearFileContents contents) {
+      this(year, contents, () -> {
+      });
+    }
+
+    private YearFile(int year, YearFileContents contents, Runnable prefetch) {
+      this.year = year;
+      this.contents = contents;
+      this.prefetch = prefetch;
+    }
+  }
+
+  /**
+   * A web year file that is fetched into the cache at most once per listing. start begins the
+   * fetch without waiting for it, so every file that is about to be read can be fetched at once.
+   */
+  private static class WebDownload {
+
+    private final WebSource webSource;
+    private final String relativePath;
+    private CompletableFuture<Path> cachedFile;
+
+    private WebDownload(WebSource webSource, String relativePath) {
+      this.webSource = webSource;
+      this.relativePath = relativePath;
+    }
+
+    private synchronized CompletableFuture<Path> start() {
+      if (cachedFile == null) {
+        cachedFile = webSource.fetch(relativePath);
+      }
+      return cachedFile;
+    }
+
+    private InputStream open() throws IOException {
+      return Files.newInputStream(WebSource.await(start()));
+    }
+  }
+
+}
@@ -0,0 +1,79 @@
+package names;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * This class holds the names of one gender in one year as two parallel int columns, the name IDs
+ * (from a NameDictionary) and the number of babies, both in rank order. Index 0 is rank 1. A
+ * YearColumns never changes once it is created.
+ *
+ * @author Hosam Tageldin
+ */
+public class YearColumns {
+
+  private final int[] nameIds;
+  private final int[] counts;
+
+  /**
+   * @param nameIds the name IDs in rank order
+   * @param counts  the number of babies for each name, in the same order
+   */
+  public YearColumns(int[] nameIds, int[] counts) {
+    this.nameIds = nameIds;
+    this.counts = counts;
+  }
+
+  /**
+   * @return the number of names in this year
+   */
+  public int size() {
+    return nameIds.length;
+  }
+
+  /**
+   * @param index zero based index, one less than the rank
+   * @return the ID of the name at that index
+   */
+  public int nameId(int index) {
+    return nameIds[index];
+  }
+
+  /**
+   * @param index zero based index, one less than the rank
+   * @return the number of babies born with the name at that index
+   */
+  public int count(int index) {
+    return counts[index];
+  }
+
+  /**
+   * Returns a read only list view of this year as Babies. The Babies are created when they are
+   * asked for, so the view itself costs nothing to make.
+   *
+   * @param names the dictionary the name IDs refer to
+   * @return this year as a list of Babies in rank order
+   */
+  public List<Baby> asBabyList(NameDictionary names) {
+    return new AbstractList<>() {
+      @Override
+      public Baby get(int index) {
+        int nameId = nameIds[index];
+        return new Baby(names.nameOf(nameId), names.foldedNameOf(nameId), counts[index]);
+      }
+
+      @Override
+      public int size() {
+        return nameIds.length;
+      }
+    };
+  }
+
+  /**
+   * @return an estimate of the heap used by this year, in bytes
+   */
+  public long estimatedHeapBytes() {
+    return (long) Integer.BYTES * (nameIds.length + counts.length);
+  }
+
+}
@@ -0,0 +1,52 @@
+package names;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for reading and parsing one year file, emitted by YOBFileReader
+ * whether the file is read for a full load, a lazy or updated year, or a stream. Its duration
+ * covers reading the file and parsing it, which for the web source includes waiting for the file
+ * to be fetched. The event records no stack trace and only reads the parser's counters when a
+ * recording wants it, so it is cheap enough to leave enabled.
+ *
+ * @author Hosam Tageldin
+ */
+@Name("names.YearFileLoad")
+@Label("Year File Load")
+@Category({"Baby Names", "Loading"})
+@Description("Reading and parsing of one year file")
+@StackTrace(false)
+public class YearFileLoadEvent extends jdk.jfr.Event {
+
+  @Label("Source")
+  @Description("Web, Local, Mapped or Zip")
+  String source;
+
+  @Label("Data Set")
+  String dataSet;
+
+  @Label("Year")
+  int year;
+
+  @Label("Bytes")
+  @DataAmount
+  long bytes;
+
+  @Label("Rows Parsed")
+  @Description("Rows of every gender in the file")
+  int rowsParsed;
+
+  @Label("Rows Kept")
+  @Description("Rows of the genders that are kept")
+  int rowsKept;
+
+  @Label("Failure")
+  @Description("The error the file failed with, or null if it was read")
+  String failure;
+
+}
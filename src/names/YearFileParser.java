@@ -0,0 +1,204 @@
+package names;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * This class parses the contents of a single year file (lines in the name,gender,count format) by
+ * scanning the raw bytes instead of reading it line by line as Strings. The gender and count of
+ * each row are decoded straight from the bytes, so rows of a gender that is not being kept cost no
+ * allocations at all. For the rows that are kept, the name is looked up in the parser's
+ * NameDictionary straight from its bytes, so no String is created for it either, and the row is
+ * appended to the YearColumns of its gender.
+ * <p>
+ * A parser is not thread safe. Use one parser, with its own dictionary, per thread when parsing
+ * files at the same time.
+ *
+ * @author Hosam Tageldin
+ */
+public class YearFileParser {
+
+  private static final String MALFORMED_LINE = "Malformed line in year file at byte ";
+  private static final int INITIAL_COLUMN_SIZE = 1 << 6;
+  private final NameDictionary names;
+  private final String[] keptGenders;
+  private long bytesParsed;
+  private int rowsParsed;
+  private int rowsKept;
+
+  /**
+   * Creates a parser that keeps the rows of the given genders
+   *
+   * @param names       the dictionary the names of kept rows are added to
+   * @param keptGenders the single letter genders ("F", "M") whose rows should be kept
+   */
+  public YearFileParser(NameDictionary names, String... keptGenders) {
+    this.names = names;
+    this.keptGenders = keptGenders;
+  }
+
+  /**
+   * @return the dictionary the names of kept rows are added to
+   */
+  public NameDictionary getNames() {
+    return names;
+  }
+
+  /**
+   * @return the number of bytes in the last file parsed, or parsed so far if it was malformed
+   */
+  public long bytesParsed() {
+    return bytesParsed;
+  }
+
+  /**
+   * @return the number of rows in the last file parsed, or parsed so far if it was malformed
+   */
+  public int rowsParsed() {
+    return rowsParsed;
+  }
+
+  /**
+   * @return the number of rows of kept genders in the last file parsed, or parsed so far if it was
+   * malformed
+   */
+  public int rowsKept() {
+    return rowsKept;
+  }
+
+  /**
+   * Sets the counts back to 0, so a file that fails before it is parsed does not report the counts
+   * of the file before it
+   */
+  void resetCounts() {
+    bytesParsed = 0;
+    rowsParsed = 0;
+    rowsKept = 0;
+  }
+
+  /**
+   * Reads the whole stream and parses it as a year file. The stream is not closed.
+   *
+   * @param yearFile stream with the contents of a year file
+   * @return a map from each kept gender to the columns of that gender in rank order
+   * @throws IOException if the stream cannot be read or a line is not in name,gender,count format
+   */
+  public Map<String, YearColumns> parse(InputStream yearFile) throws IOException {
+    return parse(ByteBuffer.wrap(yearFile.readAllBytes()));
+  }
+
+  /**
+   * Parses the bytes between the buffer's position and limit as a year file. The buffer's position
+   * is not changed, so a heap buffer and a memory mapped buffer can be parsed the same way.
+   *
+   * @param yearFile buffer with the contents of a year file
+   * @return a map from each kept gender to the columns of that gender in rank order
+   * @throws IOException if a line is not in name,gender,count format
+   */
+  public Map<String, YearColumns> parse(ByteBuffer yearFile) throws IOException {
+    ColumnBuilder[] buildersByGenderLetter = new ColumnBuilder[128];
+    for (String gender : keptGenders) {
+      buildersByGenderLetter[gender.charAt(0)] = new ColumnBuilder();
+    }
+    int position = yearFile.position();
+    int limit = yearFile.limit();
+    bytesParsed = limit - position;
+    rowsParsed = 0;
+    rowsKept = 0;
+    while (position < limit) {
+      int nameStart = position;
+      int nameEnd = indexOf(yearFile, (byte) ',', nameStart, limit);
+      int lineEnd = indexOf(yearFile, (byte) '\n', nameStart, limit);
+      if (isBlank(yearFile, nameStart, lineEnd)) {
+        position = lineEnd + 1;
+        continue;
+      }
+      int genderEnd = indexOf(yearFile, (byte) ',', nameEnd + 1, lineEnd);
+      if (nameEnd >= lineEnd || genderEnd >= lineEnd) {
+        throw new IOException(MALFORMED_LINE + nameStart);
+      }
+      rowsParsed++;
+      ColumnBuilder builder = null;
+      byte genderLetter = yearFile.get(nameEnd + 1);
+      if (genderEnd - nameEnd == 2 && genderLetter >= 0) {
+        builder = buildersByGenderLetter[genderLetter];
+      }
+      if (builder != null) {
+        int countEnd = indexOf(yearFile, (byte) ',', genderEnd + 1, lineEnd);
+        int count = parseCount(yearFile, genderEnd + 1, countEnd);
+        builder.add(names.idOf(yearFile, nameStart, nameEnd), count);
+        rowsKept++;
+      }
+      position = lineEnd + 1;
+    }
+    Map<String, YearColumns> columnsForYear = new HashMap<>();
+    for (String gender : keptGenders) {
+      columnsForYear.put(gender, buildersByGenderLetter[gender.charAt(0)].build());
+    }
+    return columnsForYear;
+  }
+
+  private int indexOf(ByteBuffer buffer, byte target, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (buffer.get(i) == target) {
+        return i;
+      }
+    }
+    return to;
+  }
+
+  private boolean isBlank(ByteBuffer buffer, int from, int to) {
+    for (int i = from; i < to; i++) {
+      byte b = buffer.get(i);
+      if (b != '\r' && b != ' ') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int parseCount(ByteBuffer buffer, int from, int to) throws IOException {
+    while (to > from && (buffer.get(to - 1) == '\r' || buffer.get(to - 1) == ' ')) {
+      to--;
+    }
+    if (from == to) {
+      throw new IOException(MALFORMED_LINE + from);
+    }
+    long count = 0;
+    for (int i = from; i < to; i++) {
+      int digit = buffer.get(i) - '0';
+      if (digit < 0 || digit > 9 || count > Integer.MAX_VALUE) {
+        throw new IOException(MALFORMED_LINE + from);
+      }
+      count = count * 10 + digit;
+    }
+    if (count > Integer.MAX_VALUE) {
+      throw new IOException(MALFORMED_LINE + from);
+    }
+    return (int) count;
+  }
+
+  private static class ColumnBuilder {
+
+    private int[] nameIds = new int[INITIAL_COLUMN_SIZE];
+    private int[] counts = new int[INITIAL_COLUMN_SIZE];
+    private int size;
+
+    private void add(int nameId, int count) {
+      if (size == nameIds.length) {
+        nameIds = Arrays.copyOf(nameIds, size * 2);
+        counts = Arrays.copyOf(counts, size * 2);
+      }
+      nameIds[size] = nameId;
+      counts[size] = count;
+      size++;
+    }
+
+    private YearColumns build() {
+      return new YearColumns(Arrays.copyOf(nameIds, size), Arrays.copyOf(counts, size));
+    }
+  }
+
+}
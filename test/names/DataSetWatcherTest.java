@@ -0,0 +1,156 @@
+package names;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+class DataSetWatcherTest {
+
+  private static final int FIRST_YEAR = 1990;
+  private static final int YEAR_COUNT = 3;
+  private static final long WATCH_TIMEOUT_MILLIS = 10_000;
+
+  /**
+   * Writes a small dataset directory, one year file per year with Emily and Jacob on top
+   */
+  private static Path writeDataSet() throws IOException {
+    Path directory = Files.createTempDirectory("watcher-test");
+    for (int year = FIRST_YEAR; year < FIRST_YEAR + YEAR_COUNT; year++) {
+      writeYear(directory, year, "Emily,F,900\nAnna,F,800\nJacob,M,700\nLogan,M,600\n");
+    }
+    return directory;
+  }
+
+  private static void writeYear(Path directory, int year, String contents) throws IOException {
+    Files.writeString(directory.resolve("yob" + year + ".txt"), contents);
+  }
+
+  private static <T> WatchEvent<T> event(WatchEvent.Kind<T> kind, T context) {
+    return new WatchEvent<>() {
+      @Override
+      public Kind<T> kind() {
+        return kind;
+      }
+
+      @Override
+      public int count() {
+        return 1;
+      }
+
+      @Override
+      public T context() {
+        return context;
+      }
+    };
+  }
+
+  private static WatchEvent<Path> modified(String fileName) {
+    return event(StandardWatchEventKinds.ENTRY_MODIFY, Path.of(fileName));
+  }
+
+  /**
+   * Waits for a condition the watching thread brings about, failing once the timeout has passed
+   */
+  private static void await(Callable<Boolean> condition) throws Exception {
+    long deadline = System.currentTimeMillis() + WATCH_TIMEOUT_MILLIS;
+    while (!condition.call()) {
+      assertTrue(System.currentTimeMillis() < deadline, "the watcher did not catch up in time");
+      Thread.sleep(20);
+    }
+  }
+
+  /**
+   * Verifies updateYear picks up a year file that was replaced, added or removed, and that the
+   * answers change with it, cached answers included
+   */
+  @org.junit.jupiter.api.Test
+  void verifyUpdateYearChangesAnswers() throws Exception {
+    Path directory = writeDataSet();
+    try (Questions questions = new Questions("local", directory.toString())) {
+      assertArrayEquals(new String[]{"Emily", "Jacob"},
+          questions.topRankedMaleAndFemaleName(FIRST_YEAR));
+      writeYear(directory, FIRST_YEAR, "Sophia,F,1000\nEmily,F,900\nNoah,M,800\n");
+      questions.updateYear(FIRST_YEAR);
+      assertArrayEquals(new String[]{"Sophia", "Noah"},
+          questions.topRankedMaleAndFemaleName(FIRST_YEAR));
+      int addedYear = FIRST_YEAR + YEAR_COUNT;
+      writeYear(directory, addedYear, "Olivia,F,10\nLiam,M,20\n");
+      questions.updateYear(addedYear);
+      assertArrayEquals(new String[]{"Olivia", "Liam"},
+          questions.topRankedMaleAndFemaleName(addedYear));
+      Files.delete(directory.resolve("yob" + (FIRST_YEAR + 1) + ".txt"));
+      questions.updateYear(FIRST_YEAR + 1);
+      assertThrows(InvalidParameterException.class,
+          () -> questions.topRankedMaleAndFemaleName(FIRST_YEAR + 1));
+    }
+  }
+
+  /**
+   * Verifies a batch of events updates each year it names once, that lost events reload the whole
+   * dataset, and that failed updates and reloads are recorded and leave the dataset as it was, a
+   * failed reload being tried again with the next batch
+   */
+  @org.junit.jupiter.api.Test
+  void verifyWatcherAppliesBatches() throws IOException {
+    Path directory = writeDataSet();
+    DataSetInformation dataSetInfo = new DataSetInformation("local", directory.toString());
+    DataSetWatcher watcher = dataSetInfo.watchSource();
+    // the batches are handed in below, so the watching thread must not see the writes
+    watcher.close();
+    int addedYear = FIRST_YEAR + YEAR_COUNT;
+    writeYear(directory, FIRST_YEAR, "Sophia,F,");
+    writeYear(directory, FIRST_YEAR, "Sophia,F,1000\nNoah,M,800\n");
+    writeYear(directory, addedYear, "Olivia,F,10\nLiam,M,20\n");
+    watcher.applyEvents(List.of(modified("yob" + FIRST_YEAR + ".txt"),
+        event(StandardWatchEventKinds.ENTRY_CREATE, Path.of("yob" + addedYear + ".txt")),
+        modified("yob" + FIRST_YEAR + ".txt")));
+    assertEquals(2, dataSetInfo.getGeneration());
+    assertEquals("Sophia", dataSetInfo.findNameFromRankAndGender("F", FIRST_YEAR, 1));
+    assertEquals("Liam", dataSetInfo.findNameFromRankAndGender("M", addedYear, 1));
+
+    writeYear(directory, FIRST_YEAR + 1, "Ava,F,1000\nNoah,M,800\n");
+    watcher.applyEvents(List.of(event(StandardWatchEventKinds.OVERFLOW, null)));
+    assertEquals(3, dataSetInfo.getGeneration());
+    assertEquals("Ava", dataSetInfo.findNameFromRankAndGender("F", FIRST_YEAR + 1, 1));
+
+    Path brokenYear = directory.resolve("yob" + (FIRST_YEAR + 2) + ".txt");
+    String brokenYearContents = Files.readString(brokenYear);
+    Files.writeString(brokenYear, "Emily,F,not a count\n");
+    watcher.applyEvents(List.of(modified(brokenYear.getFileName().toString())));
+    assertEquals(1, watcher.getFailedUpdateCount());
+    assertNotNull(watcher.getLastFailure());
+    watcher.applyEvents(List.of(event(StandardWatchEventKinds.OVERFLOW, null)));
+    assertEquals(2, watcher.getFailedUpdateCount());
+    assertEquals(3, dataSetInfo.getGeneration());
+    assertEquals("Emily", dataSetInfo.findNameFromRankAndGender("F", FIRST_YEAR + 2, 1));
+    Files.writeString(brokenYear, brokenYearContents);
+    watcher.applyEvents(List.of(modified("notes.txt")));
+    assertEquals(4, dataSetInfo.getGeneration());
+    assertEquals(2, watcher.getFailedUpdateCount());
+  }
+
+  /**
+   * Verifies a watched directory keeps a Questions object up to date as its files are written, and
+   * that an update the watcher cannot make shows up in the metrics
+   */
+  @org.junit.jupiter.api.Test
+  void verifyWatcherFollowsDirectory() throws Exception {
+    Path directory = writeDataSet();
+    try (Questions questions = new Questions("local", directory.toString());
+        DataSetWatcher watcher = questions.watchDataSet()) {
+      writeYear(directory, FIRST_YEAR, "Sophia,F,1000\nNoah,M,800\n");
+      await(() -> "Sophia".equals(questions.topRankedMaleAndFemaleName(FIRST_YEAR)[0]));
+      writeYear(directory, FIRST_YEAR + 1, "Emily,F,not a count\n");
+      await(() -> questions.getMetrics().getDataSetUpdateFailures() > 0);
+      assertNotNull(questions.getMetrics().getLastDataSetUpdateFailure());
+      assertTrue(watcher.getFailedUpdateCount() > 0);
+    }
+  }
+
+}
@@ -2,6 +2,30 @@ package names;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
 class QuestionsTest {
   //fileType can be "web" "local" or "Zip" and dataSet is the folder to read from
   private static final Questions analyzeWebComplete = new Questions("web", "ssa_complete");
@@ -12,6 +36,11 @@ class QuestionsTest {
   private static final Questions analyzeLocal2000s = new Questions("Local", "ssa_2000s");
   private static final Questions analyzeZIPComplete = new Questions("zip", "ssa_complete");
   private static final Questions analyzeInvalidFile = new Questions("local", "invalid_file");
+  private static final Questions analyzeLocalCompleteParallel = new Questions("local",
+      "ssa_complete", ForkJoinPool.commonPool());
+  private static final Questions analyzeZIPCompleteParallel = new Questions("zip",
+      "ssa_complete", ForkJoinPool.commonPool());
+  private static final Questions analyzeMappedComplete = new Questions("mapped", "ssa_complete");
 
 
   /**
@@ -519,4 +548,518 @@ class QuestionsTest {
     assertArrayEquals(new String[]{"Emily", "Jacob"},
         analyzeZIPComplete.topRankedMaleAndFemaleName(2000));
   }
-}
\ No newline at end of file
+
+  /**
+   * Verifies the program can read the local files through memory mapping
+   */
+  @org.junit.jupiter.api.Test
+  void verifyProgramReadsMappedLocalFiles() throws InvalidParameterException {
+    assertArrayEquals(new String[]{"Mary", "John"},
+        analyzeMappedComplete.topRankedMaleAndFemaleName(1900));
+    assertArrayEquals(analyzeLocalComplete.findAllRanksInDataSet("Jim", "M"),
+        analyzeMappedComplete.findAllRanksInDataSet("Jim", "M"));
+  }
+
+  /**
+   * Verifies a dataset loaded back from a binary snapshot answers the same as the parsed dataset
+   */
+  @org.junit.jupiter.api.Test
+  void verifySnapshotLoadMatchesParsedLoad() throws InvalidParameterException, IOException {
+    Path snapshot = Files.createTempFile("ssa_personal", ".snapshot");
+    Files.delete(snapshot);
+    Questions writesSnapshot = new Questions("local", "ssa_personal", null, snapshot);
+    assertTrue(Files.exists(snapshot));
+    Questions readsSnapshot = new Questions("local", "ssa_personal", null, snapshot);
+    assertArrayEquals(analyzePersonalTests1.findAllRanksInDataSet("Logan", "F"),
+        readsSnapshot.findAllRanksInDataSet("Logan", "F"));
+    assertArrayEquals(writesSnapshot.topRankedMaleAndFemaleName(2003),
+        readsSnapshot.topRankedMaleAndFemaleName(2003));
+    Files.delete(snapshot);
+  }
+
+  /**
+   * Verifies loading the year files in parallel gives the same data as loading them sequentially
+   */
+  @org.junit.jupiter.api.Test
+  void verifyParallelLoadMatchesSequentialLoad() throws InvalidParameterException {
+    assertArrayEquals(analyzeLocalComplete.findAllRanksInDataSet("Jim", "M"),
+        analyzeLocalCompleteParallel.findAllRanksInDataSet("Jim", "M"));
+    assertArrayEquals(analyzeLocalComplete.findAllNamesWithRank("F", 1880, 2018, 28),
+        analyzeLocalCompleteParallel.findAllNamesWithRank("F", 1880, 2018, 28));
+    assertArrayEquals(analyzeZIPComplete.findAllRanksInDataSet("Mary", "F"),
+        analyzeZIPCompleteParallel.findAllRanksInDataSet("Mary", "F"));
+    assertArrayEquals(analyzeZIPComplete.nameAndTotalBabiesCount("M", "J", 2000),
+        analyzeZIPCompleteParallel.nameAndTotalBabiesCount("M", "J", 2000));
+  }
+
+  /**
+   * Verifies a parallel load that fails cancels the year files it has not parsed yet instead of
+   * leaving them to run against a source that is closed once the load throws
+   */
+  @org.junit.jupiter.api.Test
+  void verifyFailedParallelLoadCancelsOtherYears() throws IOException {
+    Path directory = Files.createTempDirectory("parallel-load-test");
+    for (int year = 1990; year < 1993; year++) {
+      Files.writeString(directory.resolve("yob" + year + ".txt"), "Emily,F,not a count\n");
+    }
+    List<Runnable> queued = new ArrayList<>();
+    ExecutorService runsFirstTaskOnly = new AbstractExecutorService() {
+      private boolean ranFirstTask;
+
+      @Override
+      public void execute(Runnable task) {
+        if (ranFirstTask) {
+          queued.add(task);
+        } else {
+          ranFirstTask = true;
+          task.run();
+        }
+      }
+
+      @Override
+      public void shutdown() {
+      }
+
+      @Override
+      public List<Runnable> shutdownNow() {
+        return queued;
+      }
+
+      @Override
+      public boolean isShutdown() {
+        return false;
+      }
+
+      @Override
+      public boolean isTerminated() {
+        return false;
+      }
+
+      @Override
+      public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return true;
+      }
+    };
+    YOBFileReader reader = new YOBFileReader("local", directory.toString(), runsFirstTaskOnly);
+    assertThrows(IOException.class, reader::loadCompleteDataSet);
+    assertEquals(2, queued.size());
+    for (Runnable task : queued) {
+      assertTrue(((Future<?>) task).isCancelled());
+    }
+  }
+
+  /**
+   * Verifies the result cache answers repeated questions, treats "m" and "M" as the same gender,
+   * hands out copies of cached arrays and drops its answers when the dataset is reloaded
+   */
+  @org.junit.jupiter.api.Test
+  void verifyResultCacheHitsAndInvalidation() throws InvalidParameterException, IOException {
+    Questions cachedQuestions = new Questions("local", "ssa_personal", ForkJoinPool.commonPool(),
+        null, 1);
+    String[] firstAnswer = cachedQuestions.findAllRanksInDataSet("Logan", "F");
+    firstAnswer[0] = "changed by caller";
+    assertArrayEquals(analyzePersonalTests1.findAllRanksInDataSet("Logan", "F"),
+        cachedQuestions.findAllRanksInDataSet("Logan", "f"));
+    QueryCache resultCache = cachedQuestions.getResultCache();
+    assertEquals(1, resultCache.hitCount());
+    cachedQuestions.topRankedMaleAndFemaleName(2000);
+    assertEquals(1, resultCache.evictionCount());
+    cachedQuestions.reloadDataSet();
+    cachedQuestions.topRankedMaleAndFemaleName(2000);
+    assertEquals(1, resultCache.hitCount());
+    assertEquals(3, resultCache.missCount());
+  }
+
+  /**
+   * Verifies a segmented cache never keeps more results than its maximum, keeps the first result
+   * stored for a key, and that a disabled cache is not consulted at all
+   */
+  @org.junit.jupiter.api.Test
+  void verifyResultCacheBoundsAndDisabledCache() throws InvalidParameterException {
+    QueryCache resultCache = new QueryCache(100);
+    for (int i = 0; i < 1000; i++) {
+      resultCache.put(List.of("question", i), 0, i);
+    }
+    assertEquals(100, resultCache.size());
+    assertEquals(900, resultCache.evictionCount());
+    resultCache.put(List.of("question", 999), 0, -1);
+    assertEquals(999, resultCache.get(List.of("question", 999), 0));
+    resultCache.put(List.of("question", 999), 1, -1);
+    assertEquals(1, resultCache.size());
+    Questions uncachedQuestions = new Questions("local", "ssa_personal",
+        ForkJoinPool.commonPool(), null, 0);
+    uncachedQuestions.topRankedMaleAndFemaleName(2000);
+    assertFalse(uncachedQuestions.getResultCache().isEnabled());
+    assertEquals(0, uncachedQuestions.getResultCache().missCount());
+  }
+
+  /**
+   * Verifies a lazily loaded dataset whose memory budget only fits a few years still gives the
+   * same answers as the fully loaded dataset, reading years again after they are dropped
+   */
+  @org.junit.jupiter.api.Test
+  void verifyLazyLoadingMatchesFullLoad() throws InvalidParameterException {
+    Questions lazyQuestions = new Questions("local", "ssa_complete", 1 << 20, 0);
+    assertArrayEquals(analyzeLocalComplete.topRankedMaleAndFemaleName(1990),
+        lazyQuestions.topRankedMaleAndFemaleName(1990));
+    assertArrayEquals(analyzeLocalComplete.mostPopularNames("F", 1950, 1970),
+        lazyQuestions.mostPopularNames("F", 1950, 1970));
+    assertArrayEquals(analyzeLocalComplete.findAllRanksInDataSet("Logan", "M"),
+        lazyQuestions.findAllRanksInDataSet("Logan", "M"));
+    assertEquals(analyzeLocalComplete.mostRecentYearSameRank("Logan", "M", 1990),
+        lazyQuestions.mostRecentYearSameRank("Logan", "M", 1990));
+  }
+
+  /**
+   * Verifies a question about a range asks a lazily loaded dataset for the whole range at once, so
+   * the years it reads are not dropped to make room for each other however small the budget
+   */
+  @org.junit.jupiter.api.Test
+  void verifyLazyRangeQuestionLoadsRangeTogether() {
+    DataSetInformation lazyDataSet = new DataSetInformation("local", "ssa_complete", 1);
+    Map<String, Integer> topRanked = lazyDataSet.countTopRankedNames("F", 1950, 1970);
+    assertEquals(21, lazyDataSet.loadedYearCount());
+    assertEquals(new DataSetInformation("local", "ssa_complete")
+        .countTopRankedNames("F", 1950, 1970), topRanked);
+  }
+
+  /**
+   * Verifies streaming answers, worked out while the year files are read one at a time, match the
+   * answers over the loaded dataset, including the exception for an invalid gender
+   */
+  @org.junit.jupiter.api.Test
+  void verifyStreamingAnswersMatchLoadedDataSet() throws InvalidParameterException, IOException {
+    StreamingQuestions streamingQuestions = new StreamingQuestions("local", "ssa_complete");
+    StreamingQuestions.Answer<String[]> topRanked = streamingQuestions
+        .topRankedMaleAndFemaleName(2000);
+    StreamingQuestions.Answer<int[]> letterCount = streamingQuestions
+        .nameAndTotalBabiesCount("M", "J", 2000);
+    StreamingQuestions.Answer<String[]> popularNames = streamingQuestions
+        .mostPopularNames("M", 2000, 2018);
+    StreamingQuestions.Answer<String[]> invalidGender = streamingQuestions
+        .mostPopularNames("X", 2000, 2018);
+    streamingQuestions.run();
+    assertArrayEquals(analyzeLocalComplete.topRankedMaleAndFemaleName(2000), topRanked.get());
+    assertArrayEquals(analyzeLocalComplete.nameAndTotalBabiesCount("M", "J", 2000),
+        letterCount.get());
+    assertArrayEquals(analyzeLocalComplete.mostPopularNames("M", 2000, 2018),
+        popularNames.get());
+    assertThrows(InvalidParameterException.class, invalidGender::get);
+  }
+
+  /**
+   * Verifies concurrent first requests for one source wait on a single shared load, that the
+   * dataset is dropped once its last lease is closed, and that the shared dataset is read only, so
+   * a Questions object that reloads takes a copy of its own
+   */
+  @org.junit.jupiter.api.Test
+  void verifyRegistrySharesOneLoad() throws Exception {
+    DataSetRegistry registry = new DataSetRegistry();
+    ExecutorService requesters = Executors.newFixedThreadPool(4);
+    List<Future<DataSetRegistry.Lease>> leases = new ArrayList<>();
+    try {
+      for (int i = 0; i < 8; i++) {
+        leases.add(requesters.submit(() -> registry.acquire("local", "ssa_personal")));
+      }
+      DataSetInformation shared = leases.get(0).get().getDataSetInfo();
+      for (Future<DataSetRegistry.Lease> lease : leases) {
+        assertSame(shared, lease.get().getDataSetInfo());
+      }
+      assertEquals(8, registry.userCount("Local", "ssa_personal"));
+      for (Future<DataSetRegistry.Lease> lease : leases) {
+        lease.get().close();
+        lease.get().close();
+      }
+      assertEquals(0, registry.userCount("local", "ssa_personal"));
+      try (DataSetRegistry.Lease reloaded = registry.acquire("local", "ssa_personal")) {
+        assertNotSame(shared, reloaded.getDataSetInfo());
+      }
+      assertThrows(IllegalStateException.class, shared::reload);
+    } finally {
+      for (Future<DataSetRegistry.Lease> lease : leases) {
+        lease.get().close();
+      }
+      requesters.shutdown();
+    }
+    try (Questions copiesOnReload = new Questions("local", "ssa_personal")) {
+      int users = DataSetRegistry.getShared().userCount("local", "ssa_personal");
+      copiesOnReload.reloadDataSet();
+      assertEquals(users - 1, DataSetRegistry.getShared().userCount("local", "ssa_personal"));
+    }
+  }
+
+  /**
+   * Verifies a source that cannot be read is not shared as an empty dataset: every acquire fails
+   * and tries the load again, and a Questions object over it still throws InvalidParameterException
+   */
+  @org.junit.jupiter.api.Test
+  void verifyRegistryDoesNotShareFailedLoad() {
+    DataSetRegistry registry = new DataSetRegistry();
+    for (int i = 0; i < 2; i++) {
+      assertThrows(IOException.class, () -> registry.acquire("local", "no_such_data_set"));
+      assertEquals(0, registry.userCount("local", "no_such_data_set"));
+    }
+    try (Questions unreadable = new Questions("local", "no_such_data_set")) {
+      assertThrows(InvalidParameterException.class,
+          () -> unreadable.topRankedMaleAndFemaleName(2000));
+      assertEquals(0, DataSetRegistry.getShared().userCount("local", "no_such_data_set"));
+    }
+  }
+
+  /**
+   * Verifies questions answered together in a batch, with overlapping ranges scanned in one pass,
+   * match the same questions asked one at a time, including the exception for invalid years
+   */
+  @org.junit.jupiter.api.Test
+  void verifyBatchMatchesSingleQuestions() throws InvalidParameterException {
+    QuestionBatch batch = analyzeLocalComplete.newBatch();
+    QuestionBatch.Answer<String[]> averageRank = batch.highestAverageRank("F", 1990, 2010);
+    QuestionBatch.Answer<String[]> rankChange = batch.nameWithHighestRankChange("F", 2000, 2018);
+    QuestionBatch.Answer<String[]> prefix = batch.highestOccurringPrefix("m", 1995, 2005);
+    QuestionBatch.Answer<Float> nameRank = batch.averageRank("Emily", "F", 1990, 2010);
+    QuestionBatch.Answer<String[]> letter = batch.ask(
+        questions -> questions.mostPopularLetter("F", 2000, 2010));
+    QuestionBatch.Answer<String[]> invalidYears = batch.highestAverageRank("F", 1700, 1800);
+    batch.run();
+    assertArrayEquals(analyzeLocalComplete.highestAverageRank("F", 1990, 2010), averageRank.get());
+    assertArrayEquals(analyzeLocalComplete.nameWithHighestRankChange("F", 2000, 2018),
+        rankChange.get());
+    assertArrayEquals(analyzeLocalComplete.highestOccurringPrefix("m", 1995, 2005), prefix.get());
+    float expectedRank = analyzeLocalComplete.averageRank("Emily", "F", 1990, 2010);
+    assertEquals(expectedRank, (float) nameRank.get());
+    assertArrayEquals(analyzeLocalComplete.mostPopularLetter("F", 2000, 2010), letter.get());
+    assertThrows(InvalidParameterException.class, invalidYears::get);
+  }
+
+  /**
+   * Verifies the range questions split across a ForkJoinPool give the same answers, ties included,
+   * as the same questions answered on one thread
+   */
+  @org.junit.jupiter.api.Test
+  void verifyParallelRangeQuestionsMatchSequential() throws InvalidParameterException {
+    ForkJoinPool queryPool = new ForkJoinPool(4);
+    Questions parallel = new Questions("local", "ssa_complete", null, null, 0, queryPool);
+    for (int yearStart : new int[]{1880, 1950, 2000, 2018}) {
+      assertArrayEquals(analyzeLocalComplete.highestAverageRank("F", yearStart, 2018),
+          parallel.highestAverageRank("F", yearStart, 2018));
+      assertArrayEquals(analyzeLocalComplete.nameWithHighestRankChange("M", yearStart, 2018),
+          parallel.nameWithHighestRankChange("M", yearStart, 2018));
+      assertArrayEquals(analyzeLocalComplete.highestOccurringPrefix("m", yearStart, 2018),
+          parallel.highestOccurringPrefix("m", yearStart, 2018));
+    }
+    queryPool.shutdown();
+  }
+
+  /**
+   * Verifies a recording gets an event for each year file and dataset loaded and each question
+   * asked, with the cache hit and failure of the question
+   */
+  @org.junit.jupiter.api.Test
+  void verifyFlightRecorderEvents() throws IOException, InvalidParameterException {
+    Path recordingFile = Files.createTempFile("names", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(YearFileLoadEvent.class);
+      recording.enable(DataSetLoadEvent.class);
+      recording.enable(QueryEvent.class);
+      recording.start();
+      Questions recorded = new Questions("local", "ssa_personal",
+          ForkJoinPool.commonPool(), null, 10);
+      recorded.mostPopularNames("M", 1900, 1902);
+      recorded.mostPopularNames("M", 1900, 1902);
+      assertThrows(InvalidParameterException.class,
+          () -> recorded.mostPopularNames("X", 1900, 1902));
+      recording.stop();
+      recording.dump(recordingFile);
+    }
+    List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+    Files.delete(recordingFile);
+    List<RecordedEvent> queries = new ArrayList<>();
+    int yearFiles = 0;
+    int dataSets = 0;
+    for (RecordedEvent event : events) {
+      switch (event.getEventType().getName()) {
+        case "names.YearFileLoad" -> yearFiles++;
+        case "names.DataSetLoad" -> dataSets++;
+        case "names.Query" -> queries.add(event);
+        default -> { }
+      }
+    }
+    assertTrue(yearFiles > 0);
+    assertEquals(1, dataSets);
+    assertEquals(3, queries.size());
+    assertEquals("mostPopularNames", queries.get(0).getString("method"));
+    assertFalse(queries.get(0).getBoolean("cacheHit"));
+    assertTrue(queries.get(0).getLong("rowsInRange") > 0);
+    assertTrue(queries.get(1).getBoolean("cacheHit"));
+    assertNull(queries.get(1).getString("failure"));
+    assertNotNull(queries.get(2).getString("failure"));
+  }
+
+  /**
+   * Verifies each Questions object registers an MXBean with the latencies, call counts and error
+   * counts of its questions, unregistered when it is closed, and that the latency histogram's
+   * percentiles are within its precision
+   */
+  @org.junit.jupiter.api.Test
+  void verifyMetricsMBean() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long micros = 1; micros <= 1000; micros++) {
+      histogram.record(micros * 1000);
+    }
+    assertEquals(500_000, histogram.getPercentile(0.5), 500_000 * 0.04);
+    assertEquals(990_000, histogram.getPercentile(0.99), 990_000 * 0.04);
+    assertEquals(1_000_000, histogram.getMax());
+    Questions measured = new Questions("local", "ssa_personal");
+    measured.mostPopularNames("M", 1900, 1902);
+    measured.mostPopularNames("M", 1900, 1902);
+    assertThrows(InvalidParameterException.class,
+        () -> measured.mostPopularNames("X", 1900, 1902));
+    QuestionsMetrics metrics = measured.getMetrics();
+    assertEquals(Map.of("mostPopularNames", 3L), metrics.getCallCounts());
+    assertEquals(List.of(1L), new ArrayList<>(metrics.getErrorCounts().values()));
+    LatencySummary latency = metrics.getLatencies().get("mostPopularNames");
+    assertTrue(latency.getP50Micros() <= latency.getMaxMicros());
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = metrics.getObjectName();
+    assertTrue(server.isRegistered(name));
+    assertEquals(metrics.getLoadedYears(), server.getAttribute(name, "LoadedYears"));
+    assertTrue(metrics.getLoadedYears() > 0);
+    measured.close();
+    assertFalse(server.isRegistered(name));
+  }
+
+  /**
+   * Verifies the HTTP server answers a question, an invalid question and a batch with the JSON of
+   * the answers Questions gives
+   */
+  @org.junit.jupiter.api.Test
+  void verifyQuestionsServer() throws IOException, InterruptedException, InvalidParameterException {
+    try (QuestionsServer server = new QuestionsServer(analyzePersonalTests1,
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+      server.start();
+      HttpClient client = HttpClient.newHttpClient();
+      String baseUri = "http://localhost:" + server.getPort() + "/";
+      HttpResponse<String> ranks = client.send(HttpRequest.newBuilder(
+          URI.create(baseUri + "findAllRanks?name=Emily&gender=F&yearStart=1900&yearEnd=1902"))
+          .build(), HttpResponse.BodyHandlers.ofString());
+      assertEquals(200, ranks.statusCode());
+      assertEquals("{\"answer\":" + QuestionsServer.toJson(
+          analyzePersonalTests1.findAllRanks("Emily", "F", 1900, 1902)) + "}", ranks.body());
+      HttpResponse<String> invalid = client.send(HttpRequest.newBuilder(
+          URI.create(baseUri + "topRankedMaleAndFemaleName?year=1700")).build(),
+          HttpResponse.BodyHandlers.ofString());
+      assertEquals(400, invalid.statusCode());
+      HttpResponse<String> batch = client.send(HttpRequest.newBuilder(URI.create(baseUri + "batch"))
+          .POST(HttpRequest.BodyPublishers.ofString("highestAverageRank?gender=F&yearStart=1900"
+              + "&yearEnd=1902\ntopRankedMaleAndFemaleName?year=1700\n")).build(),
+          HttpResponse.BodyHandlers.ofString());
+      assertEquals("[{\"answer\":" + QuestionsServer.toJson(
+          analyzePersonalTests1.highestAverageRank("F", 1900, 1902)) + "}," + invalid.body() + "]",
+          batch.body());
+    }
+  }
+
+  /**
+   * Verifies a pinned dataset keeps answering from the version it was pinned at while the dataset
+   * has a year removed and is reloaded in the background, and that the reload switches the full
+   * dataset back in as a new generation
+   */
+  @org.junit.jupiter.api.Test
+  void verifyPinnedDataSetSurvivesReload() throws InvalidParameterException {
+    DataSetInformation dataSetInfo = new DataSetInformation("local", "ssa_personal");
+    DataSetInformation pinned = dataSetInfo.pinned();
+    String topName = pinned.findNameFromRankAndGender("F", 1900, 1);
+    dataSetInfo.removeYear(1900);
+    assertThrows(InvalidParameterException.class,
+        () -> dataSetInfo.checkValidParameters("F", 1900, 1900));
+    pinned.checkValidParameters("F", 1900, 1900);
+    assertEquals(topName, pinned.findNameFromRankAndGender("F", 1900, 1));
+    assertEquals(0, pinned.getGeneration());
+    assertThrows(IllegalStateException.class, pinned::reload);
+    dataSetInfo.reloadInBackground(ForkJoinPool.commonPool()).join();
+    assertEquals(2, dataSetInfo.getGeneration());
+    assertEquals(topName, dataSetInfo.findNameFromRankAndGender("F", 1900, 1));
+  }
+
+  /**
+   * Verifies the top names of a range and of a single year have the most total births, ties in
+   * alphabetical order, as adding up and sorting every name finds
+   */
+  @org.junit.jupiter.api.Test
+  void verifyTopK() throws InvalidParameterException {
+    DataSetInformation dataSetInfo = new DataSetInformation("local", "ssa_personal");
+    for (int yearEnd : new int[]{1900, 1902}) {
+      Map<String, Integer> totals = new HashMap<>();
+      Map<String, String> spellings = new HashMap<>();
+      Map<Integer, List<Baby>> years = dataSetInfo.desiredGenderMap("F");
+      for (int year = 1900; year <= yearEnd; year++) {
+        for (Baby baby : years.get(year)) {
+          totals.merge(baby.getFoldedName(), baby.getCount(), Integer::sum);
+          spellings.putIfAbsent(baby.getFoldedName(), baby.getName());
+        }
+      }
+      List<String> sorted = new ArrayList<>(totals.keySet());
+      sorted.sort(Comparator.comparing((String folded) -> -totals.get(folded))
+          .thenComparing(Comparator.naturalOrder()));
+      List<Baby> topK = analyzePersonalTests1.topK("F", 1900, yearEnd, 5);
+      assertEquals(Math.min(5, sorted.size()), topK.size());
+      for (int i = 0; i < topK.size(); i++) {
+        assertEquals(spellings.get(sorted.get(i)), topK.get(i).getName());
+        assertEquals((int) totals.get(sorted.get(i)), topK.get(i).getCount());
+      }
+      assertEquals(sorted.size(), analyzePersonalTests1.topK("F", 1900, yearEnd, 1_000_000).size());
+    }
+    assertThrows(InvalidParameterException.class,
+        () -> analyzePersonalTests1.topK("F", 1900, 1902, 0));
+  }
+
+  /**
+   * Verifies names that differ only in case are counted as one name within a single year, spelled
+   * as they first appear, and that a name with no births is listed once
+   */
+  @org.junit.jupiter.api.Test
+  void verifyTopKMergesCaseVariants() {
+    NameDictionary names = new NameDictionary();
+    Map<Integer, YearColumns> femaleYears = new HashMap<>();
+    femaleYears.put(2000, new YearColumns(
+        new int[]{names.idOf("Emily"), names.idOf("Anna"), names.idOf("ANNA"), names.idOf("Zoe")},
+        new int[]{50, 40, 30, 0}));
+    femaleYears.put(2001, new YearColumns(new int[]{names.idOf("Zoe")}, new int[]{0}));
+    ColumnarDataSet dataSet = new ColumnarDataSet(names,
+        Map.of("F", femaleYears, "M", new HashMap<>()));
+    List<Baby> oneYear = TopKNames.of(dataSet, "F", 2000, 2000, 10);
+    assertEquals(List.of("Anna", "Emily", "Zoe"), oneYear.stream().map(Baby::getName).toList());
+    assertEquals(List.of(70, 50, 0), oneYear.stream().map(Baby::getCount).toList());
+    assertEquals(oneYear, TopKNames.of(dataSet, "F", 2000, 2001, 10));
+    assertEquals(List.of(new Baby("Anna", 70)), TopKNames.of(dataSet, "F", 2000, 2000, 1));
+  }
+
+  /**
+   * Verifies a single year without case variants puts names tied on births in alphabetical order,
+   * as the range path does, and that a total beyond the range of an int is capped, not an error
+   */
+  @org.junit.jupiter.api.Test
+  void verifyTopKTiesAndLargeTotals() {
+    NameDictionary names = new NameDictionary();
+    Map<Integer, YearColumns> femaleYears = new HashMap<>();
+    femaleYears.put(2000, new YearColumns(new int[]{names.idOf("Zara"), names.idOf("Cleo"),
+        names.idOf("Ava"), names.idOf("Bella"), names.idOf("Dana")},
+        new int[]{30, 20, 20, 20, 10}));
+    femaleYears.put(2002, new YearColumns(new int[]{names.idOf("Zara"), names.idOf("Ava")},
+        new int[]{Integer.MAX_VALUE, 7}));
+    femaleYears.put(2003, new YearColumns(new int[]{names.idOf("Zara"), names.idOf("Ava")},
+        new int[]{Integer.MAX_VALUE, 7}));
+    ColumnarDataSet dataSet = new ColumnarDataSet(names,
+        Map.of("F", femaleYears, "M", new HashMap<>()));
+    Function<List<Baby>, List<String>> counted = babies -> babies.stream()
+        .map(baby -> baby.getName() + "=" + baby.getCount()).toList();
+    assertEquals(List.of("Zara=30", "Ava=20"),
+        counted.apply(TopKNames.of(dataSet, "F", 2000, 2000, 2)));
+    for (int k = 1; k <= 6; k++) {
+      assertEquals(counted.apply(TopKNames.of(dataSet, "F", 2000, 2001, k)),
+          counted.apply(TopKNames.of(dataSet, "F", 2000, 2000, k)));
+    }
+    assertEquals(List.of("Zara=" + Integer.MAX_VALUE, "Ava=14"),
+        counted.apply(TopKNames.of(dataSet, "F", 2002, 2003, 2)));
+  }
+}
@@ -0,0 +1,257 @@
+package names;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class WebSourceTest {
+
+  private static final String DATA_SET = "ssa_stand_in";
+  private static final int FIRST_YEAR = 1990;
+  private static final int YEAR_COUNT = 6;
+
+  /**
+   * Writes a small dataset directory, one year file per year with a few names of each gender
+   */
+  private static Path writeDataSet(Path root) throws IOException {
+    Path dataSetDirectory = Files.createDirectories(root.resolve(DATA_SET));
+    for (int year = FIRST_YEAR; year < FIRST_YEAR + YEAR_COUNT; year++) {
+      Files.writeString(dataSetDirectory.resolve("yob" + year + ".txt"),
+          "Emily,F," + (year - 1000) + "\nAnna,F,900\nJacob,M," + (year - 900) + "\nLogan,M,"
+              + (year - 1500) + "\n");
+    }
+    return dataSetDirectory;
+  }
+
+  /**
+   * Starts a stand-in for the web source that serves the dataset directory as an html listing and
+   * its year files, with ETags. The first request for each file in failOnce is answered with 503.
+   */
+  private static HttpServer serve(Path root, AtomicInteger fullResponses, Set<String> failOnce)
+      throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/data/", exchange -> {
+      String relativePath = exchange.getRequestURI().getPath().substring("/data/".length());
+      if (failOnce.remove(relativePath)) {
+        respond(exchange, 503, new byte[0], null);
+        return;
+      }
+      Path file = root.resolve(relativePath);
+      byte[] body;
+      if (Files.isDirectory(file)) {
+        StringBuilder listing = new StringBuilder("<html><body>\n");
+        try (var children = Files.list(file)) {
+          children.sorted().forEach(child -> listing.append("<a href=\"")
+              .append(child.getFileName()).append("\">").append(child.getFileName())
+              .append("</a>\n"));
+        }
+        body = listing.append("</body></html>\n").toString().getBytes(StandardCharsets.UTF_8);
+      } else if (Files.exists(file)) {
+        body = Files.readAllBytes(file);
+      } else {
+        respond(exchange, 404, new byte[0], null);
+        return;
+      }
+      String etag = "\"" + Integer.toHexString(Arrays.hashCode(body)) + "\"";
+      if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        respond(exchange, 304, null, etag);
+        return;
+      }
+      fullResponses.incrementAndGet();
+      respond(exchange, 200, body, etag);
+    });
+    server.start();
+    return server;
+  }
+
+  private static void respond(HttpExchange exchange, int status, byte[] body, String etag)
+      throws IOException {
+    if (etag != null) {
+      exchange.getResponseHeaders().set("ETag", etag);
+    }
+    exchange.sendResponseHeaders(status, body == null || body.length == 0 ? -1 : body.length);
+    if (body != null && body.length > 0) {
+      try (OutputStream responseBody = exchange.getResponseBody()) {
+        responseBody.write(body);
+      }
+    }
+    exchange.close();
+  }
+
+  private static WebSource webSource(HttpServer server, Path cacheDirectory) {
+    URI baseUri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/data/");
+    return new WebSource(baseUri, cacheDirectory, 2, 3, Duration.ofMillis(10));
+  }
+
+  /**
+   * Verifies the web source loads the same dataset as the local files it serves, retrying a year
+   * file the server fails once, and that loading it again only revalidates the cached files
+   */
+  @org.junit.jupiter.api.Test
+  void verifyLoadsThroughCacheAndRetries() throws IOException {
+    Path root = Files.createTempDirectory("web-source-test");
+    writeDataSet(root);
+    AtomicInteger fullResponses = new AtomicInteger();
+    Set<String> failOnce = Collections.synchronizedSet(
+        new HashSet<>(List.of(DATA_SET + "/yob" + FIRST_YEAR + ".txt")));
+    HttpServer server = serve(root, fullResponses, failOnce);
+    try {
+      WebSource webSource = webSource(server, root.resolve("cache"));
+      ColumnarDataSet loaded = new YOBFileReader(DATA_SET, webSource, null).loadDataSet();
+      assertTrue(failOnce.isEmpty());
+      assertEquals(YEAR_COUNT + 1, fullResponses.get());
+      assertEquals(YEAR_COUNT + 1, webSource.downloadCount());
+      GenderColumns maleColumns = loaded.getColumns("M");
+      assertEquals(YEAR_COUNT, maleColumns.years().size());
+      assertEquals("Jacob", loaded.getNames().nameOf(maleColumns.get(FIRST_YEAR).nameId(0)));
+      assertEquals(FIRST_YEAR - 900, maleColumns.get(FIRST_YEAR).count(0));
+
+      WebSource restarted = webSource(server, root.resolve("cache"));
+      ColumnarDataSet reloaded = new YOBFileReader(DATA_SET, restarted, null).loadDataSet();
+      assertEquals(YEAR_COUNT + 1, fullResponses.get());
+      assertEquals(0, restarted.downloadCount());
+      assertEquals(YEAR_COUNT + 1, restarted.notModifiedCount());
+      assertEquals(loaded.getColumns("F").years(), reloaded.getColumns("F").years());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  /**
+   * Verifies a reload that finds a malformed year file fails and keeps the dataset that was loaded,
+   * and that the next reload after the file is fixed switches in the new dataset
+   */
+  @org.junit.jupiter.api.Test
+  void verifyFailedReloadKeepsDataSet() throws IOException {
+    Path root = Files.createTempDirectory("web-source-test");
+    Path yearFile = writeDataSet(root).resolve("yob" + FIRST_YEAR + ".txt");
+    HttpServer server = serve(root, new AtomicInteger(), Collections.synchronizedSet(
+        new HashSet<>()));
+    try {
+      DataSetInformation dataSetInfo = new DataSetInformation(
+          new YOBFileReader(DATA_SET, webSource(server, root.resolve("cache")), null));
+      String yearContents = Files.readString(yearFile);
+      Files.writeString(yearFile, "Emily,F,not a count\n");
+      CompletableFuture<Void> reloaded = dataSetInfo.reloadInBackground(
+          ForkJoinPool.commonPool());
+      assertThrows(CompletionException.class, reloaded::join);
+      assertThrows(IOException.class, dataSetInfo::reload);
+      assertEquals(0, dataSetInfo.getGeneration());
+      assertEquals(YEAR_COUNT, dataSetInfo.yearsInDataSet("F").size());
+      assertEquals("Jacob", dataSetInfo.findNameFromRankAndGender("M", FIRST_YEAR, 1));
+      Files.writeString(yearFile, yearContents);
+      dataSetInfo.reload();
+      assertEquals(1, dataSetInfo.getGeneration());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  /**
+   * Verifies the fingerprint of a web source changes when a year file changes on the server even
+   * though the directory listing does not, and stays the same while nothing changes
+   */
+  @org.junit.jupiter.api.Test
+  void verifyFingerprintFollowsYearFiles() throws IOException {
+    Path root = Files.createTempDirectory("web-source-test");
+    Path yearFile = writeDataSet(root).resolve("yob" + (FIRST_YEAR + 1) + ".txt");
+    HttpServer server = serve(root, new AtomicInteger(), Collections.synchronizedSet(
+        new HashSet<>()));
+    try {
+      YOBFileReader reader = new YOBFileReader(DATA_SET,
+          webSource(server, root.resolve("cache")), null);
+      long fingerprint = reader.sourceFingerprint();
+      assertEquals(fingerprint, reader.sourceFingerprint());
+      Files.writeString(yearFile, "Emily,F,1\nJacob,M,2\n");
+      assertNotEquals(fingerprint, reader.sourceFingerprint());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  /**
+   * Verifies fetch returns at once when the most requests are already in flight, queueing the
+   * request instead of waiting for a permit, and that the queued requests are sent one at a time
+   * as the ones in flight complete
+   */
+  @org.junit.jupiter.api.Test
+  void verifyFetchQueuesRequestsOverTheLimit() throws IOException {
+    Path root = Files.createTempDirectory("web-source-test");
+    CountDownLatch firstResponse = new CountDownLatch(1);
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger mostInFlight = new AtomicInteger();
+    ExecutorService handlers = Executors.newCachedThreadPool();
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(handlers);
+    server.createContext("/data/", exchange -> {
+      mostInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      try {
+        firstResponse.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      inFlight.decrementAndGet();
+      respond(exchange, 200, "Emily,F,5\n".getBytes(StandardCharsets.UTF_8), null);
+    });
+    server.start();
+    try {
+      URI baseUri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/data/");
+      WebSource webSource = new WebSource(baseUri, root.resolve("cache"), 1, 1,
+          Duration.ofMillis(10));
+      List<CompletableFuture<Path>> fetches = new ArrayList<>();
+      for (int year = FIRST_YEAR; year < FIRST_YEAR + YEAR_COUNT; year++) {
+        fetches.add(webSource.fetch(DATA_SET + "/yob" + year + ".txt"));
+      }
+      for (CompletableFuture<Path> fetch : fetches) {
+        assertFalse(fetch.isDone());
+      }
+      firstResponse.countDown();
+      for (CompletableFuture<Path> fetch : fetches) {
+        assertEquals("Emily,F,5\n", Files.readString(WebSource.await(fetch)));
+      }
+      assertEquals(1, mostInFlight.get());
+      assertEquals(YEAR_COUNT, webSource.downloadCount());
+    } finally {
+      server.stop(0);
+      handlers.shutdown();
+    }
+  }
+
+  /**
+   * Verifies a file the server does not have fails the fetch with its status
+   */
+  @org.junit.jupiter.api.Test
+  void verifyMissingFileFails() throws IOException {
+    Path root = Files.createTempDirectory("web-source-test");
+    AtomicInteger fullResponses = new AtomicInteger();
+    Set<String> failOnce = Collections.synchronizedSet(new HashSet<>());
+    HttpServer server = serve(root, fullResponses, failOnce);
+    try {
+      WebSource webSource = webSource(server, root.resolve("cache"));
+      IOException error = assertThrows(IOException.class,
+          () -> webSource.fetchNow("missing/yob1990.txt"));
+      assertTrue(error.getMessage().contains("404"));
+      assertEquals(0, webSource.downloadCount());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+}
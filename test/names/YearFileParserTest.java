@@ -0,0 +1,66 @@
+package names;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+class YearFileParserTest {
+
+  private static final int ROWS_PER_GENDER = 20000;
+
+  /**
+   * Builds a year file with a numbered name for every row, females first and then males
+   */
+  private static ByteBuffer syntheticYearFile() {
+    StringBuilder yearFile = new StringBuilder();
+    for (String gender : new String[]{"F", "M"}) {
+      for (int i = 0; i < ROWS_PER_GENDER; i++) {
+        yearFile.append("Name").append(i).append(',').append(gender).append(',')
+            .append(ROWS_PER_GENDER - i).append("\r\n");
+      }
+    }
+    return ByteBuffer.wrap(yearFile.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Verifies rows are kept in file order with the right counts and genders
+   */
+  @org.junit.jupiter.api.Test
+  void verifyParsesRowsInOrder() throws IOException {
+    ByteBuffer yearFile = ByteBuffer
+        .wrap("Mary,F,7065\nAnna,F,2604\n\nJohn,M,9655\r\nWilliam,M,9532"
+            .getBytes(StandardCharsets.UTF_8));
+    NameDictionary names = new NameDictionary();
+    Map<String, YearColumns> columns = new YearFileParser(names, "F", "M").parse(yearFile);
+    assertEquals(2, columns.get("F").size());
+    assertEquals("Anna", names.nameOf(columns.get("F").nameId(1)));
+    assertEquals("John", names.nameOf(columns.get("M").nameId(0)));
+    assertEquals(9532, columns.get("M").count(1));
+  }
+
+  /**
+   * Verifies a name seen in an earlier file gets the same ID in a later file
+   */
+  @org.junit.jupiter.api.Test
+  void verifyNamesAreSharedAcrossFiles() throws IOException {
+    NameDictionary names = new NameDictionary();
+    YearFileParser parser = new YearFileParser(names, "F");
+    int first = parser.parse(syntheticYearFile()).get("F").nameId(5);
+    int second = parser.parse(syntheticYearFile()).get("F").nameId(5);
+    assertEquals(first, second);
+    assertEquals(ROWS_PER_GENDER, names.size());
+  }
+
+  /**
+   * Verifies a line without three fields is reported instead of skipped
+   */
+  @org.junit.jupiter.api.Test
+  void verifyMalformedLineThrows() {
+    ByteBuffer yearFile = ByteBuffer.wrap("Mary,F\n".getBytes(StandardCharsets.UTF_8));
+    assertThrows(IOException.class,
+        () -> new YearFileParser(new NameDictionary(), "F").parse(yearFile));
+  }
+}